@@ -0,0 +1,148 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Prints trace files written by com.xabber.android.data.log.WireTracer with
+ * indented elements.
+ * <p/>
+ * Desktop tool, not part of the app. Run against files taken from device:
+ * <pre>java tools/WireTraceDecoder.java file.trace...</pre>
+ */
+public class WireTraceDecoder {
+
+    /**
+     * File format constants, must match WireTracer.
+     */
+    private static final byte[] MAGIC = new byte[]{'X', 'W', 'T', '1'};
+    private static final byte TYPE_RECEIVED = 0;
+    private static final byte TYPE_SENT = 1;
+
+    private static final String INDENT = "  ";
+
+    /**
+     * Indentation state of one direction of one connection.
+     */
+    private static class Printer {
+        int depth;
+        boolean inTag;
+        boolean closingTag;
+        char previous;
+    }
+
+    private final PrintStream out;
+    private final SimpleDateFormat dateFormat;
+    private final Map<Long, Printer> printers;
+
+    public WireTraceDecoder(PrintStream out) {
+        this.out = out;
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        this.printers = new HashMap<>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        WireTraceDecoder decoder = new WireTraceDecoder(System.out);
+        for (String fileName : args) {
+            decoder.decode(fileName);
+        }
+    }
+
+    public void decode(String fileName) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(fileName + " is not a wire trace file");
+            }
+
+            out.println("===== " + fileName);
+            while (true) {
+                byte type;
+                try {
+                    type = input.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                long time = input.readLong();
+                int connection = input.readInt();
+                byte[] data = new byte[input.readInt()];
+                try {
+                    input.readFully(data);
+                } catch (EOFException e) {
+                    out.println("----- truncated record");
+                    break;
+                }
+                print(type, time, connection, new String(data, "UTF-8"));
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private void print(byte type, long time, int connection, String text) {
+        String direction;
+        if (type == TYPE_RECEIVED) {
+            direction = "RECV";
+        } else if (type == TYPE_SENT) {
+            direction = "SENT";
+        } else {
+            out.println(dateFormat.format(new Date(time)) + " #" + connection + " " + text);
+            return;
+        }
+
+        out.print(dateFormat.format(new Date(time)) + " #" + connection + " " + direction);
+        Printer printer = getPrinter(type, connection);
+        StringBuilder builder = new StringBuilder(text.length() * 2);
+        for (int index = 0; index < text.length(); index++) {
+            char character = text.charAt(index);
+            if (character == '<' && !printer.inTag) {
+                printer.inTag = true;
+                printer.closingTag = index + 1 < text.length() && text.charAt(index + 1) == '/';
+                if (printer.closingTag) {
+                    printer.depth = Math.max(0, printer.depth - 1);
+                }
+                newLine(builder, printer.depth);
+            } else if (character == '>' && printer.inTag) {
+                printer.inTag = false;
+                if (!printer.closingTag && printer.previous != '/' && printer.previous != '?') {
+                    printer.depth++;
+                }
+            } else if (!printer.inTag && printer.previous == '>' && !Character.isWhitespace(character)) {
+                newLine(builder, printer.depth);
+            }
+            if (printer.inTag || !Character.isWhitespace(character) || printer.previous != '>') {
+                builder.append(character);
+            }
+            printer.previous = character;
+        }
+        out.println(builder);
+    }
+
+    private Printer getPrinter(byte type, int connection) {
+        long key = ((long) connection << 8) | type;
+        Printer printer = printers.get(key);
+        if (printer == null) {
+            printer = new Printer();
+            printers.put(key, printer);
+        }
+        return printer;
+    }
+
+    private static void newLine(StringBuilder builder, int depth) {
+        builder.append('\n');
+        for (int i = 0; i < depth; i++) {
+            builder.append(INDENT);
+        }
+    }
+
+}
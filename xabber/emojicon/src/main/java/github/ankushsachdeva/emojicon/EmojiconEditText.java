@@ -52,7 +52,7 @@ public class EmojiconEditText extends EditText {
 
     @Override
     protected void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
-        EmojiconHandler.addEmojis(getContext(), getText(), mEmojiconSize);
+        EmojiconHandler.updateEmojis(getContext(), getText(), mEmojiconSize, start, start + lengthAfter);
     }
 
     /**
@@ -18,8 +18,7 @@ package github.ankushsachdeva.emojicon;
 import android.content.Context;
 import android.graphics.drawable.Drawable;
 import android.text.Spannable;
-import android.text.style.DynamicDrawableSpan;
-import android.text.style.ImageSpan;
+import android.util.SparseArray;
 import android.util.SparseIntArray;
 
 /**
@@ -32,6 +31,18 @@ public final class EmojiconHandler {
     private static final SparseIntArray sEmojisMap = new SparseIntArray(846);
     private static final SparseIntArray sSoftbanksMap = new SparseIntArray(471);
 
+    private static final int VARIATION_SELECTOR = 0xfe0f;
+    /**
+     * Maximum length in chars of supported emoji sequence.
+     */
+    private static final int MAX_SEQUENCE_LENGTH = 16;
+
+    private static final Node sRoot = new Node();
+    /**
+     * Drawable states by resource, so bitmap of each emoji is decoded once.
+     */
+    private static final SparseArray<Drawable.ConstantState> sDrawableStates = new SparseArray<>();
+
     static {
         // People
         sEmojisMap.put(0x1f604, R.drawable.emoji_1f604);
@@ -1360,18 +1371,139 @@ public final class EmojiconHandler {
         sSoftbanksMap.put(0xe535, R.drawable.emoji_1f17e);
         sSoftbanksMap.put(0xe536, R.drawable.emoji_1f43e);
         sSoftbanksMap.put(0xe537, R.drawable.emoji_2122);
+
+        // Latin-1 characters (e.g. copyright and registered signs) are left as text,
+        // only keycap sequences below start with them
+        for (int i = 0; i < sEmojisMap.size(); i++) {
+            if (sEmojisMap.keyAt(i) > 0xff) {
+                put(sEmojisMap.valueAt(i), sEmojisMap.keyAt(i));
+            }
+        }
+        // Softbank characters take precedence over unicode emojis
+        for (int i = 0; i < sSoftbanksMap.size(); i++) {
+            put(sSoftbanksMap.valueAt(i), sSoftbanksMap.keyAt(i));
+        }
+
+        // Keycaps
+        put(R.drawable.emoji_0031, 0x0031, 0x20e3);
+        put(R.drawable.emoji_0032, 0x0032, 0x20e3);
+        put(R.drawable.emoji_0033, 0x0033, 0x20e3);
+        put(R.drawable.emoji_0034, 0x0034, 0x20e3);
+        put(R.drawable.emoji_0035, 0x0035, 0x20e3);
+        put(R.drawable.emoji_0036, 0x0036, 0x20e3);
+        put(R.drawable.emoji_0037, 0x0037, 0x20e3);
+        put(R.drawable.emoji_0038, 0x0038, 0x20e3);
+        put(R.drawable.emoji_0039, 0x0039, 0x20e3);
+        put(R.drawable.emoji_0030, 0x0030, 0x20e3);
+        put(R.drawable.emoji_0023, 0x0023, 0x20e3);
+
+        // Flags
+        put(R.drawable.emoji_1f1ef_1f1f5, 0x1f1ef, 0x1f1f5);
+        put(R.drawable.emoji_1f1fa_1f1f8, 0x1f1fa, 0x1f1f8);
+        put(R.drawable.emoji_1f1eb_1f1f7, 0x1f1eb, 0x1f1f7);
+        put(R.drawable.emoji_1f1e9_1f1ea, 0x1f1e9, 0x1f1ea);
+        put(R.drawable.emoji_1f1ee_1f1f9, 0x1f1ee, 0x1f1f9);
+        put(R.drawable.emoji_1f1ec_1f1e7, 0x1f1ec, 0x1f1e7);
+        put(R.drawable.emoji_1f1ea_1f1f8, 0x1f1ea, 0x1f1f8);
+        put(R.drawable.emoji_1f1f7_1f1fa, 0x1f1f7, 0x1f1fa);
+        put(R.drawable.emoji_1f1e8_1f1f3, 0x1f1e8, 0x1f1f3);
+        put(R.drawable.emoji_1f1f0_1f1f7, 0x1f1f0, 0x1f1f7);
     }
 
-    private static boolean isSoftBankEmoji(char c) {
-        return ((c >> 12) == 0xe);
+    /**
+     * Node of the trie over code points of emoji sequences.
+     */
+    private static final class Node {
+        private SparseArray<Node> mChildren;
+        /**
+         * Drawable of the sequence ending at this node, 0 if there is no such emoji.
+         */
+        private int mResource;
+
+        Node get(int codePoint) {
+            return mChildren == null ? null : mChildren.get(codePoint);
+        }
+
+        Node getOrCreate(int codePoint) {
+            if (mChildren == null) {
+                mChildren = new SparseArray<>(1);
+            }
+            Node child = mChildren.get(codePoint);
+            if (child == null) {
+                child = new Node();
+                mChildren.put(codePoint, child);
+            }
+            return child;
+        }
     }
 
-    private static int getEmojiResource(Context context, int codePoint) {
-        return sEmojisMap.get(codePoint);
+    /**
+     * Adds emoji made of the code points, e.g. keycap, flag or ZWJ sequence.
+     * Variation selectors must not be included, they are skipped on match.
+     */
+    private static void put(int resource, int... codePoints) {
+        Node node = sRoot;
+        for (int codePoint : codePoints) {
+            node = node.getOrCreate(codePoint);
+        }
+        node.mResource = resource;
     }
 
-    private static int getSoftbankEmojiResource(char c) {
-        return sSoftbanksMap.get(c);
+    /**
+     * Finds the longest emoji starting at the index.
+     *
+     * @param resource receives drawable of found emoji.
+     * @return End of found emoji including trailing variation selector or
+     * <code>index</code> if there is no emoji.
+     */
+    private static int match(CharSequence text, int index, int end, int[] resource) {
+        Node node = sRoot;
+        int matchEnd = index;
+        int i = index;
+        while (i < end) {
+            int codePoint = Character.codePointAt(text, i);
+            if (codePoint == VARIATION_SELECTOR && node != sRoot) {
+                i++;
+                if (matchEnd == i - 1 && node.mResource != 0) {
+                    matchEnd = i;
+                }
+                continue;
+            }
+            node = node.get(codePoint);
+            if (node == null) {
+                break;
+            }
+            i += Character.charCount(codePoint);
+            if (node.mResource != 0) {
+                matchEnd = i;
+                resource[0] = node.mResource;
+            }
+        }
+        return matchEnd;
+    }
+
+    /**
+     * @return New drawable sharing state with other drawables of the emoji.
+     */
+    static Drawable getDrawable(Context context, int resource, int size) {
+        Drawable.ConstantState state;
+        synchronized (sDrawableStates) {
+            state = sDrawableStates.get(resource);
+        }
+        Drawable drawable;
+        if (state == null) {
+            drawable = context.getResources().getDrawable(resource);
+            state = drawable.getConstantState();
+            if (state != null) {
+                synchronized (sDrawableStates) {
+                    sDrawableStates.put(resource, state);
+                }
+            }
+        } else {
+            drawable = state.newDrawable(context.getResources());
+        }
+        drawable.setBounds(0, 0, size, size);
+        return drawable;
     }
 
     /**
@@ -1399,120 +1531,52 @@ public final class EmojiconHandler {
         int textLengthToProcessMax = textLength - index;
         int textLengthToProcess = length < 0 || length >= textLengthToProcessMax ? textLength : (length+index);
 
-        // remove spans throughout all text
-        EmojiconSpan[] oldSpans = text.getSpans(0, textLength, EmojiconSpan.class);
-        for (int i = 0; i < oldSpans.length; i++) {
-            text.removeSpan(oldSpans[i]);
-        }
+        replaceEmojis(context, text, emojiSize, index, textLengthToProcess);
+    }
 
-        int skip;
-        for (int i = index; i < textLengthToProcess; i += skip) {
-            skip = 0;
-            int icon = 0;
-            char c = text.charAt(i);
-            if (isSoftBankEmoji(c)) {
-                icon = getSoftbankEmojiResource(c);
-                skip = icon == 0 ? 0 : 1;
-            }
+    /**
+     * Updates emojicons after the text was changed in the given range, e.g.
+     * from {@link android.widget.TextView#onTextChanged(CharSequence, int, int, int)}.
+     * <p/>
+     * Only the changed range is scanned, extended to emojis it might have
+     * broken or completed.
+     *
+     * @param start start of the changed text.
+     * @param end   end of the changed text.
+     */
+    public static void updateEmojis(Context context, Spannable text, int emojiSize, int start, int end) {
+        int textLength = text.length();
+        start = Math.max(0, Math.min(start, textLength) - MAX_SEQUENCE_LENGTH);
+        end = Math.min(textLength, end + MAX_SEQUENCE_LENGTH);
 
-            if (icon == 0) {
-                int unicode = Character.codePointAt(text, i);
-                skip = Character.charCount(unicode);
+        EmojiconSpan[] spans = text.getSpans(start, end, EmojiconSpan.class);
+        for (EmojiconSpan span : spans) {
+            start = Math.min(start, text.getSpanStart(span));
+            end = Math.max(end, text.getSpanEnd(span));
+        }
+        if (start > 0 && Character.isLowSurrogate(text.charAt(start))) {
+            start--;
+        }
 
-                if (unicode > 0xff) {
-                    icon = getEmojiResource(context, unicode);
-                }
+        replaceEmojis(context, text, emojiSize, start, end);
+    }
 
-                if (icon == 0 && i + skip < textLengthToProcess) {
-                    int followUnicode = Character.codePointAt(text, i + skip);
-                    if (followUnicode == 0x20e3) {
-                        int followSkip = Character.charCount(followUnicode);
-                        switch (unicode) {
-                            case 0x0031:
-                                icon = R.drawable.emoji_0031;
-                                break;
-                            case 0x0032:
-                                icon = R.drawable.emoji_0032;
-                                break;
-                            case 0x0033:
-                                icon = R.drawable.emoji_0033;
-                                break;
-                            case 0x0034:
-                                icon = R.drawable.emoji_0034;
-                                break;
-                            case 0x0035:
-                                icon = R.drawable.emoji_0035;
-                                break;
-                            case 0x0036:
-                                icon = R.drawable.emoji_0036;
-                                break;
-                            case 0x0037:
-                                icon = R.drawable.emoji_0037;
-                                break;
-                            case 0x0038:
-                                icon = R.drawable.emoji_0038;
-                                break;
-                            case 0x0039:
-                                icon = R.drawable.emoji_0039;
-                                break;
-                            case 0x0030:
-                                icon = R.drawable.emoji_0030;
-                                break;
-                            case 0x0023:
-                                icon = R.drawable.emoji_0023;
-                                break;
-                            default:
-                                followSkip = 0;
-                                break;
-                        }
-                        skip += followSkip;
-                    } else {
-                        int followSkip = Character.charCount(followUnicode);
-                        switch (unicode) {
-                            case 0x1f1ef:
-                                icon = (followUnicode == 0x1f1f5) ? R.drawable.emoji_1f1ef_1f1f5 : 0;
-                                break;
-                            case 0x1f1fa:
-                                icon = (followUnicode == 0x1f1f8) ? R.drawable.emoji_1f1fa_1f1f8 : 0;
-                                break;
-                            case 0x1f1eb:
-                                icon = (followUnicode == 0x1f1f7) ? R.drawable.emoji_1f1eb_1f1f7 : 0;
-                                break;
-                            case 0x1f1e9:
-                                icon = (followUnicode == 0x1f1ea) ? R.drawable.emoji_1f1e9_1f1ea : 0;
-                                break;
-                            case 0x1f1ee:
-                                icon = (followUnicode == 0x1f1f9) ? R.drawable.emoji_1f1ee_1f1f9 : 0;
-                                break;
-                            case 0x1f1ec:
-                                icon = (followUnicode == 0x1f1e7) ? R.drawable.emoji_1f1ec_1f1e7 : 0;
-                                break;
-                            case 0x1f1ea:
-                                icon = (followUnicode == 0x1f1f8) ? R.drawable.emoji_1f1ea_1f1f8 : 0;
-                                break;
-                            case 0x1f1f7:
-                                icon = (followUnicode == 0x1f1fa) ? R.drawable.emoji_1f1f7_1f1fa : 0;
-                                break;
-                            case 0x1f1e8:
-                                icon = (followUnicode == 0x1f1f3) ? R.drawable.emoji_1f1e8_1f1f3 : 0;
-                                break;
-                            case 0x1f1f0:
-                                icon = (followUnicode == 0x1f1f7) ? R.drawable.emoji_1f1f0_1f1f7 : 0;
-                                break;
-                            default:
-                                followSkip = 0;
-                                break;
-                        }
-                        skip += followSkip;
-                    }
-                }
-            }
+    private static void replaceEmojis(Context context, Spannable text, int emojiSize, int start, int end) {
+        EmojiconSpan[] oldSpans = text.getSpans(start, end, EmojiconSpan.class);
+        for (EmojiconSpan oldSpan : oldSpans) {
+            text.removeSpan(oldSpan);
+        }
 
-            if (icon > 0) {
-                Drawable myIcon = context.getResources().getDrawable(icon);
-                myIcon.setBounds(0, 0, emojiSize, emojiSize);
-                text.setSpan(new ImageSpan(myIcon, DynamicDrawableSpan.ALIGN_BOTTOM),
-                        i, i + skip, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        int[] resource = new int[1];
+        int i = start;
+        while (i < end) {
+            int emojiEnd = match(text, i, end, resource);
+            if (emojiEnd > i) {
+                text.setSpan(new EmojiconSpan(context, resource[0], emojiSize),
+                        i, emojiEnd, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+                i = emojiEnd;
+            } else {
+                i += Character.charCount(Character.codePointAt(text, i));
             }
         }
     }
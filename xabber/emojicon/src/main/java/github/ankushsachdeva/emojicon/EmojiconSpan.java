@@ -39,9 +39,7 @@ class EmojiconSpan extends DynamicDrawableSpan {
     public Drawable getDrawable() {
         if (mDrawable == null) {
             try {
-                mDrawable = mContext.getResources().getDrawable(mResourceId);
-                int size = mSize;
-                mDrawable.setBounds(0, 0, size, size);
+                mDrawable = EmojiconHandler.getDrawable(mContext, mResourceId, mSize);
             } catch (Exception e) {
                 // swallow
             }
@@ -54,6 +54,7 @@ import com.xabber.android.data.message.MessageManager;
 import com.xabber.android.data.message.ReceiptManager;
 import com.xabber.android.data.message.chat.ChatManager;
 import com.xabber.android.data.message.phrase.PhraseManager;
+import com.xabber.android.data.message.search.MessageSearchManager;
 import com.xabber.android.data.notification.NotificationManager;
 import com.xabber.android.data.roster.GroupManager;
 import com.xabber.android.data.roster.PresenceManager;
@@ -69,9 +70,9 @@ import org.jivesoftware.smack.provider.ProviderManager;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -103,8 +104,8 @@ public class Application extends android.app.Application {
      * Unmodifiable collections of managers that implement some common
      * interface.
      */
-    private Map<Class<? extends BaseManagerInterface>, Collection<? extends BaseManagerInterface>> managerInterfaces;
-    private Map<Class<? extends BaseUIListener>, Collection<? extends BaseUIListener>> uiListeners;
+    private final ConcurrentMap<Class<? extends BaseManagerInterface>, Collection<? extends BaseManagerInterface>> managerInterfaces;
+    private final ListenerRegistry<BaseUIListener> uiListeners;
     /**
      * Where data load was requested.
      */
@@ -127,19 +128,6 @@ public class Application extends android.app.Application {
      */
     private boolean closed;
 
-    private final Runnable timerRunnable = new Runnable() {
-
-        @Override
-        public void run() {
-            for (OnTimerListener listener : getManagers(OnTimerListener.class)) {
-                listener.onTimer();
-            }
-            if (!closing) {
-                startTimer();
-            }
-        }
-
-    };
     /**
      * Future for loading process.
      */
@@ -152,12 +140,12 @@ public class Application extends android.app.Application {
         notified = false;
         closing = false;
         closed = false;
-        uiListeners = new HashMap<>();
-        managerInterfaces = new HashMap<>();
+        managerInterfaces = new ConcurrentHashMap<>();
         registeredManagers = new ArrayList<>();
 
         handler = new Handler();
         backgroundExecutor = createSingleThreadExecutor("Background executor service");
+        uiListeners = new ListenerRegistry<>(handler, backgroundExecutor);
         backgroundExecutorForUserActions = Executors.newFixedThreadPool(
                 Runtime.getRuntime().availableProcessors(),
                 new ThreadFactory() {
@@ -220,11 +208,13 @@ public class Application extends android.app.Application {
         }
         initialized = true;
         XabberService.getInstance().changeForeground();
-        startTimer();
     }
 
     private void onClose() {
         LogManager.i(LOG_TAG, "onClose1");
+        if (LogManager.isEnabled()) {
+            LogManager.i(LOG_TAG, "UI listeners dispatch:\n" + uiListeners.getStatistics());
+        }
         for (Object manager : registeredManagers) {
             if (manager instanceof OnCloseListener) {
                 ((OnCloseListener) manager).onClose();
@@ -355,6 +345,7 @@ public class Application extends android.app.Application {
 
     private void addManagers() {
         addManager(SettingsManager.getInstance());
+        addManager(DeadlineScheduler.getInstance());
         addManager(LogManager.getInstance());
         addManager(DatabaseManager.getInstance());
         addManager(AvatarStorage.getInstance());
@@ -366,6 +357,7 @@ public class Application extends android.app.Application {
         addManager(PatreonManager.getInstance());
         addManager(MUCManager.getInstance());
         addManager(MessageManager.getInstance());
+        addManager(MessageSearchManager.getInstance());
         addManager(ChatManager.getInstance());
         addManager(VCardManager.getInstance());
         addManager(AvatarManager.getInstance());
@@ -436,13 +428,6 @@ public class Application extends android.app.Application {
         super.onTerminate();
     }
 
-    /**
-     * Start periodically callbacks.
-     */
-    private void startTimer() {
-        runOnUiThreadDelay(timerRunnable, OnTimerListener.DELAY);
-    }
-
     /**
      * @param cls Requested class of managers.
      * @return List of registered manager.
@@ -461,7 +446,10 @@ public class Application extends android.app.Application {
                 }
             }
             collection = Collections.unmodifiableCollection(collection);
-            managerInterfaces.put(cls, collection);
+            Collection<T> previous = (Collection<T>) managerInterfaces.putIfAbsent(cls, collection);
+            if (previous != null) {
+                collection = previous;
+            }
         }
         return collection;
     }
@@ -501,34 +489,43 @@ public class Application extends android.app.Application {
         });
     }
 
-    @SuppressWarnings("unchecked")
-    private <T extends BaseUIListener> Collection<T> getOrCreateUIListeners(Class<T> cls) {
-        Collection<T> collection = (Collection<T>) uiListeners.get(cls);
-        if (collection == null) {
-            collection = new ArrayList<T>();
-            uiListeners.put(cls, collection);
-        }
-        return collection;
-    }
-
     /**
      * @param cls Requested class of listeners.
-     * @return List of registered UI listeners.
+     * @return Unmodifiable list of UI listeners registered at the moment of call.
      */
     public <T extends BaseUIListener> Collection<T> getUIListeners(Class<T> cls) {
         if (closed) {
             return Collections.emptyList();
         }
-        return Collections.unmodifiableCollection(getOrCreateUIListeners(cls));
+        return uiListeners.get(cls);
+    }
+
+    /**
+     * Calls UI listeners, each on the thread it was registered for.
+     */
+    public <T extends BaseUIListener> void notifyUIListeners(Class<T> cls, ListenerRegistry.Call<T> call) {
+        if (closed) {
+            return;
+        }
+        uiListeners.dispatch(cls, call);
     }
 
     /**
-     * Register new listener.
+     * Register new listener called from the thread of notification.
      * <p/>
      * Should be called from {@link Activity#onResume()}.
      */
     public <T extends BaseUIListener> void addUIListener(Class<T> cls, T listener) {
-        getOrCreateUIListeners(cls).add(listener);
+        uiListeners.add(cls, listener, ListenerRegistry.Affinity.any);
+    }
+
+    /**
+     * Register new listener called from the specified thread by
+     * {@link #notifyUIListeners(Class, ListenerRegistry.Call)}.
+     */
+    public <T extends BaseUIListener> void addUIListener(Class<T> cls, T listener,
+                                                         ListenerRegistry.Affinity affinity) {
+        uiListeners.add(cls, listener, affinity);
     }
 
     /**
@@ -537,7 +534,7 @@ public class Application extends android.app.Application {
      * Should be called from {@link Activity#onPause()}.
      */
     public <T extends BaseUIListener> void removeUIListener(Class<T> cls, T listener) {
-        getOrCreateUIListeners(cls).remove(listener);
+        uiListeners.remove(cls, listener);
     }
 
     /**
@@ -547,9 +544,12 @@ public class Application extends android.app.Application {
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                for (OnErrorListener onErrorListener : getUIListeners(OnErrorListener.class)) {
-                    onErrorListener.onError(resourceId);
-                }
+                notifyUIListeners(OnErrorListener.class, new ListenerRegistry.Call<OnErrorListener>() {
+                    @Override
+                    public void call(OnErrorListener listener) {
+                        listener.onError(resourceId);
+                    }
+                });
             }
         });
     }
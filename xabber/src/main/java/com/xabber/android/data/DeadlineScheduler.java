@@ -0,0 +1,191 @@
+package com.xabber.android.data;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.xabber.android.receiver.DeadlineReceiver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs tasks in UI thread at requested time.
+ * <p/>
+ * Each owner has at most one pending task, scheduling replaces the previous
+ * one. Only the earliest deadline is tracked: with handler while device is
+ * awake and with non wakeup alarm, so the deadline passed in sleep is handled
+ * as soon as device wakes up instead of waking it. Nothing is scheduled when
+ * there are no tasks.
+ */
+public class DeadlineScheduler implements OnCloseListener {
+
+    private static final long NOT_SCHEDULED = -1;
+
+    /**
+     * Deadlines closer than this are handled by handler only.
+     */
+    private static final long ALARM_THRESHOLD_MILLIS = 10000;
+
+    private static DeadlineScheduler instance;
+
+    private static class Task {
+        final long deadline;
+        final Runnable runnable;
+
+        Task(long deadline, Runnable runnable) {
+            this.deadline = deadline;
+            this.runnable = runnable;
+        }
+    }
+
+    /**
+     * Pending tasks by owner, guarded by itself.
+     */
+    private final Map<Object, Task> tasks;
+    private final Handler handler;
+    private final AlarmManager alarmManager;
+    private final PendingIntent alarmIntent;
+    private final Runnable runDueTasks;
+    /**
+     * Elapsed realtime of the current timer, guarded by {@link #tasks}.
+     */
+    private long timerDeadline;
+    private boolean alarmSet;
+
+    public static DeadlineScheduler getInstance() {
+        if (instance == null) {
+            instance = new DeadlineScheduler();
+        }
+
+        return instance;
+    }
+
+    private DeadlineScheduler() {
+        Application application = Application.getInstance();
+        tasks = new HashMap<>();
+        handler = new Handler(application.getMainLooper());
+        alarmManager = (AlarmManager) application.getSystemService(Context.ALARM_SERVICE);
+        alarmIntent = PendingIntent.getBroadcast(application, 0,
+                DeadlineReceiver.createIntent(application), 0);
+        runDueTasks = new Runnable() {
+            @Override
+            public void run() {
+                runDueTasks();
+            }
+        };
+        timerDeadline = NOT_SCHEDULED;
+        alarmSet = false;
+    }
+
+    /**
+     * Schedules the task replacing previous task of the owner.
+     *
+     * @param deadline elapsed realtime.
+     */
+    public void schedule(Object owner, long deadline, Runnable runnable) {
+        synchronized (tasks) {
+            tasks.put(owner, new Task(deadline, runnable));
+            updateTimer();
+        }
+    }
+
+    /**
+     * Schedules the task to be run as soon as possible.
+     */
+    public void scheduleNow(Object owner, Runnable runnable) {
+        schedule(owner, SystemClock.elapsedRealtime(), runnable);
+    }
+
+    public void cancel(Object owner) {
+        synchronized (tasks) {
+            if (tasks.remove(owner) != null) {
+                updateTimer();
+            }
+        }
+    }
+
+    /**
+     * Alarm for the earliest deadline was fired.
+     */
+    public void onAlarm() {
+        synchronized (tasks) {
+            alarmSet = false;
+        }
+        runDueTasks();
+    }
+
+    @Override
+    public void onClose() {
+        synchronized (tasks) {
+            tasks.clear();
+            updateTimer();
+        }
+    }
+
+    private void runDueTasks() {
+        long now = SystemClock.elapsedRealtime();
+        List<Runnable> dueTasks = new ArrayList<>();
+        synchronized (tasks) {
+            handler.removeCallbacks(runDueTasks);
+            timerDeadline = NOT_SCHEDULED;
+            Iterator<Task> iterator = tasks.values().iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                if (task.deadline <= now) {
+                    dueTasks.add(task.runnable);
+                    iterator.remove();
+                }
+            }
+            updateTimer();
+        }
+        for (Runnable runnable : dueTasks) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Sets timer to the earliest deadline or cancels it if there are no tasks.
+     * Must be called with lock on {@link #tasks}.
+     */
+    private void updateTimer() {
+        long deadline = NOT_SCHEDULED;
+        for (Task task : tasks.values()) {
+            if (deadline == NOT_SCHEDULED || task.deadline < deadline) {
+                deadline = task.deadline;
+            }
+        }
+        if (deadline == timerDeadline) {
+            return;
+        }
+        timerDeadline = deadline;
+
+        handler.removeCallbacks(runDueTasks);
+        if (deadline == NOT_SCHEDULED) {
+            cancelAlarm();
+            return;
+        }
+
+        long delay = Math.max(0, deadline - SystemClock.elapsedRealtime());
+        handler.postDelayed(runDueTasks, delay);
+        if (delay < ALARM_THRESHOLD_MILLIS) {
+            cancelAlarm();
+        } else {
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME, deadline, alarmIntent);
+            alarmSet = true;
+        }
+    }
+
+    private void cancelAlarm() {
+        if (alarmSet) {
+            alarmManager.cancel(alarmIntent);
+            alarmSet = false;
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+package com.xabber.android.data;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.xabber.android.BuildConfig;
+import com.xabber.android.data.log.LogManager;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listeners grouped by interface.
+ * <p/>
+ * Listeners of each interface are kept in arrays replaced on each change, so
+ * they can be added and removed from any thread while dispatch iterates the
+ * current arrays without locks or copying.
+ *
+ * @param <B> base type of listeners.
+ */
+public class ListenerRegistry<B> {
+
+    /**
+     * Thread where listener must be called.
+     */
+    public enum Affinity {
+        /**
+         * Thread of the caller.
+         */
+        any,
+        /**
+         * UI thread, posted if caller is on another thread.
+         */
+        main,
+        /**
+         * Background thread, submitted if caller is on UI thread.
+         */
+        background
+    }
+
+    /**
+     * Call of listener's method.
+     */
+    public interface Call<T> {
+        void call(T listener);
+    }
+
+    /**
+     * Immutable listeners of one interface.
+     */
+    private static class Listeners<T> {
+        final Object[] listeners;
+        final Affinity[] affinities;
+        final Collection<T> collection;
+
+        @SuppressWarnings("unchecked")
+        Listeners(Object[] listeners, Affinity[] affinities) {
+            this.listeners = listeners;
+            this.affinities = affinities;
+            this.collection = Collections.unmodifiableList((List<T>) Arrays.asList(listeners));
+        }
+    }
+
+    private static final Listeners<Object> EMPTY = new Listeners<>(new Object[0], new Affinity[0]);
+
+    /**
+     * Listeners and dispatch statistics of one interface.
+     */
+    private static class Entry {
+        volatile Listeners<?> listeners = EMPTY;
+        final AtomicLong dispatches = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        boolean contains(Object listener) {
+            for (Object registered : listeners.listeners) {
+                if (registered == listener) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void onDispatched(long startTime) {
+            long nanos = System.nanoTime() - startTime;
+            dispatches.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+    }
+
+    private final ConcurrentMap<Class<? extends B>, Entry> entries;
+    private final Handler handler;
+    private final Executor backgroundExecutor;
+
+    public ListenerRegistry(Handler handler, Executor backgroundExecutor) {
+        this.entries = new ConcurrentHashMap<>();
+        this.handler = handler;
+        this.backgroundExecutor = backgroundExecutor;
+    }
+
+    private Entry getEntry(Class<? extends B> cls) {
+        Entry entry = entries.get(cls);
+        if (entry == null) {
+            Entry created = new Entry();
+            entry = entries.putIfAbsent(cls, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    public <T extends B> void add(Class<T> cls, T listener, Affinity affinity) {
+        Entry entry = getEntry(cls);
+        synchronized (entry) {
+            if (entry.contains(listener)) {
+                return;
+            }
+            Listeners<?> current = entry.listeners;
+            int size = current.listeners.length;
+            Object[] listeners = Arrays.copyOf(current.listeners, size + 1);
+            Affinity[] affinities = Arrays.copyOf(current.affinities, size + 1);
+            listeners[size] = listener;
+            affinities[size] = affinity;
+            entry.listeners = new Listeners<T>(listeners, affinities);
+        }
+    }
+
+    public <T extends B> void remove(Class<T> cls, T listener) {
+        Entry entry = entries.get(cls);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            Listeners<?> current = entry.listeners;
+            int size = current.listeners.length;
+            for (int index = 0; index < size; index++) {
+                if (current.listeners[index] != listener) {
+                    continue;
+                }
+                Object[] listeners = new Object[size - 1];
+                Affinity[] affinities = new Affinity[size - 1];
+                System.arraycopy(current.listeners, 0, listeners, 0, index);
+                System.arraycopy(current.listeners, index + 1, listeners, index, size - index - 1);
+                System.arraycopy(current.affinities, 0, affinities, 0, index);
+                System.arraycopy(current.affinities, index + 1, affinities, index, size - index - 1);
+                entry.listeners = new Listeners<T>(listeners, affinities);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Unmodifiable listeners registered at the moment of call.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends B> Collection<T> get(Class<T> cls) {
+        Entry entry = entries.get(cls);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        return (Collection<T>) entry.listeners.collection;
+    }
+
+    /**
+     * Calls each listener on the thread it was registered for. Listeners
+     * removed before posted call is executed are skipped. Exception thrown
+     * by listener is logged and, in release builds, doesn't stop other listeners.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends B> void dispatch(Class<T> cls, final Call<T> call) {
+        final Entry entry = entries.get(cls);
+        if (entry == null) {
+            return;
+        }
+        Listeners<?> current = entry.listeners;
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        for (int index = 0; index < current.listeners.length; index++) {
+            final T listener = (T) current.listeners[index];
+            final long startTime = System.nanoTime();
+            Affinity affinity = current.affinities[index];
+            if (affinity == Affinity.main && !mainThread) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (entry.contains(listener)) {
+                            invoke(entry, listener, call, startTime);
+                        }
+                    }
+                });
+            } else if (affinity == Affinity.background && mainThread) {
+                backgroundExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (entry.contains(listener)) {
+                            invoke(entry, listener, call, startTime);
+                        }
+                    }
+                });
+            } else {
+                invoke(entry, listener, call, startTime);
+            }
+        }
+    }
+
+    /**
+     * Calls the listener, so exception thrown by one listener doesn't prevent
+     * others from being called. Exception is rethrown in debug builds to keep
+     * bugs visible.
+     */
+    private static <T> void invoke(Entry entry, T listener, Call<T> call, long startTime) {
+        try {
+            call.call(listener);
+        } catch (RuntimeException e) {
+            LogManager.exception(listener, e);
+            if (BuildConfig.DEBUG) {
+                throw e;
+            }
+        }
+        entry.onDispatched(startTime);
+    }
+
+    /**
+     * @return Number of dispatched calls, average and maximum time from
+     * dispatch to completion of the call for each interface.
+     */
+    public String getStatistics() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<Class<? extends B>, Entry> item : entries.entrySet()) {
+            Entry entry = item.getValue();
+            long dispatches = entry.dispatches.get();
+            if (dispatches == 0) {
+                continue;
+            }
+            builder.append(item.getKey().getSimpleName())
+                    .append(": ").append(dispatches)
+                    .append(" calls, avg ").append(entry.totalNanos.get() / dispatches / 1000)
+                    .append(" us, max ").append(entry.maxNanos.get() / 1000)
+                    .append(" us\n");
+        }
+        return builder.toString();
+    }
+
+}
@@ -21,6 +21,7 @@ import android.text.TextUtils;
 
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.ListenerRegistry;
 import com.xabber.android.data.NetworkException;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.OnUnloadListener;
@@ -71,7 +72,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import io.realm.Realm;
@@ -103,9 +103,13 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
      */
     private final int colors;
     /**
-     * List of accounts.
+     * List of accounts, guarded by itself. Readers use {@link #snapshot}.
      */
     private final Map<AccountJid, AccountItem> accountItems;
+    /**
+     * Last published state of {@link #accountItems}.
+     */
+    private volatile AccountSnapshot snapshot;
     private final BaseAccountNotificationProvider<AccountError> accountErrorProvider;
 
     private final Application application;
@@ -129,6 +133,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
     private AccountManager() {
         this.application = Application.getInstance();
         accountItems = new HashMap<>();
+        snapshot = AccountSnapshot.EMPTY;
         savedStatuses = new ArrayList<>();
         accountErrorProvider = new BaseAccountNotificationProvider<>(R.drawable.ic_stat_error);
 
@@ -269,7 +274,10 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
     }
 
     private void addAccount(AccountItem accountItem) {
-        accountItems.put(accountItem.getAccount(), accountItem);
+        synchronized (accountItems) {
+            accountItems.put(accountItem.getAccount(), accountItem);
+            publishSnapshot();
+        }
         for (OnAccountAddedListener listener : application.getManagers(OnAccountAddedListener.class)) {
             listener.onAccountAdded(accountItem);
         }
@@ -287,7 +295,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
      */
     int getNextColorIndex() {
         int[] count = new int[colors];
-        for (AccountItem accountItem : accountItems.values()) {
+        for (AccountItem accountItem : snapshot.getItems()) {
             count[accountItem.getColorIndex() % colors] += 1;
         }
         int result = 0;
@@ -302,7 +310,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
 
     int getNextOrder() {
         int max = 0;
-        for (AccountItem item : accountItems.values()) {
+        for (AccountItem item : snapshot.getItems()) {
             if (item.getOrder() > max) max = item.getOrder();
         }
         return max + 1;
@@ -314,7 +322,24 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
      */
     @Nullable
     public AccountItem getAccount(AccountJid account) {
-        return accountItems.get(account);
+        return snapshot.getAccount(account);
+    }
+
+    /**
+     * @return Current state of accounts, consistent and safe to use from any thread.
+     */
+    public AccountSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes new snapshot. Must be called after change of account list or
+     * account's enabled state or order.
+     */
+    private void publishSnapshot() {
+        synchronized (accountItems) {
+            snapshot = new AccountSnapshot(snapshot.getVersion() + 1, accountItems);
+        }
     }
 
     public boolean isAccountExist(String user) {
@@ -428,7 +453,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
         }
 
         onAccountChanged(accountItem.getAccount());
-        if (accountItems.size() > 1 && SettingsManager.contactsEnableShowAccounts()) {
+        if (snapshot.size() > 1 && SettingsManager.contactsEnableShowAccounts()) {
             SettingsManager.enableContactsShowAccount();
         }
 
@@ -476,7 +501,10 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
             }
         });
 
-        accountItems.remove(account);
+        synchronized (accountItems) {
+            accountItems.remove(account);
+            publishSnapshot();
+        }
         for (OnAccountRemovedListener listener : application.getManagers(OnAccountRemovedListener.class)) {
             listener.onAccountRemoved(accountItem);
         }
@@ -609,6 +637,9 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
             result.setStorePassword(storePassword);
             boolean changed = result.isEnabled() != enabled;
             result.setEnabled(enabled);
+            if (changed) {
+                publishSnapshot();
+            }
             if (result.getPriority() != priority) {
                 result.setPriority(priority);
                 try {
@@ -662,7 +693,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
     }
 
     public boolean haveNotAllowedSyncAccounts() {
-        for (AccountItem account : accountItems.values()) {
+        for (AccountItem account : snapshot.getItems()) {
             if (account.isSyncNotAllowed()) return true;
         }
         return false;
@@ -683,40 +714,37 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
         }
 
         accountItem.setEnabled(enabled);
+        publishSnapshot();
         requestToWriteAccount(accountItem);
+        ReconnectionManager.getInstance().requestCheck();
     }
 
     /**
      * @return List of enabled accounts.
      */
     public Collection<AccountJid> getEnabledAccounts() {
-        List<AccountJid> enabledAccounts = new ArrayList<>();
-        for (AccountItem accountItem : accountItems.values()) {
-            if (accountItem.isEnabled()) {
-                AccountJid accountJid = accountItem.getAccount();
-                accountJid.setOrder(accountItem.getOrder());
-                enabledAccounts.add(accountJid);
-            }
-        }
-
-        return Collections.unmodifiableCollection(enabledAccounts);
+        return snapshot.getEnabledAccounts();
     }
 
     public boolean hasAccounts() {
-        return !accountItems.isEmpty();
+        return snapshot.size() > 0;
     }
 
     /**
      * @return List of all accounts including disabled.
      */
     public Collection<AccountJid> getAllAccounts() {
-        return Collections.unmodifiableCollection(accountItems.keySet());
+        return snapshot.getAllAccounts();
     }
 
     public Collection<AccountItem> getAllAccountItems() {
-        return Collections.unmodifiableCollection(accountItems.values());
+        return snapshot.getAllAccountItems();
     }
 
+    /**
+     * Computed on each call from current state of accounts and their rosters,
+     * which is not tracked by {@link AccountSnapshot}.
+     */
     public CommonState getCommonState() {
         boolean disabled = false;
         boolean offline = false;
@@ -725,7 +753,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
         boolean roster = false;
         boolean online = false;
 
-        for (AccountItem accountItem : accountItems.values()) {
+        for (AccountItem accountItem : snapshot.getItems()) {
             ConnectionState state = accountItem.getState();
             if (state == ConnectionState.connected) {
                 online = true;
@@ -785,7 +813,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
 
     private boolean hasSameBareAddress(AccountJid account) {
         BareJid bareJid = account.getFullJid().asBareJid();
-        for (AccountItem check : accountItems.values()) {
+        for (AccountItem check : snapshot.getItems()) {
             if (!check.getAccount().equals(account)
                     && check.getAccount().getFullJid().asBareJid().equals(bareJid)) {
                 return true;
@@ -839,7 +867,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
             LogManager.exception(this, e);
         }
         boolean found = false;
-        for (AccountItem check : accountItems.values()) {
+        for (AccountItem check : snapshot.getItems()) {
             if (check.isEnabled() && SettingsManager.statusMode() == check.getRawStatusMode()) {
                 found = true;
                 break;
@@ -849,7 +877,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
             SettingsManager.setStatusMode(statusMode);
         }
         found = false;
-        for (AccountItem check : accountItems.values()) {
+        for (AccountItem check : snapshot.getItems()) {
             if (check.isEnabled() && SettingsManager.statusText().equals(check.getStatusText())) {
                 found = true;
                 break;
@@ -913,7 +941,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
      * Sends new presence information for all accounts.
      */
     public void resendPresence() {
-        for (AccountItem accountItem : accountItems.values()) {
+        for (AccountItem accountItem : snapshot.getItems()) {
             if (accountItem.isEnabled()) {
                 try {
                     PresenceManager.getInstance().resendPresence(accountItem.getAccount());
@@ -936,6 +964,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
         AccountItem accountItem = getAccount(accountJid);
         if (accountItem != null) {
             accountItem.setOrder(order);
+            publishSnapshot();
             requestToWriteAccount(accountItem);
         }
     }
@@ -1015,7 +1044,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
             SettingsManager.setStatusText(statusText);
         }
 
-        for (AccountItem accountItem : accountItems.values()) {
+        for (AccountItem accountItem : snapshot.getItems()) {
             setStatus(accountItem, statusMode,
                     statusText == null ? accountItem.getStatusText() : statusText);
         }
@@ -1102,7 +1131,7 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
             return null;
         }
 
-        AccountItem selectedAccountItem = accountItems.get(selected);
+        AccountItem selectedAccountItem = snapshot.getAccount(selected);
         if (selectedAccountItem != null && selectedAccountItem.isEnabled()) {
             return selected;
         }
@@ -1129,13 +1158,17 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
     }
 
     public void onAccountsChanged(final Collection<AccountJid> accounts) {
+        ReconnectionManager.getInstance().requestCheck();
         Application.getInstance().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                for (OnAccountChangedListener accountListener
-                        : Application.getInstance().getUIListeners(OnAccountChangedListener.class)) {
-                    accountListener.onAccountsChanged(accounts);
-                }
+                Application.getInstance().notifyUIListeners(OnAccountChangedListener.class,
+                        new ListenerRegistry.Call<OnAccountChangedListener>() {
+                    @Override
+                    public void call(OnAccountChangedListener listener) {
+                        listener.onAccountsChanged(accounts);
+                    }
+                });
             }
         });
     }
@@ -0,0 +1,92 @@
+package com.xabber.android.data.account;
+
+import com.xabber.android.data.entity.AccountJid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable state of registered accounts.
+ * <p/>
+ * {@link AccountManager} publishes new snapshot each time account is added,
+ * removed, enabled, disabled or reordered. Readers on any thread get
+ * consistent collections without copying or locking.
+ * <p/>
+ * Snapshot holds the same {@link AccountItem} instances, so connection state
+ * and status are read from items and are not part of the snapshot.
+ */
+public class AccountSnapshot {
+
+    static final AccountSnapshot EMPTY = new AccountSnapshot(0,
+            Collections.<AccountJid, AccountItem>emptyMap());
+
+    private final long version;
+    private final Map<AccountJid, AccountItem> accountItems;
+    private final AccountItem[] items;
+    private final Collection<AccountJid> allAccounts;
+    private final Collection<AccountJid> enabledAccounts;
+    private final Collection<AccountItem> allAccountItems;
+
+    AccountSnapshot(long version, Map<AccountJid, AccountItem> source) {
+        this.version = version;
+        this.accountItems = Collections.unmodifiableMap(new HashMap<>(source));
+        this.items = source.values().toArray(new AccountItem[source.size()]);
+
+        List<AccountJid> allAccounts = new ArrayList<>(items.length);
+        List<AccountJid> enabledAccounts = new ArrayList<>(items.length);
+        for (AccountItem accountItem : items) {
+            AccountJid accountJid = accountItem.getAccount();
+            allAccounts.add(accountJid);
+            if (accountItem.isEnabled()) {
+                accountJid.setOrder(accountItem.getOrder());
+                enabledAccounts.add(accountJid);
+            }
+        }
+        this.allAccounts = Collections.unmodifiableList(allAccounts);
+        this.enabledAccounts = Collections.unmodifiableList(enabledAccounts);
+        this.allAccountItems = Collections.unmodifiableList(Arrays.asList(items));
+    }
+
+    /**
+     * @return Number increased with each published snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    AccountItem getAccount(AccountJid account) {
+        return accountItems.get(account);
+    }
+
+    /**
+     * @return All account items, must not be modified.
+     */
+    AccountItem[] getItems() {
+        return items;
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    public Collection<AccountJid> getAllAccounts() {
+        return allAccounts;
+    }
+
+    /**
+     * @return Enabled accounts with order assigned.
+     */
+    public Collection<AccountJid> getEnabledAccounts() {
+        return enabledAccounts;
+    }
+
+    public Collection<AccountItem> getAllAccountItems() {
+        return allAccountItems;
+    }
+
+}
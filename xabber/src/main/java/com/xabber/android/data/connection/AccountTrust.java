@@ -0,0 +1,67 @@
+package com.xabber.android.data.connection;
+
+import android.support.annotation.NonNull;
+
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509TrustManager;
+
+import de.duenndns.ssl.MemorizingTrustManager;
+
+/**
+ * Certificate trust of the account shared by XMPP connection and http
+ * transfers.
+ * <p/>
+ * Memorized certificates are loaded by one trust manager, chains trusted
+ * by the system are cached and all connections use the same SSL context, so its client
+ * session cache lets reconnects resume TLS sessions.
+ */
+public class AccountTrust {
+
+    private final MemorizingTrustManager memorizingTrustManager;
+    private final CachingTrustManager trustManager;
+    private SSLContext sslContext;
+
+    AccountTrust(MemorizingTrustManager memorizingTrustManager) {
+        this.memorizingTrustManager = memorizingTrustManager;
+        trustManager = new CachingTrustManager(memorizingTrustManager);
+    }
+
+    /**
+     * @return Trust manager asking user about unknown certificates, used to
+     * verify host names.
+     */
+    @NonNull
+    public MemorizingTrustManager getMemorizingTrustManager() {
+        return memorizingTrustManager;
+    }
+
+    @NonNull
+    public X509TrustManager getTrustManager() {
+        return trustManager;
+    }
+
+    /**
+     * @return SSL context created once for the account.
+     */
+    @NonNull
+    public synchronized SSLContext getSSLContext() throws NoSuchAlgorithmException, KeyManagementException {
+        if (sslContext == null) {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new X509TrustManager[]{trustManager}, new SecureRandom());
+            this.sslContext = sslContext;
+        }
+        return sslContext;
+    }
+
+    /**
+     * Forgets accepted chains, so they will be validated on next handshake.
+     */
+    void clearCache() {
+        trustManager.clear();
+    }
+
+}
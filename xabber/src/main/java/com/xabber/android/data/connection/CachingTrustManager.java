@@ -0,0 +1,132 @@
+package com.xabber.android.data.connection;
+
+import android.util.LruCache;
+
+import com.xabber.android.data.log.LogManager;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Trust manager remembering server chains trusted by the system.
+ * <p/>
+ * Chain validated by system trust store without user interaction is cached
+ * by fingerprint of the server certificate until {@link #EXPIRATION_MS}
+ * passes or the certificate expires, so repeated handshakes with the same
+ * server skip chain validation. Other chains are passed to the wrapped
+ * trust manager every time, so decisions of the user and memorized
+ * certificates are never cached.
+ */
+class CachingTrustManager implements X509TrustManager {
+
+    private static final String LOG_TAG = CachingTrustManager.class.getSimpleName();
+
+    private static final long EXPIRATION_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final int MAX_ENTRIES = 32;
+
+    private final X509TrustManager trustManager;
+    /**
+     * System trust manager or <code>null</code> if it is not available.
+     */
+    private final X509TrustManager systemTrustManager;
+    /**
+     * Expiration time of acceptance by certificate fingerprint and auth type.
+     */
+    private final LruCache<String, Long> accepted;
+
+    CachingTrustManager(X509TrustManager trustManager) {
+        this.trustManager = trustManager;
+        systemTrustManager = createSystemTrustManager();
+        accepted = new LruCache<>(MAX_ENTRIES);
+    }
+
+    private static X509TrustManager createSystemTrustManager() {
+        try {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init((KeyStore) null);
+            for (TrustManager trustManager : factory.getTrustManagers()) {
+                if (trustManager instanceof X509TrustManager) {
+                    return (X509TrustManager) trustManager;
+                }
+            }
+        } catch (NoSuchAlgorithmException | KeyStoreException e) {
+            LogManager.exception(LOG_TAG, e);
+        }
+        return null;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        trustManager.checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        String key = getKey(chain, authType);
+        long now = System.currentTimeMillis();
+        if (key != null) {
+            Long expiration = accepted.get(key);
+            if (expiration != null && expiration > now) {
+                return;
+            }
+        }
+
+        if (key != null && systemTrustManager != null) {
+            try {
+                systemTrustManager.checkServerTrusted(chain, authType);
+                accepted.put(key, Math.min(now + EXPIRATION_MS, chain[0].getNotAfter().getTime()));
+                return;
+            } catch (CertificateException e) {
+                LogManager.i(LOG_TAG, "chain is not trusted by system: " + e.getMessage());
+            }
+        }
+
+        // memorized certificate or decision of the user
+        try {
+            trustManager.checkServerTrusted(chain, authType);
+        } finally {
+            clear();
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return trustManager.getAcceptedIssuers();
+    }
+
+    /**
+     * Forgets accepted chains, so they will be validated again.
+     */
+    void clear() {
+        accepted.evictAll();
+    }
+
+    private static String getKey(X509Certificate[] chain, String authType) {
+        if (chain == null || chain.length == 0) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(chain[0].getEncoded());
+            StringBuilder key = new StringBuilder(digest.length * 2 + authType.length() + 1);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.append(':').append(authType).toString();
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            LogManager.exception(LOG_TAG, e);
+            return null;
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import com.xabber.android.data.Application;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.listeners.OnAccountRemovedListener;
 import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.utils.HttpClientWithMTM;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -27,55 +28,63 @@ public class CertificateManager implements OnAccountRemovedListener {
         return instance;
     }
 
-    private Map<AccountJid, MemorizingTrustManager> memorizingTrustManagerMap;
-    private Map<AccountJid, MemorizingTrustManager> fileUploadMap;
+    /**
+     * Trust of accounts, created on first connection or http transfer.
+     */
+    private Map<AccountJid, AccountTrust> accountTrusts;
 
     private CertificateManager() {
-        this.memorizingTrustManagerMap = new ConcurrentHashMap<>();
-        this.fileUploadMap = new ConcurrentHashMap<>();
+        this.accountTrusts = new ConcurrentHashMap<>();
     }
 
+    /**
+     * @return Trust shared by all connections of the account.
+     */
     @NonNull
-    MemorizingTrustManager getNewMemorizingTrustManager(@NonNull final AccountJid accountJid) {
-        MemorizingTrustManager mtm = new MemorizingTrustManager(Application.getInstance());
-        if (currentActivityForBind != null) mtm.bindDisplayActivity(currentActivityForBind);
-        memorizingTrustManagerMap.put(accountJid, mtm);
-        return mtm;
-    }
+    public AccountTrust getAccountTrust(@NonNull final AccountJid accountJid) {
+        AccountTrust accountTrust = accountTrusts.get(accountJid);
+        if (accountTrust != null) {
+            return accountTrust;
+        }
 
-    @NonNull
-    public MemorizingTrustManager getNewFileUploadManager(@NonNull final AccountJid accountJid) {
-        MemorizingTrustManager mtm = new MemorizingTrustManager(Application.getInstance());
-        if (currentActivityForBind != null) mtm.bindDisplayActivity(currentActivityForBind);
-        fileUploadMap.put(accountJid, mtm);
-        return mtm;
+        synchronized (this) {
+            accountTrust = accountTrusts.get(accountJid);
+            if (accountTrust == null) {
+                MemorizingTrustManager mtm = new MemorizingTrustManager(Application.getInstance());
+                if (currentActivityForBind != null) mtm.bindDisplayActivity(currentActivityForBind);
+                accountTrust = new AccountTrust(mtm);
+                accountTrusts.put(accountJid, accountTrust);
+            }
+            return accountTrust;
+        }
     }
 
-    public void registerActivity(Activity activity) {
-        for (MemorizingTrustManager memorizingTrustManager : memorizingTrustManagerMap.values()) {
-            memorizingTrustManager.bindDisplayActivity(activity);
+    /**
+     * Forgets accepted certificate chains of all accounts.
+     */
+    public void clearTrustCache() {
+        for (AccountTrust accountTrust : accountTrusts.values()) {
+            accountTrust.clearCache();
         }
+    }
 
-        for (MemorizingTrustManager memorizingTrustManager : fileUploadMap.values()) {
-            memorizingTrustManager.bindDisplayActivity(activity);
+    public synchronized void registerActivity(Activity activity) {
+        for (AccountTrust accountTrust : accountTrusts.values()) {
+            accountTrust.getMemorizingTrustManager().bindDisplayActivity(activity);
         }
         currentActivityForBind = activity;
     }
 
-    public void unregisterActivity(Activity activity) {
-        for (MemorizingTrustManager memorizingTrustManager : memorizingTrustManagerMap.values()) {
-            memorizingTrustManager.unbindDisplayActivity(activity);
-        }
-
-        for (MemorizingTrustManager memorizingTrustManager : fileUploadMap.values()) {
-            memorizingTrustManager.unbindDisplayActivity(activity);
+    public synchronized void unregisterActivity(Activity activity) {
+        for (AccountTrust accountTrust : accountTrusts.values()) {
+            accountTrust.getMemorizingTrustManager().unbindDisplayActivity(activity);
         }
         if (currentActivityForBind == activity) currentActivityForBind = null;
     }
 
     @Override
     public void onAccountRemoved(AccountItem accountItem) {
-        memorizingTrustManagerMap.remove(accountItem.getAccount());
-        fileUploadMap.remove(accountItem.getAccount());
+        accountTrusts.remove(accountItem.getAccount());
+        HttpClientWithMTM.invalidate(accountItem.getAccount());
     }
 }
@@ -21,11 +21,7 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 
 import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
-import javax.net.ssl.X509TrustManager;
-
-import de.duenndns.ssl.MemorizingTrustManager;
 
 class ConnectionBuilder {
     private static final String LOG_TAG = ConnectionBuilder.class.getSimpleName();
@@ -54,12 +50,10 @@ class ConnectionBuilder {
             LogManager.i(LOG_TAG, "SettingsManager.securityCheckCertificate: " + SettingsManager.securityCheckCertificate());
 
             if (SettingsManager.securityCheckCertificate()) {
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                MemorizingTrustManager mtm = CertificateManager.getInstance().getNewMemorizingTrustManager(account);
-                sslContext.init(null, new X509TrustManager[]{mtm}, new java.security.SecureRandom());
-                builder.setCustomSSLContext(sslContext);
-                builder.setHostnameVerifier(
-                        mtm.wrapHostnameVerifier(new CustomDomainVerifier()));
+                AccountTrust accountTrust = CertificateManager.getInstance().getAccountTrust(account);
+                builder.setCustomSSLContext(accountTrust.getSSLContext());
+                builder.setHostnameVerifier(accountTrust.getMemorizingTrustManager()
+                        .wrapHostnameVerifier(new CustomDomainVerifier()));
             } else {
                 TLSUtils.acceptAllCertificates(builder);
                 builder.setHostnameVerifier(new AllowAllHostnameVerifier());
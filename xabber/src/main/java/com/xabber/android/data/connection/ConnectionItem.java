@@ -14,7 +14,9 @@
  */
 package com.xabber.android.data.connection;
 
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.widget.Toast;
 
 import com.xabber.android.data.Application;
@@ -24,6 +26,7 @@ import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.connection.listeners.OnPacketListener;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.roster.AccountRosterListener;
+import com.xabber.android.data.roster.AccountRosterStore;
 
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.packet.Stanza;
@@ -45,6 +48,11 @@ import org.jxmpp.jid.parts.Resourcepart;
  */
 public abstract class ConnectionItem {
 
+    /**
+     * Time in seconds the server is asked to keep stream management session for resumption.
+     */
+    private static final int STREAM_RESUMPTION_TIME_SECONDS = 300;
+
     @NonNull
     private final AccountJid account;
 
@@ -72,10 +80,23 @@ public abstract class ConnectionItem {
 
     @NonNull
     private final AccountRosterListener rosterListener;
+
+    @NonNull
+    private final AccountRosterStore rosterStore;
     Toast toast;
 
     private ConnectionThread connectionThread;
 
+    /**
+     * Time of the last connection attempt start, used to measure time to ready state.
+     */
+    private volatile long connectStartTimeMillis;
+
+    /**
+     * Stage durations of the last connection attempt.
+     */
+    private volatile ConnectionTimings connectionTimings;
+
     public ConnectionItem(boolean custom,
                           String host, int port, DomainBareJid serverName, Localpart userName,
                           Resourcepart resource, boolean storePassword, String password, String token,
@@ -85,6 +106,7 @@ public abstract class ConnectionItem {
         this.account = AccountJid.from(userName, serverName, resource);
         this.logTag = getClass().getSimpleName() + ": " + account;
         rosterListener = new AccountRosterListener(getAccount());
+        rosterStore = new AccountRosterStore(getAccount());
         connectionListener = new com.xabber.android.data.connection.ConnectionListener(this);
 
         connectionSettings = new ConnectionSettings(userName,
@@ -109,6 +131,22 @@ public abstract class ConnectionItem {
     }
 
 
+    long getConnectStartTimeMillis() {
+        return connectStartTimeMillis;
+    }
+
+    /**
+     * @return Stage durations of the last connection attempt or <code>null</code>.
+     */
+    @Nullable
+    public ConnectionTimings getConnectionTimings() {
+        return connectionTimings;
+    }
+
+    void setConnectionTimings(ConnectionTimings connectionTimings) {
+        this.connectionTimings = connectionTimings;
+    }
+
     @NonNull
     public AccountJid getAccount() {
         return account;
@@ -144,6 +182,7 @@ public abstract class ConnectionItem {
         LogManager.i(logTag, "connect");
 
         updateState(ConnectionState.connecting);
+        connectStartTimeMillis = SystemClock.elapsedRealtime();
         if (connectionThread == null) {
             connectionThread = new ConnectionThread(connection, this);
         };
@@ -155,7 +194,10 @@ public abstract class ConnectionItem {
         // enable Stream Management support. SMACK will only enable SM if supported by the server,
         // so no additional checks are required.
         connection.setUseStreamManagement(true);
-        connection.setUseStreamManagementResumption(false);
+        // keep SM session on server while connection is lost, so reconnect can resume it
+        // without new roster, presence and history requests
+        connection.setUseStreamManagementResumption(true);
+        connection.setPreferredResumptionTime(STREAM_RESUMPTION_TIME_SECONDS);
 
         // by default Smack disconnects in case of parsing errors
         connection.setParsingExceptionCallback(new ExceptionLoggingCallback());
@@ -168,6 +210,8 @@ public abstract class ConnectionItem {
         roster.addRosterLoadedListener(rosterListener);
         roster.setSubscriptionMode(Roster.SubscriptionMode.manual);
         roster.setRosterLoadedAtLogin(true);
+        // request only roster changes since stored version if server supports versioning
+        roster.setRosterStore(rosterStore);
 
         connection.addAsyncStanzaListener(everyStanzaListener, ForEveryStanza.INSTANCE);
         connection.addConnectionListener(connectionListener);
@@ -203,6 +247,23 @@ public abstract class ConnectionItem {
         thread.start();
     }
 
+    /**
+     * Drop socket without closing the stream, so Stream Management session can be resumed.
+     */
+    private void instantShutdown() {
+        Thread thread = new Thread("Shutdown thread for " + connection) {
+            @Override
+            public void run() {
+                LogManager.i(logTag, "instant shutdown, stream resumption possible");
+                connection.instantShutdown();
+            }
+
+        };
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     public void recreateConnection() {
         LogManager.i(logTag, "recreateConnection");
 
@@ -285,7 +346,9 @@ public abstract class ConnectionItem {
 
         this.state = newState;
 
-        LogManager.i(logTag, "updateState. prev " + prevState + " new "  + newState);
+        if (LogManager.isEnabled()) {
+            LogManager.i(logTag, "updateState. prev " + prevState + " new "  + newState);
+        }
 
         return prevState != state;
     }
@@ -310,7 +373,14 @@ public abstract class ConnectionItem {
         public void pingFailed() {
             LogManager.i(this, "pingFailed for " + getAccount());
             updateState(ConnectionState.offline);
-            disconnect();
+
+            if (connection.isSmResumptionPossible()) {
+                // connectionClosedOnError is not called for instant shutdown
+                connectionListener.disconnectDeferred = true;
+                instantShutdown();
+            } else {
+                disconnect();
+            }
         }
     };
 
@@ -1,5 +1,7 @@
 package com.xabber.android.data.connection;
 
+import android.os.SystemClock;
+
 import com.xabber.android.data.Application;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.connection.listeners.OnConnectedListener;
@@ -23,6 +25,13 @@ class ConnectionListener implements org.jivesoftware.smack.ConnectionListener {
     @SuppressWarnings("WeakerAccess")
     ConnectionItem connectionItem;
 
+    /**
+     * Whether chats were not notified about connection lost error
+     * because Stream Management session could be resumed.
+     */
+    @SuppressWarnings("WeakerAccess")
+    volatile boolean disconnectDeferred;
+
     ConnectionListener(ConnectionItem connectionItem) {
         this.connectionItem = connectionItem;
     }
@@ -56,10 +65,35 @@ class ConnectionListener implements org.jivesoftware.smack.ConnectionListener {
 
     @Override
     public void authenticated(XMPPConnection connection, final boolean resumed) {
-        LogManager.i(getLogTag(), "authenticated. resumed: " + resumed);
+        LogManager.i(getLogTag(), "authenticated. resumed: " + resumed + ", ready in "
+                + (SystemClock.elapsedRealtime() - connectionItem.getConnectStartTimeMillis()) + " ms");
 
         connectionItem.updateState(ConnectionState.connected);
 
+        final boolean notifyDisconnect = disconnectDeferred && !resumed;
+        disconnectDeferred = false;
+
+        if (resumed) {
+            // server kept roster, presence, carbons and rooms for resumed session
+            Application.getInstance().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    AccountManager.getInstance().removeAccountError(connectionItem.getAccount());
+                    MessageManager.getInstance().onResumed(connectionItem);
+                }
+            });
+            return;
+        }
+
+        if (notifyDisconnect) {
+            Application.getInstance().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    MessageManager.getInstance().onDisconnect(connectionItem);
+                }
+            });
+        }
+
         // just to see the order of call
 
         CarbonManager.getInstance().onAuthorized(connectionItem);
@@ -100,6 +134,9 @@ class ConnectionListener implements org.jivesoftware.smack.ConnectionListener {
     public void connectionClosedOnError(final Exception e) {
         LogManager.i(getLogTag(), "connectionClosedOnError " + e + " " + e.getMessage());
 
+        final boolean resumptionPossible = connectionItem.getConnection().isSmResumptionPossible();
+        disconnectDeferred = resumptionPossible;
+
         Application.getInstance().runOnUiThread(new Runnable() {
             @Override
             public void run() {
@@ -117,9 +154,12 @@ class ConnectionListener implements org.jivesoftware.smack.ConnectionListener {
                 }
                 /*
                   Send to chats action of disconnect
-                  Then RoomChat set state in "waiting" which need for rejoin to room
+                  Then RoomChat set state in "waiting" which need for rejoin to room.
+                  Rooms stay joined if session will be resumed, so wait for authentication result.
                  */
-                MessageManager.getInstance().onDisconnect(connectionItem);
+                if (!resumptionPossible) {
+                    MessageManager.getInstance().onDisconnect(connectionItem);
+                }
             }
         });
     }
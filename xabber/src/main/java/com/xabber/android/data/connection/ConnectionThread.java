@@ -14,6 +14,7 @@
  */
 package com.xabber.android.data.connection;
 
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
@@ -34,64 +35,82 @@ import org.jivesoftware.smack.util.DNSUtil;
 import org.jivesoftware.smackx.xdata.packet.DataForm;
 
 import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import de.measite.minidns.AbstractDNSClient;
 
+/**
+ * Connection attempt of the account.
+ * <p/>
+ * Attempts of all accounts run in the shared pool of {@link #POOL_SIZE} threads,
+ * so cold start with many accounts connects them in parallel without
+ * spawning thread per attempt.
+ */
 class ConnectionThread {
 
+    private static final int POOL_SIZE = 4;
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
     @NonNull
     private final XMPPTCPConnection connection;
     @SuppressWarnings("WeakerAccess")
     @NonNull
     final ConnectionItem connectionItem;
-    private Thread thread;
+    private Future<?> future;
 
     ConnectionThread(@NonNull XMPPTCPConnection connection, @NonNull ConnectionItem connectionItem) {
         this.connection = connection;
         this.connectionItem = connectionItem;
-        createNewThread();
     }
 
-    private void createNewThread() {
-        LogManager.i(this, "Creating new connection thread");
-        thread = new Thread(new Runnable() {
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
             @Override
-            public void run() {
-                if (NetworkManager.isNetworkAvailable()) {
-                    connectAndLogin();
-                } else {
-                    connectionItem.updateState(ConnectionState.waiting);
-                    LogManager.i(this, "No network connection");
-                }
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Connection thread");
+                thread.setDaemon(true);
+                return thread;
             }
         });
-        thread.setPriority(Thread.MIN_PRIORITY);
-        thread.setDaemon(true);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
      *
-     * @return true if connection thread started, false if already running - nothing changed
+     * @return true if connection attempt submitted, false if already queued or running - nothing changed
      */
-    boolean start() {
-        if (thread.getState() == Thread.State.TERMINATED) {
-            LogManager.i(this, "Connection thread is finished, creating new one...");
-            createNewThread();
-        }
-
-        if (thread.getState() == Thread.State.NEW) {
-            LogManager.i(this, "Connection thread is new, starting...");
-            thread.start();
-            return true;
-        } else {
-            LogManager.i(this, "Connection thread is running already");
+    synchronized boolean start() {
+        if (future != null && !future.isDone()) {
+            LogManager.i(this, "Connection attempt is queued or running already");
             return false;
         }
+
+        LogManager.i(this, "Submitting connection attempt");
+        final long submitTime = SystemClock.elapsedRealtime();
+        future = EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (NetworkManager.isNetworkAvailable()) {
+                    connectAndLogin(SystemClock.elapsedRealtime() - submitTime);
+                } else {
+                    connectionItem.updateState(ConnectionState.waiting);
+                    LogManager.i(this, "No network connection");
+                }
+            }
+        });
+        return true;
     }
 
     @SuppressWarnings("WeakerAccess")
-    void connectAndLogin() {
+    void connectAndLogin(long queueMillis) {
         AndroidLoggingHandler.reset(new AndroidLoggingHandler());
         java.util.logging.Logger.getLogger(XMPPTCPConnection.class.getName()).setLevel(Level.FINEST);
         java.util.logging.Logger.getLogger(AbstractDNSClient.class.getName()).setLevel(Level.FINEST);
@@ -122,17 +141,24 @@ class ConnectionThread {
         LogManager.i(this, "Use DNS Java resolver");
         ExtDNSJavaResolver.setup();
 
+        ExtDNSJavaResolver.takeLookupTime();
+        long connectMillis = 0;
+        long loginMillis = 0;
         try {
             LogManager.i(this, "Trying to connect and login...");
             if (!connection.isConnected()) {
                 connectionItem.updateState(ConnectionState.connecting);
+                long startTime = SystemClock.elapsedRealtime();
                 connection.connect();
+                connectMillis = SystemClock.elapsedRealtime() - startTime;
             } else {
                 LogManager.i(this, "Already connected");
             }
 
             if (!connection.isAuthenticated()) {
+                long startTime = SystemClock.elapsedRealtime();
                 connection.login();
+                loginMillis = SystemClock.elapsedRealtime() - startTime;
 
                 // can be a cause of strange Smack behavior
                 // not authorization or not receiving a iq's
@@ -170,7 +196,11 @@ class ConnectionThread {
             LogManager.exception(this, e);
         }
 
-        LogManager.i(this, "Connection thread finished");
+        long dnsMillis = ExtDNSJavaResolver.takeLookupTime();
+        ConnectionTimings timings = new ConnectionTimings(queueMillis, dnsMillis,
+                Math.max(0, connectMillis - dnsMillis), loginMillis);
+        connectionItem.setConnectionTimings(timings);
+        LogManager.i(this, "Connection thread finished. " + timings);
     }
 
     @Override
@@ -0,0 +1,54 @@
+package com.xabber.android.data.connection;
+
+/**
+ * Duration of stages of the connection attempt.
+ */
+public class ConnectionTimings {
+
+    private final long queueMillis;
+    private final long dnsMillis;
+    private final long connectMillis;
+    private final long loginMillis;
+
+    ConnectionTimings(long queueMillis, long dnsMillis, long connectMillis, long loginMillis) {
+        this.queueMillis = queueMillis;
+        this.dnsMillis = dnsMillis;
+        this.connectMillis = connectMillis;
+        this.loginMillis = loginMillis;
+    }
+
+    /**
+     * @return Time the attempt waited for free connection thread.
+     */
+    public long getQueueMillis() {
+        return queueMillis;
+    }
+
+    /**
+     * @return Time of SRV and address lookups.
+     */
+    public long getDnsMillis() {
+        return dnsMillis;
+    }
+
+    /**
+     * @return Time of TCP connection, TLS and stream negotiation excluding DNS.
+     */
+    public long getConnectMillis() {
+        return connectMillis;
+    }
+
+    /**
+     * @return Time of SASL authentication and resource binding.
+     */
+    public long getLoginMillis() {
+        return loginMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "queue " + queueMillis + " ms, dns " + dnsMillis + " ms, connect "
+                + connectMillis + " ms, login " + loginMillis + " ms";
+    }
+
+}
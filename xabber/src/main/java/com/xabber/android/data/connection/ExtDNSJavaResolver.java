@@ -4,8 +4,11 @@ import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.LinkProperties;
 import android.net.Network;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
 
 import com.xabber.android.data.Application;
+import com.xabber.android.data.log.LogManager;
 
 import org.jivesoftware.smack.ConnectionConfiguration;
 import org.jivesoftware.smack.initializer.SmackInitializer;
@@ -19,10 +22,19 @@ import org.xbill.DNS.Record;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by valery.miller on 12.05.17.
@@ -32,6 +44,20 @@ public class ExtDNSJavaResolver extends DNSResolver implements SmackInitializer
 
     private static ExtDNSJavaResolver instance = new ExtDNSJavaResolver();
 
+    private static final int HOST_LOOKUP_THREADS = 4;
+
+    /**
+     * Resolves addresses of SRV targets in parallel.
+     */
+    private static final ExecutorService HOST_LOOKUP_EXECUTOR = createHostLookupExecutor();
+
+    private static final ThreadLocal<Long> lookupTime = new ThreadLocal<Long>() {
+        @Override
+        protected Long initialValue() {
+            return 0L;
+        }
+    };
+
     public static DNSResolver getInstance() {
         return instance;
     }
@@ -42,6 +68,29 @@ public class ExtDNSJavaResolver extends DNSResolver implements SmackInitializer
 
     @Override
     protected List<SRVRecord> lookupSRVRecords0(String name, List<HostAddress> failedAddresses, ConnectionConfiguration.DnssecMode dnssecMode) {
+        long startTime = SystemClock.elapsedRealtime();
+        try {
+            List<SRVRecord> res = SrvRecordCache.get(name);
+            if (res == null) {
+                res = lookupSRVRecords(name, failedAddresses, dnssecMode);
+            }
+            return res;
+        } finally {
+            lookupTime.set(lookupTime.get() + SystemClock.elapsedRealtime() - startTime);
+        }
+    }
+
+    /**
+     * @return Time spent in DNS lookups by the current thread since the last call.
+     */
+    static long takeLookupTime() {
+        long time = lookupTime.get();
+        lookupTime.set(0L);
+        return time;
+    }
+
+    private List<SRVRecord> lookupSRVRecords(String name, final List<HostAddress> failedAddresses,
+                                             final ConnectionConfiguration.DnssecMode dnssecMode) {
         List<SRVRecord> res = new ArrayList<SRVRecord>();
         org.xbill.DNS.ResolverConfig.refresh();
 
@@ -63,27 +112,107 @@ public class ExtDNSJavaResolver extends DNSResolver implements SmackInitializer
         if (recs == null)
             return res;
 
+        // resolve addresses of all targets at once instead of one by one
+        List<org.xbill.DNS.SRVRecord> srvRecords = new ArrayList<>(recs.length);
+        List<Future<List<InetAddress>>> futures = new ArrayList<>(recs.length);
+        long ttl = Long.MAX_VALUE;
         for (Record record : recs) {
             org.xbill.DNS.SRVRecord srvRecord = (org.xbill.DNS.SRVRecord) record;
             if (srvRecord != null && srvRecord.getTarget() != null) {
-                String host = srvRecord.getTarget().toString();
-                int port = srvRecord.getPort();
-                int priority = srvRecord.getPriority();
-                int weight = srvRecord.getWeight();
-
-                List<InetAddress> hostAddresses = lookupHostAddress0(host, failedAddresses, dnssecMode);
-                if (hostAddresses == null) {
-                    continue;
-                }
+                final String host = srvRecord.getTarget().toString();
+                srvRecords.add(srvRecord);
+                ttl = Math.min(ttl, srvRecord.getTTL());
+                futures.add(HOST_LOOKUP_EXECUTOR.submit(new Callable<List<InetAddress>>() {
+                    @Override
+                    public List<InetAddress> call() {
+                        List<HostAddress> failed = new ArrayList<>();
+                        List<InetAddress> addresses = lookupHostAddress0(host, failed, dnssecMode);
+                        synchronized (failedAddresses) {
+                            failedAddresses.addAll(failed);
+                        }
+                        return addresses;
+                    }
+                }));
+            }
+        }
 
-                SRVRecord r = new SRVRecord(host, port, priority, weight, hostAddresses);
-                res.add(r);
+        for (int index = 0; index < srvRecords.size(); index++) {
+            org.xbill.DNS.SRVRecord srvRecord = srvRecords.get(index);
+            List<InetAddress> hostAddresses;
+            try {
+                hostAddresses = futures.get(index).get();
+            } catch (InterruptedException e) {
+                for (Future<List<InetAddress>> future : futures) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return res;
+            } catch (ExecutionException e) {
+                LogManager.exception(this, e);
+                continue;
             }
+            if (hostAddresses == null) {
+                continue;
+            }
+
+            SRVRecord r = new SRVRecord(srvRecord.getTarget().toString(), srvRecord.getPort(),
+                    srvRecord.getPriority(), srvRecord.getWeight(), interleaveFamilies(hostAddresses));
+            res.add(r);
         }
 
+        if (!res.isEmpty() && res.size() == srvRecords.size()) {
+            SrvRecordCache.put(name, res, ttl);
+        }
         return res;
     }
 
+    /**
+     * Orders addresses to alternate IPv6 and IPv4 starting with the preferred
+     * family, so unreachable family costs one connection timeout at most.
+     */
+    static List<InetAddress> interleaveFamilies(List<InetAddress> addresses) {
+        if (addresses.size() < 2) {
+            return addresses;
+        }
+        List<InetAddress> first = new ArrayList<>(addresses.size());
+        List<InetAddress> second = new ArrayList<>(addresses.size());
+        boolean firstIsV6 = addresses.get(0) instanceof Inet6Address;
+        for (InetAddress address : addresses) {
+            if ((address instanceof Inet6Address) == firstIsV6) {
+                first.add(address);
+            } else {
+                second.add(address);
+            }
+        }
+        if (second.isEmpty()) {
+            return addresses;
+        }
+        List<InetAddress> result = new ArrayList<>(addresses.size());
+        for (int index = 0; index < Math.max(first.size(), second.size()); index++) {
+            if (index < first.size()) {
+                result.add(first.get(index));
+            }
+            if (index < second.size()) {
+                result.add(second.get(index));
+            }
+        }
+        return result;
+    }
+
+    private static ExecutorService createHostLookupExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(HOST_LOOKUP_THREADS, HOST_LOOKUP_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "DNS lookup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     public static void setup() {
         DNSUtil.setDNSResolver(getInstance());
     }
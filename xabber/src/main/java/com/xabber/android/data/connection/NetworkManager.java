@@ -89,7 +89,8 @@ public class  NetworkManager implements OnCloseListener, OnInitializedListener {
      */
     private void onAvailable() {
         LogManager.i(LOG_TAG, "onAvailable");
-        ConnectionManager.getInstance().connectAll();
+        SrvRecordCache.clear();
+        ReconnectionManager.getInstance().onNetworkAvailable();
     }
 
     public static boolean isNetworkAvailable() {
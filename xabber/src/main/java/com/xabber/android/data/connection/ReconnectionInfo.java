@@ -1,5 +1,7 @@
 package com.xabber.android.data.connection;
 
+import android.os.SystemClock;
+
 /**
  * Information about reconnection attempts.
  *
@@ -7,6 +9,8 @@ package com.xabber.android.data.connection;
  */
 class ReconnectionInfo {
 
+    static final long NOT_SCHEDULED = -1;
+
     /**
      * Number of attempts to reconnect without success.
      */
@@ -17,6 +21,16 @@ class ReconnectionInfo {
      */
     private long lastReconnectionTimeMillis;
 
+    /**
+     * Elapsed realtime of the next scheduled attempt or {@link #NOT_SCHEDULED}.
+     */
+    private long nextAttemptTimeMillis;
+
+    /**
+     * Elapsed realtime when account lost connection or {@link #NOT_SCHEDULED}.
+     */
+    private long disconnectedTimeMillis;
+
     public ReconnectionInfo() {
         reset();
     }
@@ -29,13 +43,42 @@ class ReconnectionInfo {
         return lastReconnectionTimeMillis;
     }
 
+    long getNextAttemptTimeMillis() {
+        return nextAttemptTimeMillis;
+    }
+
+    boolean isScheduled() {
+        return nextAttemptTimeMillis != NOT_SCHEDULED;
+    }
+
+    void schedule(long nextAttemptTimeMillis) {
+        this.nextAttemptTimeMillis = nextAttemptTimeMillis;
+        if (disconnectedTimeMillis == NOT_SCHEDULED) {
+            disconnectedTimeMillis = SystemClock.elapsedRealtime();
+        }
+    }
+
+    long getDisconnectedTimeMillis() {
+        return disconnectedTimeMillis;
+    }
+
     public void reset() {
+        resetAttempts();
+        disconnectedTimeMillis = NOT_SCHEDULED;
+    }
+
+    /**
+     * Same as {@link #reset()}, but keeps time when connection was lost.
+     */
+    void resetAttempts() {
         reconnectAttempts = 0;
+        nextAttemptTimeMillis = NOT_SCHEDULED;
         resetReconnectionTime();
     }
 
     void resetReconnectionTime() {
-        lastReconnectionTimeMillis = System.currentTimeMillis();
+        lastReconnectionTimeMillis = SystemClock.elapsedRealtime();
+        nextAttemptTimeMillis = NOT_SCHEDULED;
     }
 
     public void nextAttempt() {
@@ -1,8 +1,11 @@
 package com.xabber.android.data.connection;
 
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
-import com.xabber.android.data.OnTimerListener;
+import com.xabber.android.data.DeadlineScheduler;
+import com.xabber.android.data.OnCloseListener;
+import com.xabber.android.data.OnInitializedListener;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.account.listeners.OnAccountRemovedListener;
@@ -10,19 +13,35 @@ import com.xabber.android.data.connection.listeners.OnConnectedListener;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.log.LogManager;
 
+import org.jxmpp.jid.DomainBareJid;
+
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Keeps connections of enabled accounts.
+ * <p/>
+ * Accounts are checked when account or connection state changes and at the
+ * time of the next scheduled attempt, using {@link DeadlineScheduler}.
+ */
 public class ReconnectionManager implements OnConnectedListener,
-        OnAccountRemovedListener, OnTimerListener {
+        OnAccountRemovedListener, OnInitializedListener, OnCloseListener {
+
+    /**
+     * Delay before the second attempt to reconnect. Every next failed attempt
+     * doubles it up to {@link #MAX_RECONNECT_DELAY_MILLIS}. First attempt is made immediately.
+     */
+    private static final long BASE_RECONNECT_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    private static final long MAX_RECONNECT_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(60);
 
     /**
-     * Intervals in seconds to be used for attempt to reconnect. First value
-     * will be used on first attempt. Next value will be used if reconnection
-     * fails. Last value will be used if there is no more values in array.
+     * Minimal interval between attempts of different accounts on the same server.
      */
-    private final static int RECONNECT_AFTER[] = new int[]{0, 2, 10, 30, 60};
+    private static final long SAME_SERVER_STAGGER_MILLIS = 700;
+
     private static final String LOG_TAG = ReconnectionManager.class.getSimpleName();
 
     /**
@@ -30,6 +49,17 @@ public class ReconnectionManager implements OnConnectedListener,
      */
     private final HashMap<AccountJid, ReconnectionInfo> connections;
 
+    /**
+     * Last scheduled attempt time for each server, used to stagger accounts on the same server.
+     */
+    private final Map<DomainBareJid, Long> serverLastAttemptTime;
+
+    private final Random random;
+
+    private final ReconnectionStatistics statistics;
+
+    private final Runnable checkRunnable;
+
     private static ReconnectionManager instance;
 
     public static ReconnectionManager getInstance() {
@@ -42,16 +72,82 @@ public class ReconnectionManager implements OnConnectedListener,
 
     private ReconnectionManager() {
         connections = new HashMap<>();
+        serverLastAttemptTime = new HashMap<>();
+        random = new Random();
+        statistics = new ReconnectionStatistics();
+        checkRunnable = new Runnable() {
+            @Override
+            public void run() {
+                checkConnections();
+            }
+        };
     }
 
     @Override
-    public void onTimer() {
+    public void onInitialized() {
+        requestCheck();
+    }
+
+    /**
+     * Requests check of all accounts as soon as possible. Can be called from any thread,
+     * subsequent requests before the check are merged.
+     */
+    public void requestCheck() {
+        DeadlineScheduler.getInstance().scheduleNow(this, checkRunnable);
+    }
+
+    private void checkConnections() {
         Collection<AccountJid> allAccounts = AccountManager.getInstance().getAllAccounts();
 
         for (AccountJid accountJid : allAccounts) {
             checkConnection(AccountManager.getInstance().getAccount(accountJid),
                     getReconnectionInfo(accountJid));
         }
+        scheduleNextCheck();
+    }
+
+    /**
+     * Schedules check at the earliest attempt time. Accounts with connection in progress are
+     * rechecked after {@link #BASE_RECONNECT_DELAY_MILLIS} if state doesn't change before.
+     */
+    private void scheduleNextCheck() {
+        long nextCheckTime = ReconnectionInfo.NOT_SCHEDULED;
+        for (AccountItem accountItem : AccountManager.getInstance().getAllAccountItems()) {
+            if (!isAccountNeedConnection(accountItem)) {
+                continue;
+            }
+            ReconnectionInfo reconnectionInfo = getReconnectionInfo(accountItem.getAccount());
+            long checkTime = reconnectionInfo.isScheduled()
+                    ? reconnectionInfo.getNextAttemptTimeMillis()
+                    : SystemClock.elapsedRealtime() + BASE_RECONNECT_DELAY_MILLIS;
+            if (nextCheckTime == ReconnectionInfo.NOT_SCHEDULED || checkTime < nextCheckTime) {
+                nextCheckTime = checkTime;
+            }
+        }
+
+        if (nextCheckTime == ReconnectionInfo.NOT_SCHEDULED) {
+            DeadlineScheduler.getInstance().cancel(this);
+        } else {
+            DeadlineScheduler.getInstance().schedule(this, nextCheckTime, checkRunnable);
+        }
+    }
+
+    /**
+     * Network connection was regained. Reconnect accounts right now
+     * without waiting for backoff delays, staggering accounts on the same server.
+     */
+    void onNetworkAvailable() {
+        LogManager.i(LOG_TAG, "onNetworkAvailable");
+        serverLastAttemptTime.clear();
+
+        Collection<AccountJid> allAccounts = AccountManager.getInstance().getAllAccounts();
+        for (AccountJid accountJid : allAccounts) {
+            ReconnectionInfo reconnectionInfo = getReconnectionInfo(accountJid);
+            // time without network is part of reconnection latency
+            reconnectionInfo.resetAttempts();
+            checkConnection(AccountManager.getInstance().getAccount(accountJid), reconnectionInfo);
+        }
+        scheduleNextCheck();
     }
 
     private void checkConnection(AccountItem accountItem, ReconnectionInfo reconnectionInfo) {
@@ -72,25 +168,31 @@ public class ReconnectionManager implements OnConnectedListener,
             return;
         }
 
-        if (!isTimeToReconnect(reconnectionInfo)) {
-            LogManager.i(LOG_TAG, accountItem.getAccount()
-                    + " not authenticated. State: " + accountItem.getState()
-                    + " waiting... seconds from last reconnection "
-                    + getTimeSinceLastReconnectionSeconds(reconnectionInfo));
+        long now = SystemClock.elapsedRealtime();
+
+        if (!reconnectionInfo.isScheduled()) {
+            reconnectionInfo.schedule(getNextAttemptTime(accountItem, reconnectionInfo, now));
+        }
+
+        if (now < reconnectionInfo.getNextAttemptTimeMillis()) {
             return;
         }
 
         boolean newThreadStarted = accountItem.connect();
         if (newThreadStarted) {
             reconnectionInfo.nextAttempt();
-            LogManager.i(LOG_TAG, accountItem.getAccount()
-                    + " not authenticated. new thread started. next attempt "
-                    + reconnectionInfo.getReconnectAttempts());
+            if (LogManager.isEnabled()) {
+                LogManager.i(LOG_TAG, accountItem.getAccount()
+                        + " not authenticated. new thread started. next attempt "
+                        + reconnectionInfo.getReconnectAttempts());
+            }
         } else {
             reconnectionInfo.resetReconnectionTime();
-            LogManager.i(LOG_TAG, accountItem.getAccount()
-                    + " not authenticated. already in progress. reset time. attempt "
-                    + reconnectionInfo.getReconnectAttempts());
+            if (LogManager.isEnabled()) {
+                LogManager.i(LOG_TAG, accountItem.getAccount()
+                        + " not authenticated. already in progress. reset time. attempt "
+                        + reconnectionInfo.getReconnectAttempts());
+            }
         }
     }
 
@@ -99,24 +201,46 @@ public class ReconnectionManager implements OnConnectedListener,
                 && !accountItem.getConnection().isAuthenticated();
     }
 
-    private boolean isTimeToReconnect(ReconnectionInfo reconnectionInfo) {
-        int reconnectAfter;
-        if (reconnectionInfo.getReconnectAttempts() < RECONNECT_AFTER.length) {
-            reconnectAfter = RECONNECT_AFTER[reconnectionInfo.getReconnectAttempts()];
-        } else {
-            reconnectAfter = RECONNECT_AFTER[RECONNECT_AFTER.length - 1];
+    /**
+     * @return time of the next attempt using exponential backoff with jitter,
+     * not earlier than {@link #SAME_SERVER_STAGGER_MILLIS} after attempt of another account
+     * on the same server.
+     */
+    private long getNextAttemptTime(AccountItem accountItem, ReconnectionInfo reconnectionInfo, long now) {
+        long attemptTime = Math.max(now, reconnectionInfo.getLastReconnectionTimeMillis()
+                + getBackoffDelay(reconnectionInfo.getReconnectAttempts()));
+
+        DomainBareJid serverName = accountItem.getConnectionSettings().getServerName();
+        Long serverAttemptTime = serverLastAttemptTime.get(serverName);
+        if (serverAttemptTime != null && attemptTime < serverAttemptTime + SAME_SERVER_STAGGER_MILLIS) {
+            attemptTime = serverAttemptTime + SAME_SERVER_STAGGER_MILLIS;
         }
+        serverLastAttemptTime.put(serverName, attemptTime);
 
-        return getTimeSinceLastReconnectionSeconds(reconnectionInfo) >= reconnectAfter;
+        if (LogManager.isEnabled()) {
+            LogManager.i(LOG_TAG, accountItem.getAccount() + " next attempt in "
+                    + (attemptTime - now) + " ms, attempt " + reconnectionInfo.getReconnectAttempts());
+        }
+        return attemptTime;
     }
 
-    private long getTimeSinceLastReconnectionSeconds(ReconnectionInfo reconnectionInfo) {
-        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()
-                - reconnectionInfo.getLastReconnectionTimeMillis());
+    private long getBackoffDelay(int attempts) {
+        if (attempts == 0) {
+            return 0;
+        }
+
+        long delay = MAX_RECONNECT_DELAY_MILLIS;
+        if (attempts <= 16) {
+            delay = Math.min(MAX_RECONNECT_DELAY_MILLIS, BASE_RECONNECT_DELAY_MILLIS << (attempts - 1));
+        }
+
+        // use random value from the upper half of delay to spread attempts of different accounts
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
     }
 
     public void requestReconnect(AccountJid accountJid) {
         getReconnectionInfo(accountJid).reset();
+        requestCheck();
     }
 
     @NonNull
@@ -140,12 +264,30 @@ public class ReconnectionManager implements OnConnectedListener,
     @Override
     public void onConnected(ConnectionItem connection) {
         LogManager.i(LOG_TAG, "onConnected " + connection.getAccount());
+
+        ReconnectionInfo info = connections.get(connection.getAccount());
+        if (info != null && info.getDisconnectedTimeMillis() != ReconnectionInfo.NOT_SCHEDULED) {
+            long latency = SystemClock.elapsedRealtime() - info.getDisconnectedTimeMillis();
+            statistics.onReconnected(latency, info.getReconnectAttempts());
+            if (LogManager.isEnabled()) {
+                LogManager.i(LOG_TAG, connection.getAccount() + " reconnected in " + latency
+                        + " ms, attempts " + info.getReconnectAttempts());
+            }
+        }
+
         resetReconnectionInfo(connection.getAccount());
     }
 
+    @Override
+    public void onClose() {
+        if (LogManager.isEnabled()) {
+            LogManager.i(LOG_TAG, "reconnection statistics " + statistics);
+        }
+    }
+
     @Override
     public void onAccountRemoved(AccountItem accountItem) {
         connections.remove(accountItem.getAccount());
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,45 @@
+package com.xabber.android.data.connection;
+
+/**
+ * Histograms of reconnection latency and number of attempts needed to reconnect.
+ */
+class ReconnectionStatistics {
+
+    /**
+     * Upper bounds of latency buckets in milliseconds. Last bucket holds everything above.
+     */
+    private static final long LATENCY_BUCKETS[] = new long[]{1000, 5000, 15000, 60000, 300000};
+
+    /**
+     * Number of attempts buckets, last one holds everything above.
+     */
+    private static final int ATTEMPT_BUCKETS = 6;
+
+    private final int latencyHistogram[] = new int[LATENCY_BUCKETS.length + 1];
+    private final int attemptsHistogram[] = new int[ATTEMPT_BUCKETS];
+
+    synchronized void onReconnected(long latencyMillis, int attempts) {
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && latencyMillis > LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        latencyHistogram[bucket]++;
+
+        attemptsHistogram[Math.max(0, Math.min(attempts, ATTEMPT_BUCKETS - 1))]++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("latency:");
+        for (int i = 0; i < latencyHistogram.length; i++) {
+            builder.append(i < LATENCY_BUCKETS.length ? " <=" + LATENCY_BUCKETS[i] + "ms: " : " more: ")
+                    .append(latencyHistogram[i]);
+        }
+        builder.append("; attempts:");
+        for (int i = 0; i < attemptsHistogram.length; i++) {
+            builder.append(i < ATTEMPT_BUCKETS - 1 ? " " + i + ": " : " " + i + "+: ")
+                    .append(attemptsHistogram[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package com.xabber.android.data.connection;
+
+import android.os.SystemClock;
+
+import org.jivesoftware.smack.util.dns.SRVRecord;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SRV records shared by all accounts, kept for their TTL.
+ * <p/>
+ * Smack sorts returned list and marks failed addresses in place, so cache
+ * keeps plain values and every lookup gets new records.
+ */
+class SrvRecordCache {
+
+    /**
+     * Bounds of TTL, so misconfigured zones neither defeat the cache nor pin
+     * stale records.
+     */
+    private static final long MIN_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static class Target {
+        final String host;
+        final int port;
+        final int priority;
+        final int weight;
+        final List<InetAddress> addresses;
+
+        Target(String host, int port, int priority, int weight, List<InetAddress> addresses) {
+            this.host = host;
+            this.port = port;
+            this.priority = priority;
+            this.weight = weight;
+            this.addresses = addresses;
+        }
+    }
+
+    private static class Entry {
+        final List<Target> targets;
+        final long expirationTime;
+
+        Entry(List<Target> targets, long expirationTime) {
+            this.targets = targets;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private SrvRecordCache() {
+    }
+
+    /**
+     * @return Not expired records or <code>null</code>.
+     */
+    static List<SRVRecord> get(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() >= entry.expirationTime) {
+            entries.remove(name, entry);
+            return null;
+        }
+        List<SRVRecord> records = new ArrayList<>(entry.targets.size());
+        for (Target target : entry.targets) {
+            records.add(new SRVRecord(target.host, target.port, target.priority, target.weight,
+                    new ArrayList<>(target.addresses)));
+        }
+        return records;
+    }
+
+    /**
+     * @param ttlSeconds minimal TTL of the records.
+     */
+    static void put(String name, List<SRVRecord> records, long ttlSeconds) {
+        long ttl = Math.min(MAX_TTL_MILLIS, Math.max(MIN_TTL_MILLIS, TimeUnit.SECONDS.toMillis(ttlSeconds)));
+        List<Target> targets = new ArrayList<>(records.size());
+        for (SRVRecord record : records) {
+            targets.add(new Target(record.getFQDN(), record.getPort(), record.getPriority(),
+                    record.getWeight(), Collections.unmodifiableList(new ArrayList<>(record.getInetAddresses()))));
+        }
+        entries.put(name, new Entry(targets, SystemClock.elapsedRealtime() + ttl));
+    }
+
+    /**
+     * Drops all records, e.g. when network has changed.
+     */
+    static void clear() {
+        entries.clear();
+    }
+
+}
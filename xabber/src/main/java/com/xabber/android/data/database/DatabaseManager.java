@@ -28,6 +28,7 @@ import com.xabber.android.data.database.sqlite.AccountTable;
 import com.xabber.android.data.database.sqlite.AvatarTable;
 import com.xabber.android.data.database.sqlite.DatabaseTable;
 import com.xabber.android.data.database.sqlite.GroupTable;
+import com.xabber.android.data.database.sqlite.MessageSearchTable;
 import com.xabber.android.data.database.sqlite.MessageTable;
 import com.xabber.android.data.database.sqlite.NotificationTable;
 import com.xabber.android.data.database.sqlite.NotifyVisibleTable;
@@ -61,7 +62,7 @@ public class DatabaseManager extends SQLiteOpenHelper implements
         OnLoadListener, OnClearListener {
 
     private static final String DATABASE_NAME = "xabber.db";
-    private static final int DATABASE_VERSION = 70;
+    private static final int DATABASE_VERSION = 72;
 
     private static final SQLiteException DOWNGRADE_EXCEPTION = new SQLiteException(
             "Database file was deleted");
@@ -103,6 +104,7 @@ public class DatabaseManager extends SQLiteOpenHelper implements
         addTable(NotificationTable.getInstance());
         addTable(Suppress100Table.getInstance());
         addTable(PhraseTable.getInstance());
+        addTable(MessageSearchTable.getInstance());
     }
 
 
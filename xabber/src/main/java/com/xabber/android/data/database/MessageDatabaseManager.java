@@ -11,6 +11,7 @@ import com.xabber.android.data.database.messagerealm.SyncInfo;
 import com.xabber.android.data.database.sqlite.MessageTable;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.extension.file.AttachmentIndex;
 import com.xabber.android.data.log.LogManager;
 
 import org.jxmpp.stringprep.XmppStringprepException;
@@ -18,6 +19,7 @@ import org.jxmpp.stringprep.XmppStringprepException;
 import java.util.Date;
 
 import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
 import io.realm.FieldAttribute;
 import io.realm.Realm;
 import io.realm.RealmConfiguration;
@@ -30,7 +32,7 @@ import io.realm.annotations.RealmModule;
 
 public class MessageDatabaseManager {
     private static final String REALM_MESSAGE_DATABASE_NAME = "xabber.realm";
-    static final int REALM_MESSAGE_DATABASE_VERSION = 16;
+    static final int REALM_MESSAGE_DATABASE_VERSION = 17;
     private final RealmConfiguration realmConfiguration;
 
     private static MessageDatabaseManager instance;
@@ -123,6 +125,12 @@ public class MessageDatabaseManager {
                         .findAll()
                         .deleteAllFromRealm();
 
+                RealmResults<Attachment> attachments = realm.where(Attachment.class)
+                        .equalTo(Attachment.Fields.ACCOUNT, account.toString())
+                        .findAll();
+                AttachmentIndex.onDeleted(attachments);
+                attachments.deleteAllFromRealm();
+
                 realm.where(SyncInfo.class)
                         .equalTo(SyncInfo.FIELD_ACCOUNT, account.toString())
                         .findAll()
@@ -281,6 +289,39 @@ public class MessageDatabaseManager {
                             oldVersion++;
                         }
 
+                        if (oldVersion == 16) {
+                            schema.get(Attachment.class.getSimpleName())
+                                    .addField(Attachment.Fields.ACCOUNT, String.class, FieldAttribute.INDEXED)
+                                    .addField(Attachment.Fields.USER, String.class, FieldAttribute.INDEXED)
+                                    .addField(Attachment.Fields.MESSAGE_ID, String.class)
+                                    .addField(Attachment.Fields.TIMESTAMP, Long.class, FieldAttribute.INDEXED)
+                                    .addField(Attachment.Fields.CATEGORY, String.class);
+
+                            RealmResults<DynamicRealmObject> messageItems = realm1
+                                    .where(MessageItem.class.getSimpleName())
+                                    .isNotEmpty(MessageItem.Fields.ATTACHMENTS)
+                                    .findAll();
+                            for (DynamicRealmObject messageItem : messageItems) {
+                                for (DynamicRealmObject attachment
+                                        : messageItem.getList(MessageItem.Fields.ATTACHMENTS)) {
+                                    String path = attachment.getString(Attachment.Fields.FILE_PATH);
+                                    attachment.setString(Attachment.Fields.ACCOUNT,
+                                            messageItem.getString(MessageItem.Fields.ACCOUNT));
+                                    attachment.setString(Attachment.Fields.USER,
+                                            messageItem.getString(MessageItem.Fields.USER));
+                                    attachment.setString(Attachment.Fields.MESSAGE_ID,
+                                            messageItem.getString(MessageItem.Fields.UNIQUE_ID));
+                                    attachment.set(Attachment.Fields.TIMESTAMP,
+                                            messageItem.get(MessageItem.Fields.TIMESTAMP));
+                                    attachment.setString(Attachment.Fields.CATEGORY, AttachmentIndex.getCategory(
+                                            attachment.getString(Attachment.Fields.MIME_TYPE),
+                                            path != null ? path : attachment.getString(Attachment.Fields.FILE_URL))
+                                            .toString());
+                                }
+                            }
+                            oldVersion++;
+                        }
+
                     }
                 })
                 .build();
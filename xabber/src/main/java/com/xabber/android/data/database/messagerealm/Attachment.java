@@ -5,6 +5,7 @@ import android.support.annotation.Nullable;
 import java.util.UUID;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 import io.realm.annotations.Required;
 
@@ -21,6 +22,11 @@ public class Attachment extends RealmObject {
         public static final String IMAGE_HEIGHT = "imageHeight";
         public static final String DURATION = "duration";
         public static final String MIME_TYPE = "mimeType";
+        public static final String ACCOUNT = "account";
+        public static final String USER = "user";
+        public static final String MESSAGE_ID = "messageId";
+        public static final String TIMESTAMP = "timestamp";
+        public static final String CATEGORY = "category";
     }
 
     @PrimaryKey
@@ -54,6 +60,23 @@ public class Attachment extends RealmObject {
     /** Duration in seconds */
     private Long duration;
 
+    /**
+     * Account, user, id and timestamp of the message, copied to query
+     * attachments of the chat without messages.
+     */
+    @Index
+    private String account;
+    @Index
+    private String user;
+    private String messageId;
+    @Index
+    private Long timestamp;
+
+    /**
+     * Name of file category, determined once when message is stored.
+     */
+    private String category;
+
     public Attachment() {
         this.uniqueId = UUID.randomUUID().toString();
     }
@@ -135,4 +158,47 @@ public class Attachment extends RealmObject {
     public void setDuration(Long duration) {
         this.duration = duration;
     }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public void setAccount(String account) {
+        this.account = account;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return Name of file category or <code>null</code> if not classified yet.
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
 }
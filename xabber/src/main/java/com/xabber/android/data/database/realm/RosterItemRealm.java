@@ -0,0 +1,101 @@
+package com.xabber.android.data.database.realm;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+import io.realm.annotations.Required;
+
+/**
+ * Cached roster item used as persistent roster store with roster versioning.
+ */
+public class RosterItemRealm extends RealmObject {
+
+    public static class Fields {
+        public static final String ID = "id";
+        public static final String ACCOUNT = "account";
+        public static final String JID = "jid";
+    }
+
+    /**
+     * Groups are stored in one field separated by this character, as it can not be part of group name.
+     */
+    public static final String GROUP_SEPARATOR = "\n";
+
+    @PrimaryKey
+    @Required
+    private String id;
+
+    @Index
+    private String account;
+    private String jid;
+    private String name;
+    private String itemType;
+    private boolean subscriptionPending;
+    private boolean approved;
+    private String groups;
+
+    public RosterItemRealm() {
+    }
+
+    public RosterItemRealm(String account, String jid) {
+        this.id = createId(account, jid);
+        this.account = account;
+        this.jid = jid;
+    }
+
+    public static String createId(String account, String jid) {
+        return account + "-" + jid;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public String getJid() {
+        return jid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getItemType() {
+        return itemType;
+    }
+
+    public void setItemType(String itemType) {
+        this.itemType = itemType;
+    }
+
+    public boolean isSubscriptionPending() {
+        return subscriptionPending;
+    }
+
+    public void setSubscriptionPending(boolean subscriptionPending) {
+        this.subscriptionPending = subscriptionPending;
+    }
+
+    public boolean isApproved() {
+        return approved;
+    }
+
+    public void setApproved(boolean approved) {
+        this.approved = approved;
+    }
+
+    public String getGroups() {
+        return groups;
+    }
+
+    public void setGroups(String groups) {
+        this.groups = groups;
+    }
+}
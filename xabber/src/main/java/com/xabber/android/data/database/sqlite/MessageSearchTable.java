@@ -0,0 +1,315 @@
+package com.xabber.android.data.database.sqlite;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.Nullable;
+
+import com.xabber.android.data.database.DatabaseManager;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.message.search.IndexedMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Full text index of message texts.
+ * <p/>
+ * Tokens are stored in FTS virtual table with docid equal to the row id of
+ * postings table, which holds unique id, account, user and timestamp of the message.
+ * <p/>
+ * Row id is derived from timestamp, so docid order is the order of messages
+ * in time no matter when they were indexed (e.g. archive sync or rebuild).
+ */
+public class MessageSearchTable extends AbstractEntityTable {
+
+    public static final class Fields implements AbstractEntityTable.Fields {
+
+        private Fields() {
+        }
+
+        /**
+         * Unique id of message in Realm.
+         */
+        public static final String UNIQUE_ID = "unique_id";
+
+        public static final String TIMESTAMP = "timestamp";
+
+        /**
+         * Normalized text, column of full text table.
+         */
+        public static final String TEXT = "text";
+
+        public static final String DOC_ID = "docid";
+
+    }
+
+    /**
+     * Number of row ids reserved for messages with the same timestamp.
+     */
+    private static final long IDS_PER_TIMESTAMP = 1 << 16;
+
+    private static final long MAX_TIMESTAMP = Long.MAX_VALUE / IDS_PER_TIMESTAMP - 1;
+
+    private static final String NAME = "message_search";
+    private static final String TEXT_NAME = "message_search_text";
+    private static final String[] PROJECTION = new String[]{Fields._ID,
+            Fields.UNIQUE_ID, Fields.ACCOUNT, Fields.USER, Fields.TIMESTAMP};
+
+    private final DatabaseManager databaseManager;
+    private SQLiteStatement removeTextStatement;
+    private SQLiteStatement nextIdStatement;
+    private SQLiteStatement writeStatement;
+    private SQLiteStatement writeTextStatement;
+    private final Object writeLock;
+
+    private static MessageSearchTable instance;
+
+    public static MessageSearchTable getInstance() {
+        if (instance == null) {
+            instance = new MessageSearchTable(DatabaseManager.getInstance());
+        }
+
+        return instance;
+    }
+
+    private MessageSearchTable(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+        writeLock = new Object();
+    }
+
+    @Override
+    public void create(SQLiteDatabase db) {
+        String sql;
+        sql = "CREATE TABLE " + NAME + " (" + Fields._ID + " INTEGER PRIMARY KEY,"
+                + Fields.UNIQUE_ID + " TEXT," + Fields.ACCOUNT + " TEXT,"
+                + Fields.USER + " TEXT," + Fields.TIMESTAMP + " INTEGER);";
+        DatabaseManager.execSQL(db, sql);
+        sql = "CREATE UNIQUE INDEX " + NAME + "_unique_id ON " + NAME + " ("
+                + Fields.UNIQUE_ID + ")";
+        DatabaseManager.execSQL(db, sql);
+        sql = "CREATE INDEX " + NAME + "_list ON " + NAME + " ("
+                + Fields.ACCOUNT + ", " + Fields.USER + ")";
+        DatabaseManager.execSQL(db, sql);
+        sql = "CREATE INDEX " + NAME + "_timestamp ON " + NAME + " ("
+                + Fields.TIMESTAMP + ")";
+        DatabaseManager.execSQL(db, sql);
+        sql = "CREATE VIRTUAL TABLE " + TEXT_NAME + " USING fts4(" + Fields.TEXT + ");";
+        DatabaseManager.execSQL(db, sql);
+    }
+
+    @Override
+    public void migrate(SQLiteDatabase db, int toVersion) {
+        super.migrate(db, toVersion);
+        switch (toVersion) {
+            case 72:
+                create(db);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Adds messages to the index in one transaction, replacing already indexed ones.
+     */
+    public void write(Collection<IndexedMessage> messages) {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            compileWriteStatements(db);
+            db.beginTransaction();
+            try {
+                for (IndexedMessage message : messages) {
+                    removeTextStatement.bindString(1, message.getUniqueId());
+                    removeTextStatement.execute();
+
+                    long timestamp = Math.min(Math.max(0, message.getTimestamp()), MAX_TIMESTAMP);
+                    long firstId = timestamp * IDS_PER_TIMESTAMP;
+                    nextIdStatement.bindLong(1, firstId);
+                    nextIdStatement.bindLong(2, firstId);
+                    nextIdStatement.bindLong(3, firstId + IDS_PER_TIMESTAMP - 1);
+                    long id = nextIdStatement.simpleQueryForLong();
+                    if (id >= firstId + IDS_PER_TIMESTAMP) {
+                        LogManager.w(this, "No free id for timestamp " + message.getTimestamp());
+                        continue;
+                    }
+
+                    writeStatement.bindLong(1, id);
+                    writeStatement.bindString(2, message.getUniqueId());
+                    writeStatement.bindString(3, message.getAccount());
+                    writeStatement.bindString(4, message.getUser());
+                    writeStatement.bindLong(5, message.getTimestamp());
+                    writeStatement.executeInsert();
+
+                    writeTextStatement.bindLong(1, id);
+                    writeTextStatement.bindString(2, message.getText());
+                    writeTextStatement.execute();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    private void compileWriteStatements(SQLiteDatabase db) {
+        if (writeStatement != null) {
+            return;
+        }
+        removeTextStatement = db.compileStatement("DELETE FROM " + TEXT_NAME
+                + " WHERE " + Fields.DOC_ID + " = (SELECT " + Fields._ID + " FROM " + NAME
+                + " WHERE " + Fields.UNIQUE_ID + " = ?);");
+        nextIdStatement = db.compileStatement("SELECT IFNULL(MAX(" + Fields._ID + ") + 1, ?) FROM "
+                + NAME + " WHERE " + Fields._ID + " BETWEEN ? AND ?;");
+        writeStatement = db.compileStatement("INSERT OR REPLACE INTO " + NAME
+                + " (" + Fields._ID + ", " + Fields.UNIQUE_ID + ", " + Fields.ACCOUNT + ", " + Fields.USER
+                + ", " + Fields.TIMESTAMP + ") VALUES (?, ?, ?, ?, ?);");
+        writeTextStatement = db.compileStatement("INSERT INTO " + TEXT_NAME
+                + " (" + Fields.DOC_ID + ", " + Fields.TEXT + ") VALUES (?, ?);");
+    }
+
+    public void remove(Collection<String> uniqueIds) {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (String uniqueId : uniqueIds) {
+                    String[] args = new String[]{uniqueId};
+                    db.delete(TEXT_NAME, Fields.DOC_ID + " IN (SELECT " + Fields._ID + " FROM "
+                            + NAME + " WHERE " + Fields.UNIQUE_ID + " = ?)", args);
+                    db.delete(NAME, Fields.UNIQUE_ID + " = ?", args);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    public void remove(String account, String user) {
+        remove(Fields.ACCOUNT + " = ? AND " + Fields.USER + " = ?", new String[]{account, user});
+    }
+
+    @Override
+    public void removeAccount(AccountJid account) {
+        remove(Fields.ACCOUNT + " = ?", new String[]{account.toString()});
+    }
+
+    private void remove(String selection, String[] selectionArgs) {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(TEXT_NAME, Fields.DOC_ID + " IN (SELECT " + Fields._ID + " FROM "
+                        + NAME + " WHERE " + selection + ")", selectionArgs);
+                db.delete(NAME, selection, selectionArgs);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(TEXT_NAME, null, null);
+                db.delete(NAME, null, null);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    public long count() {
+        return DatabaseUtils.queryNumEntries(databaseManager.getReadableDatabase(), NAME);
+    }
+
+    /**
+     * Finds messages matching FTS query, most recent first.
+     * <p/>
+     * Rows are read from full text table in descending docid order, which is
+     * the order of timestamps, and joined with postings one by one, so query
+     * stops after <code>limit</code> rows passing account and user filters
+     * instead of sorting all matches. FTS still reads doclists of all query
+     * terms, so page costs more for common words and, when limited to a chat,
+     * for matches in other chats that are skipped.
+     *
+     * @param match   FTS query.
+     * @param account limit results to account, if not <code>null</code>.
+     * @param user    limit results to chat with user, if not <code>null</code>.
+     * @param lastId  id of the last row of previous page or
+     *                <code>null</code> for the first page.
+     * @param limit   page size.
+     * @return Result set with defined projection.
+     */
+    public Cursor search(String match, @Nullable String account, @Nullable String user,
+                         @Nullable Long lastId, int limit) {
+        List<String> selectionArgs = new ArrayList<>(4);
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int index = 0; index < PROJECTION.length; index++) {
+            if (index > 0) {
+                sql.append(", ");
+            }
+            sql.append(NAME).append('.').append(PROJECTION[index]);
+        }
+        // CROSS JOIN keeps full text table in the outer loop
+        sql.append(" FROM ").append(TEXT_NAME).append(" CROSS JOIN ").append(NAME)
+                .append(" ON ").append(NAME).append('.').append(Fields._ID).append(" = ")
+                .append(TEXT_NAME).append('.').append(Fields.DOC_ID)
+                .append(" WHERE ").append(TEXT_NAME).append('.').append(Fields.TEXT).append(" MATCH ?");
+        selectionArgs.add(match);
+        if (lastId != null) {
+            sql.append(" AND ").append(TEXT_NAME).append('.').append(Fields.DOC_ID).append(" < ?");
+            selectionArgs.add(String.valueOf(lastId));
+        }
+        if (account != null) {
+            sql.append(" AND ").append(NAME).append('.').append(Fields.ACCOUNT).append(" = ?");
+            selectionArgs.add(account);
+        }
+        if (user != null) {
+            sql.append(" AND ").append(NAME).append('.').append(Fields.USER).append(" = ?");
+            selectionArgs.add(user);
+        }
+        sql.append(" ORDER BY ").append(TEXT_NAME).append('.').append(Fields.DOC_ID)
+                .append(" DESC LIMIT ").append(limit);
+
+        SQLiteDatabase db = databaseManager.getReadableDatabase();
+        return db.rawQuery(sql.toString(), selectionArgs.toArray(new String[selectionArgs.size()]));
+    }
+
+    @Override
+    protected String getTableName() {
+        return NAME;
+    }
+
+    @Override
+    protected String[] getProjection() {
+        return PROJECTION;
+    }
+
+    @Override
+    protected String getListOrder() {
+        return Fields.TIMESTAMP;
+    }
+
+    public static long getId(Cursor cursor) {
+        return cursor.getLong(cursor.getColumnIndex(Fields._ID));
+    }
+
+    public static String getUniqueId(Cursor cursor) {
+        return cursor.getString(cursor.getColumnIndex(Fields.UNIQUE_ID));
+    }
+
+    public static long getTimestamp(Cursor cursor) {
+        return cursor.getLong(cursor.getColumnIndex(Fields.TIMESTAMP));
+    }
+
+}
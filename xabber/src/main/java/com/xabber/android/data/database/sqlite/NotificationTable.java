@@ -14,6 +14,7 @@
  */
 package com.xabber.android.data.database.sqlite;
 
+import java.util.Collection;
 import java.util.Date;
 
 import android.database.Cursor;
@@ -22,6 +23,7 @@ import android.database.sqlite.SQLiteStatement;
 
 import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.notification.MessageNotification;
 
 /**
  * Storage with notifications.
@@ -109,22 +111,52 @@ public class NotificationTable extends AbstractEntityTable {
     public void write(String account, String user, String text, Date timeStamp,
                int count) {
         synchronized (writeLock) {
-            if (writeStatement == null) {
-                SQLiteDatabase db = databaseManager.getWritableDatabase();
-                writeStatement = db.compileStatement("INSERT OR REPLACE INTO "
-                        + NAME + " (" + Fields.ACCOUNT + ", " + Fields.USER
-                        + ", " + Fields.TEXT + ", " + Fields.TIMESTAMP + ", "
-                        + Fields.COUNT + ") VALUES " + "(?, ?, ?, ?, ?);");
+            compileWriteStatement();
+            bindAndExecute(account, user, text, timeStamp, count);
+        }
+    }
+
+    /**
+     * Writes notifications in one transaction.
+     */
+    public void write(Collection<MessageNotification> notifications) {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            compileWriteStatement();
+            db.beginTransaction();
+            try {
+                for (MessageNotification notification : notifications) {
+                    bindAndExecute(notification.getAccount().toString(),
+                            notification.getUser().toString(), notification.getText(),
+                            notification.getTimestamp(), notification.getCount());
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
-            writeStatement.bindString(1, account);
-            writeStatement.bindString(2, user);
-            writeStatement.bindString(3, text);
-            writeStatement.bindLong(4, timeStamp.getTime());
-            writeStatement.bindLong(5, count);
-            writeStatement.execute();
         }
     }
 
+    private void compileWriteStatement() {
+        if (writeStatement == null) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            writeStatement = db.compileStatement("INSERT OR REPLACE INTO "
+                    + NAME + " (" + Fields.ACCOUNT + ", " + Fields.USER
+                    + ", " + Fields.TEXT + ", " + Fields.TIMESTAMP + ", "
+                    + Fields.COUNT + ") VALUES " + "(?, ?, ?, ?, ?);");
+        }
+    }
+
+    private void bindAndExecute(String account, String user, String text, Date timeStamp,
+                                int count) {
+        writeStatement.bindString(1, account);
+        writeStatement.bindString(2, user);
+        writeStatement.bindString(3, text);
+        writeStatement.bindLong(4, timeStamp.getTime());
+        writeStatement.bindLong(5, count);
+        writeStatement.execute();
+    }
+
     public void remove(String account, String user) {
         SQLiteDatabase db = databaseManager.getWritableDatabase();
         db.delete(NAME, Fields.ACCOUNT + " = ? AND " + Fields.USER + " = ?",
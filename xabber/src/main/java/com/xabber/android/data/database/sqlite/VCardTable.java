@@ -22,6 +22,8 @@ import android.provider.BaseColumns;
 import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.roster.StructuredName;
 
+import java.util.Map;
+
 /**
  * Storage with useful vcard fields.
  *
@@ -40,13 +42,14 @@ public class VCardTable extends AbstractTable {
         public static final String FIRST_NAME = "first_name";
         public static final String MIDDLE_NAME = "middle_name";
         public static final String LAST_NAME = "last_name";
+        public static final String HASH = "hash";
 
     }
 
     private static final String NAME = "vcards";
     private static final String[] PROJECTION = new String[]{Fields.USER,
             Fields.NICK_NAME, Fields.FORMATTED_NAME, Fields.FIRST_NAME,
-            Fields.MIDDLE_NAME, Fields.LAST_NAME};
+            Fields.MIDDLE_NAME, Fields.LAST_NAME, Fields.HASH};
 
     private final DatabaseManager databaseManager;
     private SQLiteStatement writeStatement;
@@ -74,7 +77,7 @@ public class VCardTable extends AbstractTable {
                 + " TEXT PRIMARY KEY," + Fields.NICK_NAME + " TEXT,"
                 + Fields.FORMATTED_NAME + " TEXT," + Fields.FIRST_NAME
                 + " TEXT," + Fields.MIDDLE_NAME + " TEXT," + Fields.LAST_NAME
-                + " TEXT);";
+                + " TEXT," + Fields.HASH + " TEXT);";
         DatabaseManager.execSQL(db, sql);
     }
 
@@ -102,28 +105,53 @@ public class VCardTable extends AbstractTable {
                         + "last_name TEXT);";
                 DatabaseManager.execSQL(db, sql);
                 break;
+            case 71:
+                sql = "ALTER TABLE vcards ADD COLUMN hash TEXT;";
+                DatabaseManager.execSQL(db, sql);
+                break;
             default:
                 break;
         }
     }
 
-    public void write(String bareAddress, StructuredName name) {
+    /**
+     * Saves vCards in one transaction.
+     *
+     * @param names  structured names by bare address.
+     * @param hashes avatar hashes vCards were received for, by bare address.
+     */
+    public void write(Map<String, StructuredName> names, Map<String, String> hashes) {
         synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
             if (writeStatement == null) {
-                SQLiteDatabase db = databaseManager.getWritableDatabase();
                 writeStatement = db.compileStatement("INSERT OR REPLACE INTO "
                         + NAME + " (" + Fields.USER + ", " + Fields.NICK_NAME
                         + ", " + Fields.FORMATTED_NAME + ", "
                         + Fields.FIRST_NAME + ", " + Fields.MIDDLE_NAME + ", "
-                        + Fields.LAST_NAME + ") VALUES (?, ?, ?, ?, ?, ?);");
+                        + Fields.LAST_NAME + ", " + Fields.HASH
+                        + ") VALUES (?, ?, ?, ?, ?, ?, ?);");
+            }
+            db.beginTransaction();
+            try {
+                for (Map.Entry<String, StructuredName> entry : names.entrySet()) {
+                    StructuredName name = entry.getValue();
+                    writeStatement.bindString(1, entry.getKey());
+                    writeStatement.bindString(2, name.getNickName());
+                    writeStatement.bindString(3, name.getFormattedName());
+                    writeStatement.bindString(4, name.getFirstName());
+                    writeStatement.bindString(5, name.getMiddleName());
+                    writeStatement.bindString(6, name.getLastName());
+                    String hash = hashes.get(entry.getKey());
+                    if (hash == null)
+                        writeStatement.bindNull(7);
+                    else
+                        writeStatement.bindString(7, hash);
+                    writeStatement.execute();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
-            writeStatement.bindString(1, bareAddress);
-            writeStatement.bindString(2, name.getNickName());
-            writeStatement.bindString(3, name.getFormattedName());
-            writeStatement.bindString(4, name.getFirstName());
-            writeStatement.bindString(5, name.getMiddleName());
-            writeStatement.bindString(6, name.getLastName());
-            writeStatement.execute();
         }
     }
 
@@ -161,4 +189,8 @@ public class VCardTable extends AbstractTable {
         return cursor.getString(cursor.getColumnIndex(Fields.LAST_NAME));
     }
 
+    public static String getHash(Cursor cursor) {
+        return cursor.getString(cursor.getColumnIndex(Fields.HASH));
+    }
+
 }
\ No newline at end of file
@@ -30,8 +30,8 @@ import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.LruCache;
 
-import com.amulyakhare.textdrawable.TextDrawable;
 import com.amulyakhare.textdrawable.util.ColorGenerator;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
@@ -84,6 +84,11 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
      */
     private static final int MAX_SIZE = 256;
 
+    /**
+     * Maximum size in bytes of cached bitmaps for notifications and shortcuts.
+     */
+    private static final int BITMAP_CACHE_SIZE = 4 * 1024 * 1024;
+
     public static final String EMPTY_HASH = "";
     private static final Bitmap EMPTY_BITMAP = Bitmap.createBitmap(1, 1, Bitmap.Config.ALPHA_8);
     private static AvatarManager instance;
@@ -105,6 +110,14 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
      * Map with drawable used in contact list only for specified uses.
      */
     private final Map<Jid, Drawable> contactListDrawables;
+    /**
+     * Circle bitmaps made from user's avatars.
+     */
+    private final LruCache<Jid, Bitmap> circleBitmaps;
+    /**
+     * Bitmaps of letter and room placeholders.
+     */
+    private final DefaultAvatarRenderer defaultAvatarRenderer;
     /**
      * Users' default avatar set.
      */
@@ -130,6 +143,13 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
         hashes = new HashMap<>();
         bitmaps = new HashMap<>();
         contactListDrawables = new HashMap<>();
+        circleBitmaps = new LruCache<Jid, Bitmap>(BITMAP_CACHE_SIZE / 2) {
+            @Override
+            protected int sizeOf(Jid key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        defaultAvatarRenderer = new DefaultAvatarRenderer(application.getResources(), BITMAP_CACHE_SIZE / 2);
     }
 
     /**
@@ -252,6 +272,7 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
     private void setHash(final Jid jid, final String hash) {
         hashes.put(jid, hash == null ? EMPTY_HASH : hash);
         contactListDrawables.remove(jid);
+        circleBitmaps.remove(jid);
         application.runInBackground(new Runnable() {
             @Override
             public void run() {
@@ -308,6 +329,10 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
     @Override
     public void onLowMemory() {
         contactListDrawables.clear();
+        circleBitmaps.evictAll();
+        LogManager.i(this, "default avatars hits: " + defaultAvatarRenderer.getHitCount()
+                + ", misses: " + defaultAvatarRenderer.getMissCount());
+        defaultAvatarRenderer.onLowMemory();
         userAvatarSet.onLowMemory();
         roomAvatarSet.onLowMemory();
     }
@@ -377,14 +402,14 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
     }
 
     public Drawable generateDefaultRoomAvatar(@NonNull String jid) {
-        Drawable[] layers = new Drawable[2];
-        layers[0] = new ColorDrawable(ColorGenerator.MATERIAL.getColor(jid));
-        layers[1] = application.getResources().getDrawable(R.drawable.ic_conference_white);
-
-        LayerDrawable layerDrawable = new LayerDrawable(layers);
-        layerDrawable.setLayerInset(1, 25, 25, 25, 30);
+        return new BitmapDrawable(application.getResources(), getDefaultRoomBitmap(jid));
+    }
 
-        return layerDrawable;
+    /**
+     * @return Shared bitmap, must not be modified.
+     */
+    private Bitmap getDefaultRoomBitmap(@NonNull String jid) {
+        return defaultAvatarRenderer.getRoomAvatar(ColorGenerator.MATERIAL.getColor(jid));
     }
 
     public Drawable generateDefaultAvatar(@NonNull String jid, @NonNull String name) {
@@ -392,22 +417,19 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
     }
 
     public Drawable generateDefaultAvatar(@NonNull String jid, @NonNull String name, int color) {
-        String[] words = name.split("\\s+");
-        String chars = "";
-
-        if (words.length >= 1 && words[0].length() > 0)
-            chars = chars + words[0].substring(0, 1);
-
-        if (words.length >= 2 && words[1].length() > 0)
-            chars = chars + words[1].substring(0, 1);
+        return new BitmapDrawable(application.getResources(), getDefaultBitmap(name, color));
+    }
 
-        return TextDrawable.builder()
-                .beginConfig().fontSize(60).bold().width(150).height(150).endConfig()
-                .buildRound(chars.toUpperCase(), color);
+    /**
+     * @return Shared bitmap, must not be modified.
+     */
+    private Bitmap getDefaultBitmap(@NonNull String name, int color) {
+        return defaultAvatarRenderer.getLetterAvatar(DefaultAvatarRenderer.getInitials(name), color);
     }
 
     /**
-     * Gets bitmap with avatar for regular user.
+     * Gets and caches bitmap with avatar for regular user.
+     * Returned bitmap is shared and must not be modified.
      *
      * @param user
      * @return
@@ -415,9 +437,15 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
     public Bitmap getUserBitmap(UserJid user, String name) {
         Bitmap value = getBitmap(user.getJid());
         if (value != null) {
-            return getCircleBitmap(value);
+            Bitmap circleBitmap = circleBitmaps.get(user.getJid());
+            if (circleBitmap == null) {
+                circleBitmap = getCircleBitmap(value);
+                circleBitmaps.put(user.getJid(), circleBitmap);
+            }
+            return circleBitmap;
         } else {
-            return drawableToBitmap(generateDefaultAvatar(user.getBareJid().toString(), name));
+            String jid = user.getBareJid().toString();
+            return getDefaultBitmap(name, ColorGenerator.MATERIAL.getColor(jid));
         }
     }
 
@@ -458,7 +486,10 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
      * @return
      */
     public Bitmap getRoomBitmap(UserJid user) {
-        return drawableToBitmap(getRoomAvatar(user));
+        if (getBitmap(user.getJid()) != null) {
+            return drawableToBitmap(getRoomAvatar(user));
+        }
+        return getDefaultRoomBitmap(user.getBareJid().toString());
     }
 
     /**
@@ -0,0 +1,105 @@
+package com.xabber.android.data.extension.avatar;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.util.LruCache;
+
+import com.amulyakhare.textdrawable.TextDrawable;
+import com.xabber.android.R;
+
+/**
+ * Renders placeholder avatars once and shares resulting bitmaps.
+ * <p/>
+ * Letter avatars are cached by initials, color and size, room avatars by
+ * color. Returned bitmaps are shared and must not be modified.
+ */
+class DefaultAvatarRenderer {
+
+    /**
+     * Size in pixels of letter avatars.
+     */
+    static final int AVATAR_SIZE = 150;
+    private static final int FONT_SIZE = 60;
+
+    private final Resources resources;
+    private final LruCache<String, Bitmap> bitmaps;
+
+    DefaultAvatarRenderer(Resources resources, int maxSize) {
+        this.resources = resources;
+        bitmaps = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @return Upper cased first letters of the first two words of the name.
+     */
+    static String getInitials(String name) {
+        StringBuilder chars = new StringBuilder(2);
+        // Leading whitespace counts as an empty first word
+        int words = !name.isEmpty() && Character.isWhitespace(name.charAt(0)) ? 1 : 0;
+        boolean inWord = false;
+        for (int index = 0; index < name.length() && words < 2; index++) {
+            char c = name.charAt(index);
+            if (Character.isWhitespace(c)) {
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                chars.append(c);
+                words++;
+            }
+        }
+        return chars.toString().toUpperCase();
+    }
+
+    Bitmap getLetterAvatar(String initials, int color) {
+        String key = "l\n" + initials + "\n" + color + "\n" + AVATAR_SIZE;
+        Bitmap bitmap = bitmaps.get(key);
+        if (bitmap == null) {
+            bitmap = AvatarManager.drawableToBitmap(TextDrawable.builder()
+                    .beginConfig().fontSize(FONT_SIZE).bold().width(AVATAR_SIZE).height(AVATAR_SIZE).endConfig()
+                    .buildRound(initials, color));
+            bitmaps.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return Room icon on the color, sized by the icon.
+     */
+    Bitmap getRoomAvatar(int color) {
+        String key = "r\n" + color;
+        Bitmap bitmap = bitmaps.get(key);
+        if (bitmap == null) {
+            Drawable[] layers = new Drawable[2];
+            layers[0] = new ColorDrawable(color);
+            layers[1] = resources.getDrawable(R.drawable.ic_conference_white);
+
+            LayerDrawable layerDrawable = new LayerDrawable(layers);
+            layerDrawable.setLayerInset(1, 25, 25, 25, 30);
+
+            bitmap = AvatarManager.drawableToBitmap(layerDrawable);
+            bitmaps.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    int getHitCount() {
+        return bitmaps.hitCount();
+    }
+
+    int getMissCount() {
+        return bitmaps.missCount();
+    }
+
+    void onLowMemory() {
+        bitmaps.evictAll();
+    }
+
+}
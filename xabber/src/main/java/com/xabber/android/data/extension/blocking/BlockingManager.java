@@ -3,6 +3,7 @@ package com.xabber.android.data.extension.blocking;
 import android.support.annotation.Nullable;
 
 import com.xabber.android.data.Application;
+import com.xabber.android.data.ListenerRegistry;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.connection.ConnectionItem;
@@ -141,15 +142,21 @@ public class BlockingManager {
         Application.getInstance().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                for (OnBlockedListChangedListener onBlockedListChangedListener
-                        : Application.getInstance().getUIListeners(OnBlockedListChangedListener.class)) {
-                    onBlockedListChangedListener.onBlockedListChanged(account);
-                }
+                Application.getInstance().notifyUIListeners(OnBlockedListChangedListener.class,
+                        new ListenerRegistry.Call<OnBlockedListChangedListener>() {
+                    @Override
+                    public void call(OnBlockedListChangedListener listener) {
+                        listener.onBlockedListChanged(account);
+                    }
+                });
 
-                for (OnContactChangedListener onContactChangedListener
-                        : Application.getInstance().getUIListeners(OnContactChangedListener.class)) {
-                    onContactChangedListener.onContactsChanged(new ArrayList<RosterContact>());
-                }
+                Application.getInstance().notifyUIListeners(OnContactChangedListener.class,
+                        new ListenerRegistry.Call<OnContactChangedListener>() {
+                    @Override
+                    public void call(OnContactChangedListener listener) {
+                        listener.onContactsChanged(new ArrayList<RosterContact>());
+                    }
+                });
             }
         });
     }
@@ -16,10 +16,13 @@ package com.xabber.android.data.extension.capability;
 
 import android.content.Context;
 import android.support.annotation.Nullable;
+import android.util.LruCache;
 
 import com.xabber.android.BuildConfig;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.ListenerRegistry;
+import com.xabber.android.data.OnLowMemoryListener;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.entity.AccountJid;
@@ -32,11 +35,13 @@ import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smackx.caps.EntityCapsManager;
+import org.jivesoftware.smackx.caps.packet.CapsExtension;
 import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
 import org.jxmpp.jid.Jid;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -45,18 +50,27 @@ import java.util.concurrent.ConcurrentHashMap;
  *
  * @author alexander.ivanov
  */
-public class CapabilitiesManager {
+public class CapabilitiesManager implements OnLowMemoryListener {
 
     @SuppressWarnings("WeakerAccess")
     static final String LOG_TAG = CapabilitiesManager.class.getSimpleName();
 
+    private static final int DISCOVER_INFO_CACHE_SIZE = 512;
+
     private static CapabilitiesManager instance;
 
+    private final EntityCapsCache entityCapsCache;
+
     // cache for jids does not supporting Entity Caps
     @SuppressWarnings("WeakerAccess")
-    Map<Jid, DiscoverInfo> discoverInfoCache;
+    LruCache<Jid, DiscoverInfo> discoverInfoCache;
     private Map<Jid, ClientInfo> clientInfoCache;
 
+    /**
+     * Disco#info requests in progress by node#ver with jids waiting for the same result.
+     */
+    private final Map<String, Map<Jid, AccountJid>> requestsInProgress;
+
     public static CapabilitiesManager getInstance() {
         if (instance == null) {
             instance = new CapabilitiesManager();
@@ -69,12 +83,14 @@ public class CapabilitiesManager {
         Context applicationContext = Application.getInstance().getApplicationContext();
 
         EntityCapsManager.setDefaultEntityNode(applicationContext.getString(R.string.caps_entity_node));
-        EntityCapsManager.setPersistentCache(new EntityCapsCache());
+        entityCapsCache = new EntityCapsCache();
+        EntityCapsManager.setPersistentCache(entityCapsCache);
 
         setServiceDiscoveryClientIdentity(applicationContext);
 
-        discoverInfoCache = new ConcurrentHashMap<>();
+        discoverInfoCache = new LruCache<>(DISCOVER_INFO_CACHE_SIZE);
         clientInfoCache = new ConcurrentHashMap<>();
+        requestsInProgress = new HashMap<>();
     }
 
     private void setServiceDiscoveryClientIdentity(Context applicationContext) {
@@ -121,10 +137,16 @@ public class CapabilitiesManager {
             return;
         }
 
+        final String nodeVer = getNodeVer(presence);
+        if (nodeVer != null && !startRequest(nodeVer, accountJid, from)) {
+            // same capabilities are being discovered for another jid
+            return;
+        }
+
         Application.getInstance().runInBackground(new Runnable() {
             @Override
             public void run() {
-                updateClientInfo(accountJid, from);
+                updateClientInfo(accountJid, from, nodeVer);
             }
         });
     }
@@ -133,21 +155,57 @@ public class CapabilitiesManager {
         Application.getInstance().runInBackgroundUserRequest(new Runnable() {
             @Override
             public void run() {
-                updateClientInfo(account, jid);
+                updateClientInfo(account, jid, null);
             }
         });
     }
 
+    @Nullable
+    private static String getNodeVer(Presence presence) {
+        CapsExtension capsExtension = presence.getExtension(CapsExtension.ELEMENT, CapsExtension.NAMESPACE);
+        if (capsExtension == null || capsExtension.getNode() == null || capsExtension.getVer() == null) {
+            return null;
+        }
+        return capsExtension.getNode() + "#" + capsExtension.getVer();
+    }
+
+    /**
+     * @return <code>true</code> if caller should send disco#info request,
+     * <code>false</code> if request for the same node#ver is already in progress.
+     */
+    private boolean startRequest(String nodeVer, AccountJid account, Jid jid) {
+        synchronized (requestsInProgress) {
+            Map<Jid, AccountJid> waiting = requestsInProgress.get(nodeVer);
+            if (waiting != null) {
+                waiting.put(jid, account);
+                return false;
+            }
+            requestsInProgress.put(nodeVer, new HashMap<Jid, AccountJid>());
+            return true;
+        }
+    }
+
+    private Map<Jid, AccountJid> finishRequest(@Nullable String nodeVer) {
+        if (nodeVer == null) {
+            return null;
+        }
+        synchronized (requestsInProgress) {
+            return requestsInProgress.remove(nodeVer);
+        }
+    }
+
     @SuppressWarnings("WeakerAccess")
-    void updateClientInfo(final AccountJid account, final Jid jid) {
+    void updateClientInfo(final AccountJid account, final Jid jid, @Nullable String nodeVer) {
         DiscoverInfo discoverInfo = EntityCapsManager.getDiscoverInfoByUser(jid);
 
         if (discoverInfo != null) {
+            onRequestFinished(nodeVer, discoverInfo);
             return;
         }
 
         AccountItem accountItem = AccountManager.getInstance().getAccount(account);
         if (accountItem == null) {
+            onRequestFinished(nodeVer, null);
             return;
         }
 
@@ -155,20 +213,53 @@ public class CapabilitiesManager {
             discoverInfo = ServiceDiscoveryManager.getInstanceFor(accountItem.getConnection())
                     .discoverInfo(jid);
 
-            EntityCapsManager.NodeVerHash nodeVerHashByJid = EntityCapsManager.getNodeVerHashByJid(jid);
-            if (nodeVerHashByJid == null) {
-                discoverInfoCache.put(jid, discoverInfo);
-            }
-
-            if (discoverInfo != null) {
-                clientInfoCache.put(jid, ClientInfo.fromDiscoveryInfo(discoverInfo));
-            }
+            applyDiscoverInfo(jid, discoverInfo);
 
         } catch (SmackException.NoResponseException | XMPPException.XMPPErrorException | InterruptedException | SmackException.NotConnectedException e) {
             LogManager.exception(this, e);
             clientInfoCache.put(jid, ClientInfo.INVALID_CLIENT_INFO);
+            discoverInfo = null;
         }
 
+        notifyContactChanged(account, jid);
+        onRequestFinished(nodeVer, discoverInfo);
+    }
+
+    private void onRequestFinished(@Nullable String nodeVer, @Nullable DiscoverInfo discoverInfo) {
+        Map<Jid, AccountJid> waiting = finishRequest(nodeVer);
+        if (waiting == null) {
+            return;
+        }
+
+        for (final Map.Entry<Jid, AccountJid> entry : waiting.entrySet()) {
+            if (discoverInfo == null) {
+                // request failed for another entity, ask this one directly
+                Application.getInstance().runInBackground(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateClientInfo(entry.getValue(), entry.getKey(), null);
+                    }
+                });
+            } else {
+                applyDiscoverInfo(entry.getKey(), discoverInfo);
+                notifyContactChanged(entry.getValue(), entry.getKey());
+            }
+        }
+    }
+
+    private void applyDiscoverInfo(Jid jid, @Nullable DiscoverInfo discoverInfo) {
+        if (discoverInfo == null) {
+            return;
+        }
+
+        if (EntityCapsManager.getDiscoverInfoByUser(jid) == null) {
+            discoverInfoCache.put(jid, discoverInfo);
+        }
+
+        clientInfoCache.put(jid, ClientInfo.fromDiscoveryInfo(discoverInfo));
+    }
+
+    private void notifyContactChanged(AccountJid account, Jid jid) {
         RosterContact rosterContact = RosterManager.getInstance().getRosterContact(account, jid.asBareJid());
 
         if (rosterContact != null) {
@@ -178,15 +269,29 @@ public class CapabilitiesManager {
             Application.getInstance().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    for (OnContactChangedListener onContactChangedListener
-                            : Application.getInstance().getUIListeners(OnContactChangedListener.class)) {
-                        onContactChangedListener.onContactsChanged(rosterContacts);
-                    }
+                    Application.getInstance().notifyUIListeners(OnContactChangedListener.class,
+                            new ListenerRegistry.Call<OnContactChangedListener>() {
+                        @Override
+                        public void call(OnContactChangedListener listener) {
+                            listener.onContactsChanged(rosterContacts);
+                        }
+                    });
                 }
             });
         }
     }
 
+    @Override
+    public void onLowMemory() {
+        if (LogManager.isEnabled()) {
+            LogManager.i(LOG_TAG, "caps cache " + entityCapsCache.getStatistics()
+                    + ", non-caps entities: " + discoverInfoCache.size()
+                    + " (hits: " + discoverInfoCache.hitCount()
+                    + ", misses: " + discoverInfoCache.missCount() + ")");
+        }
+        entityCapsCache.onLowMemory();
+    }
+
     public boolean isFeatureSupported(Jid jid, String namespace) {
         DiscoverInfo discoverInfo = getDiscoverInfo(jid);
         return discoverInfo != null && discoverInfo.containsFeature(namespace);
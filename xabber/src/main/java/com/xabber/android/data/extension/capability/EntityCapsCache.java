@@ -1,5 +1,8 @@
 package com.xabber.android.data.extension.capability;
 
+import android.util.LruCache;
+
+import com.xabber.android.data.Application;
 import com.xabber.android.data.database.RealmManager;
 import com.xabber.android.data.database.realm.DiscoveryInfoCache;
 import com.xabber.android.data.log.LogManager;
@@ -7,55 +10,148 @@ import com.xabber.android.data.log.LogManager;
 import org.jivesoftware.smackx.caps.cache.EntityCapsPersistentCache;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
 
-import io.realm.Realm;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import io.realm.Realm;
 
+/**
+ * Two-tier entity capabilities cache.
+ * <p/>
+ * Parsed {@link DiscoverInfo} objects are kept in a bounded in-memory LRU keyed by node#ver,
+ * Realm is used as the persistent tier. New entries are written through to Realm in batches
+ * from the background executor, so bursts of capabilities after reconnect cost one transaction.
+ */
 class EntityCapsCache implements EntityCapsPersistentCache {
 
     private static final String LOG_TAG = EntityCapsCache.class.getSimpleName();
 
+    private static final int MEMORY_CACHE_SIZE = 256;
+
+    private final LruCache<String, DiscoverInfo> memoryCache;
+
+    /**
+     * Entries waiting to be written to Realm.
+     */
+    private final Map<String, DiscoverInfo> pendingWrites;
+    private final AtomicBoolean flushScheduled;
+
+    private final AtomicLong memoryHits;
+    private final AtomicLong persistentHits;
+    private final AtomicLong misses;
+
+    EntityCapsCache() {
+        memoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+        pendingWrites = new HashMap<>();
+        flushScheduled = new AtomicBoolean(false);
+        memoryHits = new AtomicLong();
+        persistentHits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
     @Override
     public void addDiscoverInfoByNodePersistent(final String nodeVer, final DiscoverInfo info) {
-        final long startTime = System.currentTimeMillis();
         if (nodeVer == null || info == null) {
             return;
         }
 
-        // TODO: 13.03.18 ANR - WRITE
-        Realm realm = RealmManager.getInstance().getNewRealm();
-        realm.beginTransaction();
+        memoryCache.put(nodeVer, info);
+
+        synchronized (pendingWrites) {
+            pendingWrites.put(nodeVer, info);
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            Application.getInstance().runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    flushPendingWrites();
+                }
+            });
+        }
+    }
 
-        DiscoveryInfoCache discoveryInfoCache = new DiscoveryInfoCache(nodeVer, info);
-        realm.copyToRealmOrUpdate(discoveryInfoCache);
+    @SuppressWarnings("WeakerAccess")
+    void flushPendingWrites() {
+        flushScheduled.set(false);
+
+        final List<DiscoveryInfoCache> batch;
+        synchronized (pendingWrites) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pendingWrites.size());
+            for (Map.Entry<String, DiscoverInfo> entry : pendingWrites.entrySet()) {
+                batch.add(new DiscoveryInfoCache(entry.getKey(), entry.getValue()));
+            }
+            pendingWrites.clear();
+        }
 
+        final long startTime = System.currentTimeMillis();
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        realm.beginTransaction();
+        realm.copyToRealmOrUpdate(batch);
         realm.commitTransaction();
         realm.close();
         LogManager.d("REALM", Thread.currentThread().getName()
-                + " save discover info: " + (System.currentTimeMillis() - startTime));
-
+                + " save discover info batch of " + batch.size() + ": "
+                + (System.currentTimeMillis() - startTime));
     }
 
     @Override
     public DiscoverInfo lookup(String nodeVer) {
-        Realm realm = RealmManager.getInstance().getNewRealm();
+        DiscoverInfo discoverInfo = memoryCache.get(nodeVer);
+        if (discoverInfo != null) {
+            memoryHits.incrementAndGet();
+            return discoverInfo;
+        }
+
+        synchronized (pendingWrites) {
+            discoverInfo = pendingWrites.get(nodeVer);
+        }
 
-        DiscoveryInfoCache discoveryInfoCache = realm.where(DiscoveryInfoCache.class)
-                .equalTo(DiscoveryInfoCache.Fields.NODE_VER, nodeVer)
-                .findFirst();
+        if (discoverInfo == null) {
+            Realm realm = RealmManager.getInstance().getNewRealm();
 
-        DiscoverInfo discoverInfo = null;
+            DiscoveryInfoCache discoveryInfoCache = realm.where(DiscoveryInfoCache.class)
+                    .equalTo(DiscoveryInfoCache.Fields.NODE_VER, nodeVer)
+                    .findFirst();
 
-        if (discoveryInfoCache != null) {
-            discoverInfo = realm.copyFromRealm(discoveryInfoCache).getDiscoveryInfo();
+            if (discoveryInfoCache != null) {
+                discoverInfo = realm.copyFromRealm(discoveryInfoCache).getDiscoveryInfo();
+            }
+
+            realm.close();
         }
 
-        realm.close();
+        if (discoverInfo == null) {
+            misses.incrementAndGet();
+        } else {
+            persistentHits.incrementAndGet();
+            memoryCache.put(nodeVer, discoverInfo);
+        }
 
         return discoverInfo;
     }
 
+    /**
+     * Drops memory tier, entries are read from the database again when requested.
+     */
+    void onLowMemory() {
+        memoryCache.evictAll();
+    }
+
     @Override
     public void emptyCache() {
+        memoryCache.evictAll();
+        synchronized (pendingWrites) {
+            pendingWrites.clear();
+        }
+
         final long startTime = System.currentTimeMillis();
         // TODO: 13.03.18 ANR - WRITE
         Realm realm = RealmManager.getInstance().getNewRealm();
@@ -70,4 +166,21 @@ class EntityCapsCache implements EntityCapsPersistentCache {
         LogManager.d("REALM", Thread.currentThread().getName()
                 + " delete discover cache: " + (System.currentTimeMillis() - startTime));
     }
+
+    long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    long getPersistentHits() {
+        return persistentHits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    String getStatistics() {
+        return "memory hits: " + getMemoryHits() + ", persistent hits: " + getPersistentHits()
+                + ", misses: " + getMisses() + ", memory size: " + memoryCache.size();
+    }
 }
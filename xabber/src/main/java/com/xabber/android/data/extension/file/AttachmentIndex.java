@@ -0,0 +1,151 @@
+package com.xabber.android.data.extension.file;
+
+import android.support.annotation.Nullable;
+import android.webkit.MimeTypeMap;
+
+import com.xabber.android.data.database.messagerealm.Attachment;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.filedownload.FileCategory;
+import com.xabber.android.data.log.LogManager;
+import com.xabber.android.ui.widget.MediaThumbnailCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmQuery;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Classifies attachments once when message is stored and queries them by
+ * chat or account.
+ * <p/>
+ * Each attachment keeps account, user, id and timestamp of its message, so
+ * attachments of a chat are read with indexed query without loading
+ * messages.
+ */
+public class AttachmentIndex {
+
+    private static final String LOG_TAG = AttachmentIndex.class.getSimpleName();
+
+    /**
+     * Copies message fields to its attachments and classifies them.
+     * Must be called when message has account, user and timestamp.
+     */
+    public static void index(MessageItem messageItem) {
+        if (!messageItem.haveAttachments()) {
+            return;
+        }
+
+        String account = messageItem.getAccount().toString();
+        String user = messageItem.getUser().toString();
+        for (Attachment attachment : messageItem.getAttachments()) {
+            attachment.setAccount(account);
+            attachment.setUser(user);
+            attachment.setMessageId(messageItem.getUniqueId());
+            attachment.setTimestamp(messageItem.getTimestamp());
+            if (attachment.getCategory() == null) {
+                attachment.setCategory(getCategory(attachment.getMimeType(),
+                        attachment.getFilePath() != null ? attachment.getFilePath() : attachment.getFileUrl())
+                        .toString());
+            }
+        }
+    }
+
+    /**
+     * Removes data derived from attachments, e.g. thumbnails.
+     * Must be called before attachments are deleted from Realm.
+     */
+    public static void onDeleted(Collection<Attachment> attachments) {
+        List<String> attachmentIds = new ArrayList<>(attachments.size());
+        for (Attachment attachment : attachments) {
+            attachmentIds.add(attachment.getUniqueId());
+        }
+        MediaThumbnailCache.getInstance().remove(attachmentIds);
+    }
+
+    /**
+     * @return Category stored in the attachment or determined by its mime type.
+     */
+    public static FileCategory getCategory(Attachment attachment) {
+        String category = attachment.getCategory();
+        if (category != null) {
+            try {
+                return FileCategory.valueOf(category);
+            } catch (IllegalArgumentException e) {
+                LogManager.exception(LOG_TAG, e);
+            }
+        }
+        return getCategory(attachment.getMimeType(),
+                attachment.getFilePath() != null ? attachment.getFilePath() : attachment.getFileUrl());
+    }
+
+    /**
+     * @param path local path or url, its extension is used if mime type is not known.
+     */
+    public static FileCategory getCategory(@Nullable String mimeType, @Nullable String path) {
+        if (mimeType == null || mimeType.isEmpty() || mimeType.startsWith("*")) {
+            String extension = path == null ? null : FileManager.extractRelevantExtension(path);
+            mimeType = extension == null ? null
+                    : MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+        }
+        return FileCategory.determineFileCategory(mimeType);
+    }
+
+    /**
+     * @param category of attachments or <code>null</code> for all.
+     * @return Attachments of the chat, newest first.
+     */
+    public static RealmResults<Attachment> getChatAttachments(Realm realm, AccountJid account,
+                                                              UserJid user, @Nullable FileCategory category) {
+        return getAccountAttachmentsQuery(realm, account, category)
+                .equalTo(Attachment.Fields.USER, user.toString())
+                .findAllSorted(Attachment.Fields.TIMESTAMP, Sort.DESCENDING);
+    }
+
+    /**
+     * @param category of attachments or <code>null</code> for all.
+     * @return Attachments of all chats of the account, newest first.
+     */
+    public static RealmResults<Attachment> getAccountAttachments(Realm realm, AccountJid account,
+                                                                 @Nullable FileCategory category) {
+        return getAccountAttachmentsQuery(realm, account, category)
+                .findAllSorted(Attachment.Fields.TIMESTAMP, Sort.DESCENDING);
+    }
+
+    /**
+     * Same as {@link #getChatAttachments(Realm, AccountJid, UserJid, FileCategory)},
+     * but query runs in background.
+     */
+    public static RealmResults<Attachment> getChatAttachmentsAsync(Realm realm, AccountJid account,
+                                                                   UserJid user, @Nullable FileCategory category) {
+        return getAccountAttachmentsQuery(realm, account, category)
+                .equalTo(Attachment.Fields.USER, user.toString())
+                .findAllSortedAsync(Attachment.Fields.TIMESTAMP, Sort.DESCENDING);
+    }
+
+    /**
+     * Same as {@link #getAccountAttachments(Realm, AccountJid, FileCategory)},
+     * but query runs in background.
+     */
+    public static RealmResults<Attachment> getAccountAttachmentsAsync(Realm realm, AccountJid account,
+                                                                      @Nullable FileCategory category) {
+        return getAccountAttachmentsQuery(realm, account, category)
+                .findAllSortedAsync(Attachment.Fields.TIMESTAMP, Sort.DESCENDING);
+    }
+
+    private static RealmQuery<Attachment> getAccountAttachmentsQuery(Realm realm, AccountJid account,
+                                                                     @Nullable FileCategory category) {
+        RealmQuery<Attachment> query = realm.where(Attachment.class)
+                .equalTo(Attachment.Fields.ACCOUNT, account.toString());
+        if (category != null) {
+            query.equalTo(Attachment.Fields.CATEGORY, category.toString());
+        }
+        return query;
+    }
+
+}
@@ -92,12 +92,44 @@ public class FileManager {
         return true;
     }
 
+    /**
+     * Loads local image of known size without decoding its bounds.
+     *
+     * @return Whether file exists.
+     */
+    public static boolean loadImageFromFile(Context context, String path, @Nullable Integer width,
+                                            @Nullable Integer height, ImageView imageView) {
+        if (width == null || height == null || width <= 0 || height <= 0) {
+            return loadImageFromFile(context, path, imageView);
+        }
+
+        if (!new File(path).exists()) {
+            return false;
+        }
+
+        ViewGroup.LayoutParams layoutParams = imageView.getLayoutParams();
+        scaleImage(layoutParams, height, width);
+        imageView.setLayoutParams(layoutParams);
+        Glide.with(context)
+                .load(path)
+                .into(imageView);
+
+        return true;
+    }
+
     public static boolean isImageUrl(String text) {
         if (text == null) {
             return false;
         }
 
-        if (text.trim().contains(" ")) {
+        String link = text.trim();
+        if (link.contains(" ")) {
+            return false;
+        }
+
+        // most of messages are not links, reject them before parsing
+        if (!link.regionMatches(true, 0, "http://", 0, 7)
+                && !link.regionMatches(true, 0, "https://", 0, 8)) {
             return false;
         }
         try {
@@ -121,7 +153,7 @@ public class FileManager {
         return extractRelevantExtension(path);
     }
 
-    private static String extractRelevantExtension(String path) {
+    static String extractRelevantExtension(String path) {
         if (path == null || path.isEmpty()) {
             return null;
         }
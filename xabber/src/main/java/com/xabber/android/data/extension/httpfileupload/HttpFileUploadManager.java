@@ -17,6 +17,7 @@ import com.xabber.android.data.database.messagerealm.Attachment;
 import com.xabber.android.data.database.messagerealm.MessageItem;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.extension.file.AttachmentIndex;
 import com.xabber.android.data.extension.file.FileManager;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.MessageManager;
@@ -244,6 +245,7 @@ public class HttpFileUploadManager {
             attachment.setDuration(uri.getDuration());
             attachment.setFileUrl(uri.getUri());
             attachment.setIsImage(FileManager.isImageUrl(uri.getUri()));
+            attachment.setCategory(AttachmentIndex.getCategory(uri.getType(), uri.getUri()).toString());
         }
         return attachment;
     }
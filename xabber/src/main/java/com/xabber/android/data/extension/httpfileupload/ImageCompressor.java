@@ -3,82 +3,182 @@ package com.xabber.android.data.extension.httpfileupload;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.ExifInterface;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Downscales images before upload.
+ * <p/>
+ * Image is decoded straight to the target size: power of two sample size is
+ * applied by decoder and the remainder is applied as density scaling of the
+ * same decode, so no full resolution or intermediate copy is kept in heap.
+ * Decoded bitmap is reused by next image when possible.
+ */
 public class ImageCompressor {
 
+    private static final String LOG_TAG = ImageCompressor.class.getSimpleName();
+
     private static final int IMAGE_QUALITY = 90;
     private static final int MAX_SIZE_PIXELS = 1280;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Bitmap to be reused by next decode, guarded by class.
+     */
+    private static Bitmap reusableBitmap;
+
+    /**
+     * Decodes image so that its larger side does not exceed maximum size.
+     * Result can be bitmap to be reused, so it must be released with
+     * {@link #releaseBitmap(Bitmap)} and must not be recycled.
+     */
+    private static Bitmap decodeScaled(File file, int maxSizePixels) {
+        BitmapFactory.Options bounds = decodeBounds(file);
+        if (bounds == null || bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
 
-    public static Bitmap decodeFile(File file, int width, int height) {
+        int largerSide = Math.max(bounds.outWidth, bounds.outHeight);
+        int scale = 1;
+        while (largerSide / scale / 2 >= maxSizePixels) {
+            scale *= 2;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = scale;
+        int sampledLargerSide = largerSide / scale;
+        int targetWidth = bounds.outWidth / scale;
+        int targetHeight = bounds.outHeight / scale;
+        if (sampledLargerSide > maxSizePixels) {
+            options.inScaled = true;
+            options.inDensity = sampledLargerSide;
+            options.inTargetDensity = maxSizePixels;
+            targetWidth = (int) ((long) targetWidth * maxSizePixels / sampledLargerSide) + 1;
+            targetHeight = (int) ((long) targetHeight * maxSizePixels / sampledLargerSide) + 1;
+        }
+
+        options.inMutable = true;
+        Bitmap inBitmap = takeReusableBitmap(targetWidth, targetHeight);
+        if (inBitmap != null) {
+            options.inBitmap = inBitmap;
+            try {
+                Bitmap bitmap = decodeStream(file, options);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+            } catch (IllegalArgumentException e) {
+                Log.d(LOG_TAG, "Bitmap can't be reused: " + e.toString());
+            }
+            options.inBitmap = null;
+            inBitmap.recycle();
+        }
+        return decodeStream(file, options);
+    }
+
+    private static BitmapFactory.Options decodeBounds(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream inputStream = null;
         try {
-            // decode image size
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(new FileInputStream(file),null, options);
-
-            // the new size we want to scale to
-            final int REQUIRED_WIDTH = width;
-            final int REQUIRED_HIGHT = height;
-
-            // find the correct scale value. It should be the power of 2.
-            int scale = 1;
-            while (options.outWidth / scale / 2 >= REQUIRED_WIDTH
-                    && options.outHeight / scale / 2 >= REQUIRED_HIGHT)
-                scale *= 2;
-
-            // decode with inSampleSize
-            BitmapFactory.Options newOptions = new BitmapFactory.Options();
-            newOptions.inSampleSize = scale;
-            return BitmapFactory.decodeStream(new FileInputStream(file), null, newOptions);
-
-        } catch (FileNotFoundException e) {
+            inputStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            BitmapFactory.decodeStream(inputStream, null, options);
+            return options;
+        } catch (IOException e) {
             return null;
+        } finally {
+            closeQuietly(inputStream);
         }
     }
 
-    public static File compressImage(final File file, String outputDirectory) {
-        String path = file.getPath();
-        String format = path.substring(path.lastIndexOf(".")).substring(1);
-        Bitmap source;
+    private static Bitmap decodeStream(File file, BitmapFactory.Options options) {
+        InputStream inputStream = null;
         try {
-            source = decodeFile(file, MAX_SIZE_PIXELS, MAX_SIZE_PIXELS);
-        } catch (Exception e) {
-            Log.d(ImageCompressor.class.toString(), e.toString());
+            inputStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException e) {
             return null;
+        } finally {
+            closeQuietly(inputStream);
         }
+    }
 
-        Bitmap.CompressFormat compressFormat;
+    /**
+     * @return Bitmap able to hold image of the size or <code>null</code>.
+     */
+    private static synchronized Bitmap takeReusableBitmap(int width, int height) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT || reusableBitmap == null) {
+            return null;
+        }
+        Bitmap bitmap = reusableBitmap;
+        reusableBitmap = null;
+        if (bitmap.getAllocationByteCount() < (long) width * height * 4) {
+            bitmap.recycle();
+            return null;
+        }
+        return bitmap;
+    }
 
-        // if png pr webp have allowed resolution then not compress it
-        if ("png".equals(format) || "webp".equals(format)) return file;
+    /**
+     * Keeps bitmap for the next decode or recycles it.
+     */
+    private static synchronized void releaseBitmap(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && bitmap.isMutable()) {
+            if (reusableBitmap != null) {
+                reusableBitmap.recycle();
+            }
+            reusableBitmap = bitmap;
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Drops bitmap kept for reuse, e.g. when there is nothing more to upload.
+     */
+    public static synchronized void trimMemory() {
+        if (reusableBitmap != null) {
+            reusableBitmap.recycle();
+            reusableBitmap = null;
+        }
+    }
 
-        // select format
+    public static File compressImage(final File file, String outputDirectory) {
+        String path = file.getPath();
+        int extensionIndex = path.lastIndexOf(".");
+        String format = extensionIndex < 0 ? "" : path.substring(extensionIndex + 1).toLowerCase();
+
+        Bitmap.CompressFormat compressFormat;
+
+        // png, webp and gif are uploaded as is
         switch (format) {
             case "png":
-                compressFormat = Bitmap.CompressFormat.PNG;
-                break;
             case "webp":
-                compressFormat = Bitmap.CompressFormat.WEBP;
-                break;
             case "gif":
                 return file;
             default:
                 compressFormat = Bitmap.CompressFormat.JPEG;
         }
 
-        // resize image
-        Bitmap resizedBmp;
-        if (source.getHeight() > MAX_SIZE_PIXELS || source.getWidth() > MAX_SIZE_PIXELS) {
-            resizedBmp = resizeBitmap(source, MAX_SIZE_PIXELS);
-        } else  {
-            resizedBmp = source;
+        long startTime = SystemClock.elapsedRealtime();
+        Bitmap source;
+        try {
+            source = decodeScaled(file, MAX_SIZE_PIXELS);
+        } catch (Exception e) {
+            Log.d(LOG_TAG, e.toString());
+            return null;
+        }
+        if (source == null) {
+            return null;
         }
 
         // create directory if not exist
@@ -87,17 +187,19 @@ public class ImageCompressor {
 
         // compress image
         File result = new File(outputDirectory, file.getName());
-        FileOutputStream fOut;
+        OutputStream outputStream = null;
         try {
-            fOut = new FileOutputStream(result);
-            resizedBmp.compress(compressFormat, IMAGE_QUALITY, fOut);
-            fOut.flush();
-            fOut.close();
-            source.recycle();
-            resizedBmp.recycle();
-
+            outputStream = new FileOutputStream(result);
+            source.compress(compressFormat, IMAGE_QUALITY, outputStream);
+            outputStream.flush();
         } catch (Exception e) {
             return null;
+        } finally {
+            closeQuietly(outputStream);
+            Log.d(LOG_TAG, "compressed " + source.getWidth() + "x" + source.getHeight()
+                    + " using " + source.getByteCount() / 1024 + " KiB in "
+                    + (SystemClock.elapsedRealtime() - startTime) + " ms");
+            releaseBitmap(source);
         }
 
         // copy EXIF orientation from original image
@@ -116,21 +218,15 @@ public class ImageCompressor {
         return result;
     }
 
-    private static Bitmap resizeBitmap(Bitmap source, int maxSizePixels) {
-        int targetWidth, targetHeight;
-        double aspectRatio;
-
-        if (source.getWidth() > source.getHeight()) {
-            targetWidth = maxSizePixels;
-            aspectRatio = (double) source.getHeight() / (double) source.getWidth();
-            targetHeight = (int) (targetWidth * aspectRatio);
-        } else {
-            targetHeight = maxSizePixels;
-            aspectRatio = (double) source.getWidth() / (double) source.getHeight();
-            targetWidth = (int) (targetHeight * aspectRatio);
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.d(LOG_TAG, e.toString());
         }
-
-        return Bitmap.createScaledBitmap(source, targetWidth, targetHeight, false);
     }
 
 }
@@ -14,12 +14,14 @@ import com.xabber.android.data.database.messagerealm.SyncInfo;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.BaseEntity;
 import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.extension.file.AttachmentIndex;
 import com.xabber.android.data.extension.file.FileManager;
 import com.xabber.android.data.extension.httpfileupload.HttpFileUploadManager;
 import com.xabber.android.data.extension.otr.OTRManager;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.AbstractChat;
 import com.xabber.android.data.message.MessageManager;
+import com.xabber.android.data.message.search.MessageSearchManager;
 import com.xabber.android.data.roster.OnRosterReceivedListener;
 import com.xabber.android.data.roster.RosterContact;
 import com.xabber.android.data.roster.RosterManager;
@@ -344,6 +346,7 @@ public class MamManager implements OnRosterReceivedListener {
         realm.beginTransaction();
         realm.copyToRealm(messagesFromServer);
         realm.commitTransaction();
+        MessageSearchManager.getInstance().onMessagesSaved(messagesFromServer);
     }
 
     private static boolean isTimeStampSimilar(RealmResults<MessageItem> sameTextMessages, long remoteMessageTimestamp) {
@@ -542,8 +545,10 @@ public class MamManager implements OnRosterReceivedListener {
             FileManager.processFileMessage(messageItem);
 
             RealmList<Attachment> attachments = HttpFileUploadManager.parseFileMessage(message);
-            if (attachments.size() > 0)
+            if (attachments.size() > 0) {
                 messageItem.setAttachments(attachments);
+                AttachmentIndex.index(messageItem);
+            }
 
             messageItems.add(messageItem);
         }
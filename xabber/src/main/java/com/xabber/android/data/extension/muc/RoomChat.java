@@ -557,6 +557,14 @@ public class RoomChat extends AbstractChat {
         }
     }
 
+    @Override
+    protected void onResumed() {
+        super.onResumed();
+        if (getState() == RoomState.available) {
+            sendMessages();
+        }
+    }
+
     @Override
     protected void onDisconnect() {
         super.onDisconnect();
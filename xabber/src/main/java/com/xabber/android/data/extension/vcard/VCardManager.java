@@ -15,8 +15,10 @@
 package com.xabber.android.data.extension.vcard;
 
 import android.database.Cursor;
+import android.support.annotation.NonNull;
 
 import com.xabber.android.data.Application;
+import com.xabber.android.data.ListenerRegistry;
 import com.xabber.android.data.NetworkException;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.SettingsManager;
@@ -40,10 +42,12 @@ import com.xabber.android.data.roster.RosterContact;
 import com.xabber.android.data.roster.RosterManager;
 import com.xabber.android.data.roster.StructuredName;
 import com.xabber.xmpp.vcard.VCardProperty;
+import com.xabber.xmpp.vcardupdate.VCardUpdate;
 
 import org.jivesoftware.smack.AbstractXMPPConnection;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.ExtensionElement;
 import org.jivesoftware.smack.packet.IQ.Type;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.packet.Stanza;
@@ -60,7 +64,12 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Manage vCards and there requests.
@@ -73,11 +82,22 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
     private static final StructuredName EMPTY_STRUCTURED_NAME = new StructuredName(
             null, null, null, null, null);
 
+    /**
+     * Maximum number of vCard requests waiting for response at the same time.
+     */
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
     /**
      * Nick and formatted names for the users.
      */
     private final Map<Jid, StructuredName> names;
 
+    /**
+     * Avatar hashes vCards were received for. vCard is requested again
+     * when presence advertises another hash.
+     */
+    private final Map<Jid, String> hashes;
+
     /**
      * List of accounts which requests its avatar in order to avoid subsequence
      * requests.
@@ -91,6 +111,21 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
     @SuppressWarnings("WeakerAccess")
     Set<AccountJid> vCardSaveRequests = new ConcurrentSkipListSet<>();
 
+    /**
+     * Users with vCard requests queued or in progress.
+     */
+    @SuppressWarnings("WeakerAccess")
+    final Set<Jid> pendingRequests = new ConcurrentSkipListSet<>();
+
+    private final ExecutorService requestExecutor;
+
+    /**
+     * Received vCards not written to database yet.
+     */
+    private final Map<String, StructuredName> pendingWrites;
+    private final Map<String, String> pendingWriteHashes;
+    private final AtomicBoolean writeScheduled;
+
     public static VCardManager getInstance() {
         if (instance == null) {
             instance = new VCardManager();
@@ -101,7 +136,22 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
 
     private VCardManager() {
         names = new HashMap<>();
+        hashes = new ConcurrentHashMap<>();
         accountRequested = new ArrayList<>();
+        pendingWrites = new HashMap<>();
+        pendingWriteHashes = new HashMap<>();
+        writeScheduled = new AtomicBoolean(false);
+
+        requestExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, "vCard request executor");
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
     }
 
     @Override
@@ -112,8 +162,13 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
             if (cursor.moveToFirst()) {
                 do {
                     try {
+                        Jid jid = JidCreate.from(VCardTable.getUser(cursor));
+                        String hash = VCardTable.getHash(cursor);
+                        if (hash != null) {
+                            hashes.put(jid, hash);
+                        }
                         names.put(
-                                JidCreate.from(VCardTable.getUser(cursor)),
+                                jid,
                                 new StructuredName(VCardTable.getNickName(cursor),
                                         VCardTable.getFormattedName(cursor),
                                         VCardTable.getFirstName(cursor), VCardTable
@@ -180,13 +235,23 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
     }
 
     /**
-     * Requests vCard.
+     * Requests vCard. Does nothing if request for this user is already queued.
      */
     public void request(final AccountJid account, final Jid jid) {
-        Application.getInstance().runInBackground(new Runnable() {
+        if (!pendingRequests.add(jid)) {
+            return;
+        }
+
+        requestExecutor.submit(new Runnable() {
             @Override
             public void run() {
-                getVCard(account, jid);
+                try {
+                    getVCard(account, jid);
+                } catch (Exception e) {
+                    LogManager.exception(this, e);
+                } finally {
+                    pendingRequests.remove(jid);
+                }
             }
         });
     }
@@ -220,6 +285,7 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
     @SuppressWarnings("WeakerAccess")
     void onVCardReceived(final AccountJid account, final Jid bareAddress, final VCard vCard) {
         final StructuredName name;
+        String avatarHash = null;
         if (vCard.getType() == Type.error) {
             onVCardFailed(account, bareAddress);
             if (names.containsKey(bareAddress)) {
@@ -231,6 +297,7 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
                 String hash = vCard.getAvatarHash();
                 byte[] avatar = vCard.getAvatar();
                 AvatarManager.getInstance().onAvatarReceived(bareAddress, hash, avatar);
+                avatarHash = hash == null ? AvatarManager.EMPTY_HASH : hash;
                 // "bad base-64" error happen sometimes
             } catch (IllegalArgumentException e) {
                 LogManager.exception(this, e);
@@ -249,6 +316,9 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
 
         }
         names.put(bareAddress, name);
+        if (avatarHash != null) {
+            hashes.put(bareAddress, avatarHash);
+        }
 
         RosterContact rosterContact = RosterManager.getInstance()
                 .getRosterContact(account, bareAddress.asBareJid());
@@ -257,12 +327,7 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
                 .getManagers(OnRosterChangedListener.class)) {
             listener.onContactStructuredInfoChanged(rosterContact, name);
         }
-        Application.getInstance().runInBackground(new Runnable() {
-            @Override
-            public void run() {
-                VCardTable.getInstance().write(bareAddress.toString(), name);
-            }
-        });
+        requestToWrite(bareAddress.toString(), name, hashes.get(bareAddress));
         if (vCard.getFrom() == null) { // account it self
             AccountManager.getInstance().onAccountChanged(account);
         } else {
@@ -273,30 +338,92 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
             }
         }
 
-        for (OnVCardListener listener : Application.getInstance().getUIListeners(OnVCardListener.class)) {
-            listener.onVCardReceived(account, bareAddress, vCard);
+        Application.getInstance().notifyUIListeners(OnVCardListener.class,
+                new ListenerRegistry.Call<OnVCardListener>() {
+            @Override
+            public void call(OnVCardListener listener) {
+                listener.onVCardReceived(account, bareAddress, vCard);
+            }
+        });
+    }
+
+    /**
+     * Adds vCard to be written to database. All vCards received
+     * before background write starts are written in one transaction.
+     */
+    private void requestToWrite(String bareAddress, StructuredName name, String hash) {
+        synchronized (pendingWrites) {
+            pendingWrites.put(bareAddress, name);
+            if (hash != null) {
+                pendingWriteHashes.put(bareAddress, hash);
+            } else {
+                pendingWriteHashes.remove(bareAddress);
+            }
+        }
+
+        if (writeScheduled.compareAndSet(false, true)) {
+            Application.getInstance().runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    writePending();
+                }
+            });
         }
     }
 
     @SuppressWarnings("WeakerAccess")
-    void onVCardFailed(final AccountJid account, final Jid bareAddress) {
-        for (OnVCardListener listener : Application.getInstance().getUIListeners(OnVCardListener.class)) {
-            listener.onVCardFailed(account, bareAddress);
+    void writePending() {
+        writeScheduled.set(false);
+
+        final Map<String, StructuredName> names;
+        final Map<String, String> hashes;
+        synchronized (pendingWrites) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            names = new HashMap<>(pendingWrites);
+            hashes = new HashMap<>(pendingWriteHashes);
+            pendingWrites.clear();
+            pendingWriteHashes.clear();
         }
+
+        final long startTime = System.currentTimeMillis();
+        VCardTable.getInstance().write(names, hashes);
+        LogManager.i(this, "wrote " + names.size() + " vCards in "
+                + (System.currentTimeMillis() - startTime) + " ms");
     }
 
     @SuppressWarnings("WeakerAccess")
-    void onVCardSaveSuccess(AccountJid account) {
-        for (OnVCardSaveListener listener : Application.getInstance().getUIListeners(OnVCardSaveListener.class)) {
-            listener.onVCardSaveSuccess(account);
-        }
+    void onVCardFailed(final AccountJid account, final Jid bareAddress) {
+        Application.getInstance().notifyUIListeners(OnVCardListener.class,
+                new ListenerRegistry.Call<OnVCardListener>() {
+            @Override
+            public void call(OnVCardListener listener) {
+                listener.onVCardFailed(account, bareAddress);
+            }
+        });
     }
 
     @SuppressWarnings("WeakerAccess")
-    void onVCardSaveFailed(AccountJid account) {
-        for (OnVCardSaveListener listener : Application.getInstance().getUIListeners(OnVCardSaveListener.class)) {
-            listener.onVCardSaveFailed(account);
-        }
+    void onVCardSaveSuccess(final AccountJid account) {
+        Application.getInstance().notifyUIListeners(OnVCardSaveListener.class,
+                new ListenerRegistry.Call<OnVCardSaveListener>() {
+            @Override
+            public void call(OnVCardSaveListener listener) {
+                listener.onVCardSaveSuccess(account);
+            }
+        });
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    void onVCardSaveFailed(final AccountJid account) {
+        Application.getInstance().notifyUIListeners(OnVCardSaveListener.class,
+                new ListenerRegistry.Call<OnVCardSaveListener>() {
+            @Override
+            public void call(OnVCardSaveListener listener) {
+                listener.onVCardSaveFailed(account);
+            }
+        });
     }
 
     @Override
@@ -312,19 +439,39 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
                 return;
             }
 
-            Jid addressForVcard = from;
+            // room occupants have vCards by full jid, other users by bare jid
+            Jid addressForVcard = from.asBareJid();
 
             if (MUCManager.getInstance().hasRoom(account, from.asEntityBareJidIfPossible())) {
                 addressForVcard = from;
             }
 
-            // Request vCard for new users
-            if (!names.containsKey(addressForVcard)) {
-                if (SettingsManager.connectionLoadVCard()) {
-                    request(account, addressForVcard);
+            if (!SettingsManager.connectionLoadVCard()) {
+                return;
+            }
+
+            // Request vCard for new users and users with changed avatar
+            if (!names.containsKey(addressForVcard) || isHashChanged(addressForVcard, (Presence) stanza)) {
+                request(account, addressForVcard);
+            }
+        }
+    }
+
+    private boolean isHashChanged(Jid jid, Presence presence) {
+        String knownHash = hashes.get(jid);
+        if (knownHash == null) {
+            return false;
+        }
+
+        for (ExtensionElement extension : presence.getExtensions()) {
+            if (extension instanceof VCardUpdate) {
+                VCardUpdate vCardUpdate = (VCardUpdate) extension;
+                if (vCardUpdate.isValid() && vCardUpdate.isPhotoReady()) {
+                    return !knownHash.equalsIgnoreCase(vCardUpdate.getPhotoHash());
                 }
             }
         }
+        return false;
     }
 
     @SuppressWarnings("WeakerAccess")
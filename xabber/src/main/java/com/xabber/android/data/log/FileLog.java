@@ -16,22 +16,76 @@ import com.xabber.android.data.Application;
 import com.xabber.android.data.time.FastDateFormat;
 import com.xabber.android.ui.helper.BatteryHelper;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Locale;
 
+/**
+ * File logger.
+ * <p/>
+ * Callers only put records to the preallocated ring buffer. Records are formatted
+ * and written to the buffered file by the single writer thread. If writer can't
+ * keep up, the oldest records are overwritten and number of lost records is logged.
+ */
 class FileLog {
-    private OutputStreamWriter streamWriter = null;
+    private Writer streamWriter = null;
     private FastDateFormat dateFormat = null;
-    private DispatchQueue logQueue = null;
     private File currentFile = null;
     private File networkFile = null;
 
     private static final int LOG_FILE_MAX_SIZE = 8000000; // 8mb
     private static final int LOG_FILE_MAX_COUNT = 16;
+    private static final int RING_BUFFER_SIZE = 2048;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static final char DEBUG = 'D';
+    private static final char WARNING = 'W';
+    private static final char ERROR = 'E';
+
+    /**
+     * Log record, instances are reused.
+     */
+    private static class Record {
+        long time;
+        char level;
+        String tag;
+        String message;
+        Throwable throwable;
+
+        void set(long time, char level, String tag, String message, Throwable throwable) {
+            this.time = time;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+            this.throwable = throwable;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final Record[] records;
+    /**
+     * Records taken by writer thread from the ring buffer.
+     */
+    private final Record[] writeRecords;
+    private int head;
+    private int size;
+    private int dropped;
+
+    /**
+     * Bytes written to the current file, to rotate it without querying file system.
+     */
+    private long currentFileSize;
+
+    private final StringBuilder lineBuilder;
+    private long formattedSecond = -1;
+    private String formattedTime;
+
     private static volatile FileLog Instance = null;
     public static FileLog getInstance() {
         FileLog localInstance = Instance;
@@ -48,9 +102,24 @@ class FileLog {
 
     public FileLog() {
         dateFormat = FastDateFormat.getInstance("yyyy-MM-dd_HH-mm-ss", Locale.US);
+        records = new Record[RING_BUFFER_SIZE];
+        writeRecords = new Record[RING_BUFFER_SIZE];
+        for (int i = 0; i < RING_BUFFER_SIZE; i++) {
+            records[i] = new Record();
+            writeRecords[i] = new Record();
+        }
+        lineBuilder = new StringBuilder(256);
         try {
-            logQueue = new DispatchQueue("logQueue");
             currentFile = createLogFile();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeLoop();
+                }
+            }, "logQueue");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            thread.start();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -78,15 +147,17 @@ class FileLog {
             }
             newLogFile.createNewFile();
             FileOutputStream stream = new FileOutputStream(newLogFile);
-            streamWriter = new OutputStreamWriter(stream);
-            streamWriter.write("-----start log " + dateFormat.format(System.currentTimeMillis())
+            streamWriter = new BufferedWriter(new OutputStreamWriter(stream), WRITE_BUFFER_SIZE);
+            String header = "-----start log " + dateFormat.format(System.currentTimeMillis())
                     + " " + appName
                     + " " + BuildConfig.VERSION_NAME
                     + " Android " + Build.VERSION.RELEASE
                     + " SDK " + Build.VERSION.SDK_INT
                     + " Battery optimization: " + BatteryHelper.isOptimizingBattery()
-                    +  "-----\n");
+                    +  "-----\n";
+            streamWriter.write(header);
             streamWriter.flush();
+            currentFileSize = header.length();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -96,12 +167,12 @@ class FileLog {
     }
 
     /*
-        Controls list of log files. Allow only 6 log-files. Each no more than 8 mb size.
+        Controls list of log files. Allow only 16 log-files. Each no more than 8 mb size.
      */
     private void controlFileSize() {
         // create new file if current file is too large
         if (currentFile != null) {
-            if (currentFile.length() >= LOG_FILE_MAX_SIZE) {
+            if (currentFileSize >= LOG_FILE_MAX_SIZE) {
                 File newFile = createLogFile();
                 if (newFile != null) {
                     currentFile = newFile;
@@ -111,7 +182,7 @@ class FileLog {
     }
 
     private void deleteRedundantFiles() {
-        // delete old files if it's more than 6
+        // delete old files if it's more than 16
         File sdCard = Application.getInstance().getApplicationContext().getExternalFilesDir(null);
         if (sdCard == null) {
             return;
@@ -131,6 +202,103 @@ class FileLog {
         }
     }
 
+    /**
+     * Puts record to the ring buffer. Overwrites the oldest record if buffer is full.
+     */
+    private void put(char level, String tag, String message, Throwable throwable) {
+        if (streamWriter == null) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        synchronized (lock) {
+            int index;
+            if (size == RING_BUFFER_SIZE) {
+                index = head;
+                head = (head + 1) % RING_BUFFER_SIZE;
+                dropped++;
+            } else {
+                index = (head + size) % RING_BUFFER_SIZE;
+                size++;
+            }
+            records[index].set(time, level, tag, message, throwable);
+            if (size == 1) {
+                lock.notify();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            int count;
+            int lost;
+            synchronized (lock) {
+                while (size == 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                count = size;
+                for (int i = 0; i < count; i++) {
+                    Record record = records[(head + i) % RING_BUFFER_SIZE];
+                    writeRecords[i].set(record.time, record.level, record.tag,
+                            record.message, record.throwable);
+                    record.set(0, DEBUG, null, null, null);
+                }
+                head = (head + count) % RING_BUFFER_SIZE;
+                size = 0;
+                lost = dropped;
+                dropped = 0;
+            }
+
+            try {
+                if (lost > 0) {
+                    writeLine(writeRecords[0].time, WARNING, FileLog.class.getSimpleName(),
+                            lost + " log records were lost");
+                }
+                for (int i = 0; i < count; i++) {
+                    writeRecord(writeRecords[i]);
+                    writeRecords[i].set(0, DEBUG, null, null, null);
+                }
+                // flush only when queue is drained, not for every line
+                streamWriter.flush();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            controlFileSize();
+        }
+    }
+
+    private void writeRecord(Record record) throws IOException {
+        if (record.throwable == null) {
+            writeLine(record.time, record.level, record.tag, record.message);
+            return;
+        }
+
+        if (record.message != null) {
+            writeLine(record.time, record.level, record.tag, record.message);
+        }
+        writeLine(record.time, record.level, record.tag, record.throwable.toString());
+        for (StackTraceElement element : record.throwable.getStackTrace()) {
+            writeLine(record.time, record.level, record.tag, element.toString());
+        }
+    }
+
+    private void writeLine(long time, char level, String tag, String message) throws IOException {
+        long second = time / 1000;
+        if (second != formattedSecond) {
+            formattedSecond = second;
+            formattedTime = dateFormat.format(time);
+        }
+
+        lineBuilder.setLength(0);
+        lineBuilder.append(formattedTime).append(' ').append(level).append('/')
+                .append(tag).append(": ").append(message).append('\n');
+        streamWriter.append(lineBuilder);
+        currentFileSize += lineBuilder.length();
+    }
+
     public static String getNetworkLogPath() {
         try {
             File sdCard = Application.getInstance().getApplicationContext().getExternalFilesDir(null);
@@ -148,95 +316,27 @@ class FileLog {
     }
 
     public static void e(final String tag, final String message, final Throwable exception) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/" + tag + "﹕ " + message + "\n");
-                        getInstance().streamWriter.write(exception.toString());
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().put(ERROR, tag, message, exception);
     }
 
     public static void e(final String tag, final String message) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/" + tag + "﹕ " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().put(ERROR, tag, message, null);
     }
 
     public static void e(final String tag, final Throwable e) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/" + tag + "﹕ " + e + "\n");
-                        StackTraceElement[] stack = e.getStackTrace();
-                        for (int a = 0; a < stack.length; a++) {
-                            getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/" + tag + "﹕ " + stack[a] + "\n");
-                        }
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        } else {
+        if (getInstance().streamWriter == null) {
             e.printStackTrace();
+            return;
         }
+        getInstance().put(ERROR, tag, null, e);
     }
 
     public static void d(final String tag, final String message) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " D/" + tag + "﹕ " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().put(DEBUG, tag, message, null);
     }
 
     public static void w(final String tag, final String message) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " W/" + tag + ": " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().put(WARNING, tag, message, null);
     }
 
     public static void cleanupLogs() {
@@ -25,6 +25,7 @@ import org.jivesoftware.smack.SmackConfiguration;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 
 
 /**
@@ -37,6 +38,11 @@ public class LogManager {
     private static volatile boolean fileLog;
     private static boolean debuggable;
 
+    /**
+     * Whether log is written anywhere. Updated with settings.
+     */
+    private static volatile boolean enabled;
+
     private static LogManager instance;
 
     public static LogManager getInstance() {
@@ -56,6 +62,7 @@ public class LogManager {
 
     public void onSettingsChanged() {
         fileLog = SettingsManager.fileLog();
+        enabled = debuggable || fileLog;
 
         if (debuggable || fileLog) {
             System.setProperty("smack.debugEnabled", "true");
@@ -66,6 +73,39 @@ public class LogManager {
         }
     }
 
+    /**
+     * Cheap check to be used before building of expensive log messages.
+     *
+     * @return Whether log messages are written to logcat or file.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether log is written to files, so XMPP stream is traced too.
+     */
+    static boolean isFileLog() {
+        return fileLog;
+    }
+
+    /**
+     * @return Whether log is written to logcat.
+     */
+    static boolean isDebuggable() {
+        return debuggable;
+    }
+
+    /**
+     * Writes message to logcat only, e.g. XMPP stream that goes to trace files
+     * instead of text log.
+     */
+    static void logcat(String tag, String msg) {
+        if (debuggable) {
+            Log.i(tag, msg);
+        }
+    }
+
     private static void dString(String tag, String msg) {
         if (debuggable) {
             Log.d(tag, msg);
@@ -132,31 +172,51 @@ public class LogManager {
     }
 
     static public void d(Object obj, String msg) {
+        if (!enabled) {
+            return;
+        }
         dString(obj.toString(), msg);
     }
 
     static public void e(Object obj, String msg) {
+        if (!enabled) {
+            return;
+        }
         eString(obj.toString(), msg);
     }
 
     static public void i(Object obj, String msg) {
+        if (!enabled) {
+            return;
+        }
         iString(obj.toString(), msg);
     }
 
     static public void i(Object obj, String msg, String censoredMsg) {
+        if (!enabled) {
+            return;
+        }
         iString(obj.toString(), msg, censoredMsg);
     }
 
     static public void w(Object obj, String msg) {
+        if (!enabled) {
+            return;
+        }
         wString(obj.toString(), msg);
     }
 
     static public void v(Object obj, String msg) {
+        if (!enabled) {
+            return;
+        }
         vString(obj.toString(), msg);
     }
 
     public static void exception(Object obj, Throwable throwable) {
-        wString(obj.toString(), Log.getStackTraceString(throwable));
+        if (debuggable) {
+            Log.w(obj.toString(), Log.getStackTraceString(throwable));
+        }
 
         if (!debuggable) {
             forceException(obj, throwable);
@@ -184,16 +244,26 @@ public class LogManager {
 
     public static void clearLogs() {
         FileLog.cleanupLogs();
+        WireTracer.getInstance().deleteFiles();
     }
 
+    /**
+     * @return Text log files followed by wire trace files.
+     */
     public static File[] getLogFiles() {
         File sdCard = Application.getInstance().getApplicationContext().getExternalFilesDir(null);
         if (sdCard == null) {
             return new File[0];
         }
         File dir = new File(sdCard.getAbsolutePath() + "/logs");
-        return dir.listFiles();
-
+        File[] logFiles = dir.listFiles();
+        if (logFiles == null) {
+            logFiles = new File[0];
+        }
+        File[] traceFiles = WireTracer.getInstance().getFiles();
+        File[] files = Arrays.copyOf(logFiles, logFiles.length + traceFiles.length);
+        System.arraycopy(traceFiles, 0, files, logFiles.length, traceFiles.length);
+        return files;
     }
 }
 
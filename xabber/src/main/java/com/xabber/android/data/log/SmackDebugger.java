@@ -1,43 +1,213 @@
 package com.xabber.android.data.log;
 
+import org.jivesoftware.smack.AbstractConnectionListener;
+import org.jivesoftware.smack.StanzaListener;
 import org.jivesoftware.smack.XMPPConnection;
-import org.jivesoftware.smack.debugger.AbstractDebugger;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jxmpp.jid.EntityFullJid;
 
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class SmackDebugger extends AbstractDebugger {
+/**
+ * Traces XMPP stream of the connection to {@link WireTracer} while file log
+ * is enabled, and prints it to logcat in debuggable builds.
+ * <p/>
+ * Reader and writer of the connection are tapped as character streams.
+ * Every chunk is scanned once by {@link WireScanner}, which redacts message bodies
+ * and counts stanzas, without building strings for stanzas.
+ */
+public class SmackDebugger implements org.jivesoftware.smack.debugger.SmackDebugger {
     private static final String LOG_TAG = "Smack";
 
+    private static final AtomicInteger connectionCounter = new AtomicInteger();
+
+    /**
+     * Stanzas are traced on the stream level.
+     */
+    private static final StanzaListener EMPTY_LISTENER = new StanzaListener() {
+        @Override
+        public void processStanza(Stanza packet) {
+        }
+    };
+
+    private final XMPPConnection connection;
+    private final int connectionId;
+    private final WireTracer tracer;
+    private final WireStatistics statistics;
+
+    private Reader reader;
+    private Writer writer;
+
     public SmackDebugger(XMPPConnection connection, Writer writer, Reader reader) {
-        super(connection, writer, reader);
+        this.connection = connection;
+        this.connectionId = connectionCounter.incrementAndGet();
+        this.tracer = WireTracer.getInstance();
+        this.statistics = new WireStatistics();
+        this.reader = newConnectionReader(reader);
+        this.writer = newConnectionWriter(writer);
+
+        connection.addConnectionListener(new AbstractConnectionListener() {
+            @Override
+            public void connectionClosed() {
+                onClosed("connection closed");
+            }
+
+            @Override
+            public void connectionClosedOnError(Exception e) {
+                onClosed("connection closed on error: " + e);
+            }
+        });
+    }
+
+    private void onClosed(String event) {
+        tracer.write(WireTracer.TYPE_EVENT, connectionId, event);
+        tracer.flush();
+        if (LogManager.isEnabled()) {
+            LogManager.i(LOG_TAG, connection.getXMPPServiceDomain() + " " + event
+                    + ", stanzas " + statistics);
+        }
     }
 
     @Override
-    protected void log(String logMessage) {
-        LogManager.i(LOG_TAG, logMessage, replaceMessageBody(logMessage));
+    public void userHasLogged(EntityFullJid user) {
+        String event = "user logged in " + user + " connection " + connectionId;
+        tracer.write(WireTracer.TYPE_EVENT, connectionId, event);
+        LogManager.i(LOG_TAG, event);
     }
 
     @Override
-    protected void log(String logMessage, Throwable throwable) {
-        LogManager.exception(LOG_TAG, throwable);
+    public Reader getReader() {
+        return reader;
     }
 
-    /**
-     * Replace body of message with ***.
-     */
-    private static String replaceMessageBody(String sourceMsg) {
-        if (sourceMsg.contains("</message>")) {
-            try {
-                int s = sourceMsg.indexOf("<body>");
-                int f = sourceMsg.indexOf("</body>");
-                if (s != -1 && f != -1)
-                    return sourceMsg.substring(0, s + 6) + "***" + sourceMsg.substring(f);
-                else return sourceMsg;
-            } catch (Exception e) {
-                return sourceMsg;
-            }
-        } else return sourceMsg;
+    @Override
+    public Writer getWriter() {
+        return writer;
+    }
+
+    @Override
+    public Reader newConnectionReader(Reader newReader) {
+        reader = new TracingReader(newReader, new WireScanner(statistics, true));
+        return reader;
+    }
+
+    @Override
+    public Writer newConnectionWriter(Writer newWriter) {
+        writer = new TracingWriter(newWriter, new WireScanner(statistics, false));
+        return writer;
+    }
+
+    @Override
+    public StanzaListener getReaderListener() {
+        return EMPTY_LISTENER;
+    }
+
+    @Override
+    public StanzaListener getWriterListener() {
+        return EMPTY_LISTENER;
+    }
+
+    private class TracingReader extends FilterReader {
+
+        private final WireScanner scanner;
+
+        TracingReader(Reader in, WireScanner scanner) {
+            super(in);
+            this.scanner = scanner;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int character = super.read();
+            if (character != -1) {
+                trace(new char[]{(char) character}, 0, 1);
+            }
+            return character;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                trace(buffer, offset, count);
+            }
+            return count;
+        }
+
+        private void trace(char[] buffer, int offset, int count) {
+            if (LogManager.isDebuggable()) {
+                LogManager.logcat(LOG_TAG, "RECV (" + connectionId + "): " + new String(buffer, offset, count));
+            }
+            synchronized (scanner) {
+                scanner.scan(buffer, offset, count);
+                if (tracer.isEnabled()) {
+                    tracer.write(WireTracer.TYPE_RECEIVED, connectionId,
+                            scanner.getOutput(), scanner.getOutputLength());
+                }
+            }
+        }
+    }
+
+    private class TracingWriter extends FilterWriter {
+
+        private final WireScanner scanner;
+
+        TracingWriter(Writer out, WireScanner scanner) {
+            super(out);
+            this.scanner = scanner;
+        }
+
+        @Override
+        public void write(int character) throws IOException {
+            out.write(character);
+            if (LogManager.isDebuggable()) {
+                logSent(String.valueOf((char) character));
+            }
+            synchronized (scanner) {
+                scanner.scan(new char[]{(char) character}, 0, 1);
+                trace();
+            }
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            if (LogManager.isDebuggable()) {
+                logSent(new String(buffer, offset, length));
+            }
+            synchronized (scanner) {
+                scanner.scan(buffer, offset, length);
+                trace();
+            }
+        }
+
+        @Override
+        public void write(String value, int offset, int length) throws IOException {
+            out.write(value, offset, length);
+            if (LogManager.isDebuggable()) {
+                logSent(value.substring(offset, offset + length));
+            }
+            synchronized (scanner) {
+                scanner.scan(value, offset, length);
+                trace();
+            }
+        }
+
+        private void logSent(String text) {
+            LogManager.logcat(LOG_TAG, "SENT (" + connectionId + "): " + text);
+        }
+
+        private void trace() {
+            if (tracer.isEnabled()) {
+                tracer.write(WireTracer.TYPE_SENT, connectionId,
+                        scanner.getOutput(), scanner.getOutputLength());
+            }
+        }
     }
 
 }
@@ -0,0 +1,215 @@
+package com.xabber.android.data.log;
+
+/**
+ * Streaming scanner for one direction of XMPP stream.
+ * <p/>
+ * Copies scanned characters to the output buffer replacing content of
+ * <code>&lt;body&gt;</code> elements with <code>***</code>, and counts top level
+ * elements (stanzas and nonzas) by name. State is kept between chunks, so elements
+ * may be split between reads in any place.
+ */
+class WireScanner {
+
+    private static final String BODY = "body";
+    private static final String BODY_END = "</body>";
+    private static final String STREAM = "stream:stream";
+    private static final String REDACTED = "***";
+
+    /**
+     * Maximum length of remembered element name, longer names are not counted.
+     */
+    private static final int MAX_NAME_LENGTH = 32;
+
+    private enum State {
+        /**
+         * Character data between elements.
+         */
+        text,
+        /**
+         * Just after <code>&lt;</code>.
+         */
+        tagStart,
+        /**
+         * Inside of element name.
+         */
+        tagName,
+        /**
+         * Inside of tag after element name.
+         */
+        tag,
+        /**
+         * Inside of <code>&lt;body&gt;</code> content.
+         */
+        redacting,
+    }
+
+    private final WireStatistics statistics;
+    private final boolean received;
+
+    private State state;
+    private boolean closingTag;
+    private boolean processingInstruction;
+    private char quote;
+    private char previous;
+    private int depth;
+    private int bodyEndMatched;
+    private final StringBuilder name;
+
+    private char[] output;
+    private int outputLength;
+
+    WireScanner(WireStatistics statistics, boolean received) {
+        this.statistics = statistics;
+        this.received = received;
+        state = State.text;
+        name = new StringBuilder(MAX_NAME_LENGTH);
+        output = new char[1024];
+    }
+
+    /**
+     * Scans chunk of the stream. Result is available with {@link #getOutput()}
+     * until the next call.
+     */
+    void scan(char[] buffer, int offset, int length) {
+        outputLength = 0;
+        ensureCapacity(length + REDACTED.length());
+        int end = offset + length;
+        for (int index = offset; index < end; index++) {
+            scan(buffer[index]);
+        }
+    }
+
+    void scan(String value, int offset, int length) {
+        outputLength = 0;
+        ensureCapacity(length + REDACTED.length());
+        int end = offset + length;
+        for (int index = offset; index < end; index++) {
+            scan(value.charAt(index));
+        }
+    }
+
+    char[] getOutput() {
+        return output;
+    }
+
+    int getOutputLength() {
+        return outputLength;
+    }
+
+    private void scan(char character) {
+        if (state == State.redacting) {
+            if (character == BODY_END.charAt(bodyEndMatched)) {
+                bodyEndMatched++;
+                if (bodyEndMatched == BODY_END.length()) {
+                    append(BODY_END);
+                    depth = Math.max(0, depth - 1);
+                    state = State.text;
+                }
+            } else {
+                bodyEndMatched = character == BODY_END.charAt(0) ? 1 : 0;
+            }
+            previous = character;
+            return;
+        }
+
+        if (outputLength == output.length) {
+            ensureCapacity(outputLength + 1);
+        }
+        output[outputLength++] = character;
+
+        switch (state) {
+            case text:
+                if (character == '<') {
+                    state = State.tagStart;
+                    closingTag = false;
+                    processingInstruction = false;
+                    name.setLength(0);
+                }
+                break;
+            case tagStart:
+                if (character == '/') {
+                    closingTag = true;
+                } else if (character == '?' || character == '!') {
+                    processingInstruction = true;
+                    state = State.tag;
+                } else {
+                    name.append(character);
+                    state = State.tagName;
+                }
+                break;
+            case tagName:
+                if (character == '>' || character == '/' || Character.isWhitespace(character)) {
+                    onName();
+                    state = State.tag;
+                    quote = 0;
+                    if (character == '>') {
+                        onTagEnd(false);
+                    }
+                } else if (name.length() < MAX_NAME_LENGTH) {
+                    name.append(character);
+                }
+                break;
+            case tag:
+                if (quote != 0) {
+                    if (character == quote) {
+                        quote = 0;
+                    }
+                } else if (character == '"' || character == '\'') {
+                    quote = character;
+                } else if (character == '>') {
+                    onTagEnd(previous == '/');
+                }
+                break;
+            default:
+                break;
+        }
+        previous = character;
+    }
+
+    private void onName() {
+        if (closingTag || processingInstruction) {
+            return;
+        }
+        if (STREAM.contentEquals(name)) {
+            // stream is restarted after TLS and authentication without closing
+            depth = 0;
+        } else if (depth == 1) {
+            statistics.onElement(name, received);
+        }
+    }
+
+    private void onTagEnd(boolean selfClosing) {
+        state = State.text;
+        if (processingInstruction) {
+            return;
+        }
+        if (closingTag) {
+            depth = Math.max(0, depth - 1);
+            return;
+        }
+        if (selfClosing) {
+            return;
+        }
+        depth++;
+        if (BODY.contentEquals(name)) {
+            append(REDACTED);
+            bodyEndMatched = 0;
+            state = State.redacting;
+        }
+    }
+
+    private void append(String value) {
+        ensureCapacity(outputLength + value.length());
+        value.getChars(0, value.length(), output, outputLength);
+        outputLength += value.length();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (output.length < capacity) {
+            char[] newOutput = new char[Math.max(capacity, output.length * 2)];
+            System.arraycopy(output, 0, newOutput, 0, outputLength);
+            output = newOutput;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.xabber.android.data.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters of top level elements of the connection by name and direction.
+ * <p/>
+ * There are only a few distinct names in the stream, so they are looked up
+ * linearly without creating a string for every element.
+ */
+class WireStatistics {
+
+    private static class Counter {
+        final String name;
+        long received;
+        long sent;
+
+        Counter(String name) {
+            this.name = name;
+        }
+    }
+
+    private final List<Counter> counters;
+
+    WireStatistics() {
+        counters = new ArrayList<>();
+    }
+
+    synchronized void onElement(CharSequence name, boolean isReceived) {
+        Counter counter = null;
+        for (int index = 0; index < counters.size(); index++) {
+            if (counters.get(index).name.contentEquals(name)) {
+                counter = counters.get(index);
+                break;
+            }
+        }
+        if (counter == null) {
+            counter = new Counter(name.toString());
+            counters.add(counter);
+        }
+        if (isReceived) {
+            counter.received++;
+        } else {
+            counter.sent++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Counter counter : counters) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(counter.name).append(": ").append(counter.received)
+                    .append(" received / ").append(counter.sent).append(" sent");
+        }
+        return builder.toString();
+    }
+}
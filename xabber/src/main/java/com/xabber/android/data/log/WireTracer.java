@@ -0,0 +1,253 @@
+package com.xabber.android.data.log;
+
+import com.xabber.android.data.Application;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes XMPP traffic of all connections to compact binary trace files.
+ * Files are kept apart from text logs in {@link #DIRECTORY}.
+ * <p/>
+ * File starts with {@link #MAGIC} followed by records:
+ * <ul>
+ * <li>type: byte, one of {@link #TYPE_RECEIVED}, {@link #TYPE_SENT}, {@link #TYPE_EVENT}</li>
+ * <li>time: long, milliseconds since epoch</li>
+ * <li>connection: int</li>
+ * <li>length: int, number of following bytes</li>
+ * <li>data: UTF-8 bytes of the chunk as it was read or written</li>
+ * </ul>
+ * Use <code>tools/WireTraceDecoder.java</code> to print trace files.
+ */
+class WireTracer {
+
+    private static final byte[] MAGIC = new byte[]{'X', 'W', 'T', '1'};
+    static final byte TYPE_RECEIVED = 0;
+    static final byte TYPE_SENT = 1;
+    static final byte TYPE_EVENT = 2;
+
+    static final String FILE_EXTENSION = ".trace";
+    private static final String DIRECTORY = "traces";
+
+    private static final int TRACE_FILE_MAX_SIZE = 8000000;
+    private static final int TRACE_FILE_MAX_COUNT = 4;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum interval to keep written records in buffer.
+     */
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static WireTracer instance;
+
+    private DataOutputStream stream;
+    private long fileSize;
+    private long lastFlushTime;
+    private byte[] encoded;
+
+    static synchronized WireTracer getInstance() {
+        if (instance == null) {
+            instance = new WireTracer();
+        }
+        return instance;
+    }
+
+    private WireTracer() {
+        encoded = new byte[4096];
+    }
+
+    /**
+     * @return Whether traffic should be written, that is file log is enabled.
+     */
+    boolean isEnabled() {
+        return LogManager.isFileLog();
+    }
+
+    synchronized void write(byte type, int connection, char[] chars, int length) {
+        if (!isEnabled()) {
+            closeFile();
+            return;
+        }
+        try {
+            if (stream == null || fileSize >= TRACE_FILE_MAX_SIZE) {
+                openFile();
+                if (stream == null) {
+                    return;
+                }
+            }
+
+            int encodedLength = encode(chars, length);
+            long time = System.currentTimeMillis();
+            stream.writeByte(type);
+            stream.writeLong(time);
+            stream.writeInt(connection);
+            stream.writeInt(encodedLength);
+            stream.write(encoded, 0, encodedLength);
+            fileSize += 17 + encodedLength;
+
+            if (time - lastFlushTime >= FLUSH_INTERVAL_MILLIS) {
+                stream.flush();
+                lastFlushTime = time;
+            }
+        } catch (IOException e) {
+            closeFile();
+            LogManager.exception(this, e);
+        }
+    }
+
+    /**
+     * Closes current file and removes all trace files.
+     */
+    synchronized void deleteFiles() {
+        closeFile();
+        File directory = getDirectory();
+        if (directory == null) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                LogManager.w(this, "Can't delete " + file);
+            }
+        }
+    }
+
+    /**
+     * @return Trace files, to be shared with text logs.
+     */
+    synchronized File[] getFiles() {
+        flush();
+        File directory = getDirectory();
+        File[] files = directory == null ? null : directory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    synchronized void write(byte type, int connection, String value) {
+        write(type, connection, value.toCharArray(), value.length());
+    }
+
+    synchronized void flush() {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.flush();
+        } catch (IOException e) {
+            closeFile();
+            LogManager.exception(this, e);
+        }
+    }
+
+    private void openFile() throws IOException {
+        closeFile();
+
+        File directory = getDirectory();
+        if (directory == null) {
+            return;
+        }
+        deleteRedundantFiles(directory);
+
+        String name = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss", Locale.US).format(new Date());
+        File file = new File(directory, name + "_wire" + FILE_EXTENSION);
+        stream = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), WRITE_BUFFER_SIZE));
+        stream.write(MAGIC);
+        fileSize = MAGIC.length;
+    }
+
+    private void closeFile() {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LogManager.exception(this, e);
+        }
+        stream = null;
+    }
+
+    private static File getDirectory() {
+        File sdCard = Application.getInstance().getApplicationContext().getExternalFilesDir(null);
+        if (sdCard == null) {
+            return null;
+        }
+        File dir = new File(sdCard, DIRECTORY);
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void deleteRedundantFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_EXTENSION)) {
+                files[count++] = file;
+            }
+        }
+        // keep space for the new file
+        if (count < TRACE_FILE_MAX_COUNT) {
+            return;
+        }
+        files = Arrays.copyOf(files, count);
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+            }
+        });
+        for (int i = 0; i <= files.length - TRACE_FILE_MAX_COUNT; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Encodes chars to {@link #encoded} as UTF-8.
+     *
+     * @return number of encoded bytes.
+     */
+    private int encode(char[] chars, int length) {
+        if (encoded.length < length * 3) {
+            encoded = new byte[length * 3];
+        }
+        int position = 0;
+        for (int index = 0; index < length; index++) {
+            int code = chars[index];
+            if (Character.isHighSurrogate(chars[index]) && index + 1 < length
+                    && Character.isLowSurrogate(chars[index + 1])) {
+                code = Character.toCodePoint(chars[index], chars[index + 1]);
+                index++;
+            }
+            if (code < 0x80) {
+                encoded[position++] = (byte) code;
+            } else if (code < 0x800) {
+                encoded[position++] = (byte) (0xc0 | (code >> 6));
+                encoded[position++] = (byte) (0x80 | (code & 0x3f));
+            } else if (code < 0x10000) {
+                encoded[position++] = (byte) (0xe0 | (code >> 12));
+                encoded[position++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+                encoded[position++] = (byte) (0x80 | (code & 0x3f));
+            } else {
+                encoded[position++] = (byte) (0xf0 | (code >> 18));
+                encoded[position++] = (byte) (0x80 | ((code >> 12) & 0x3f));
+                encoded[position++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+                encoded[position++] = (byte) (0x80 | (code & 0x3f));
+            }
+        }
+        return position;
+    }
+
+}
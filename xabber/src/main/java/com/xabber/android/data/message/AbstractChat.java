@@ -31,12 +31,14 @@ import com.xabber.android.data.entity.BaseEntity;
 import com.xabber.android.data.entity.UserJid;
 import com.xabber.android.data.extension.carbons.CarbonManager;
 import com.xabber.android.data.extension.cs.ChatStateManager;
+import com.xabber.android.data.extension.file.AttachmentIndex;
 import com.xabber.android.data.extension.file.FileManager;
 import com.xabber.android.data.extension.httpfileupload.ExtendedFormField;
 import com.xabber.android.data.extension.httpfileupload.HttpFileUploadManager;
 import com.xabber.android.data.extension.otr.OTRManager;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.chat.ChatManager;
+import com.xabber.android.data.message.search.MessageSearchManager;
 import com.xabber.android.data.notification.NotificationManager;
 
 import org.greenrobot.eventbus.EventBus;
@@ -276,6 +278,7 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
 
     public void saveMessageItem(final MessageItem messageItem) {
         final long startTime = System.currentTimeMillis();
+        MessageSearchManager.getInstance().onMessageSaved(messageItem);
         MessageDatabaseManager.getInstance().getRealmUiThread()
                 .executeTransactionAsync(new Realm.Transaction() {
             @Override
@@ -351,6 +354,7 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
         messageItem.setStanzaId(stanzaId);
         if (attachments != null) messageItem.setAttachments(attachments);
         FileManager.processFileMessage(messageItem);
+        AttachmentIndex.index(messageItem);
 
         if (notify && notifyAboutMessage() && !visible) {
             NotificationManager.getInstance().onMessageNotification(messageItem);
@@ -413,6 +417,7 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
                 messageItem.setIncoming(false);
                 messageItem.setInProgress(true);
                 messageItem.setStanzaId(UUID.randomUUID().toString());
+                AttachmentIndex.index(messageItem);
                 realm.copyToRealm(messageItem);
             }
         });
@@ -447,6 +452,7 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
         } else {
             lastMessage = null;
         }
+        MessageManager.getInstance().onLastMessageChanged(this);
     }
 
     /**
@@ -669,6 +675,12 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
     protected void onDisconnect() {
     }
 
+    /**
+     * Connection was restored by resuming previous stream session.
+     */
+    protected void onResumed() {
+    }
+
     public void setIsPrivateMucChatAccepted(boolean isPrivateMucChatAccepted) {
         this.isPrivateMucChatAccepted = isPrivateMucChatAccepted;
     }
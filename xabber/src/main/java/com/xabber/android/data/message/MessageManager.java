@@ -14,7 +14,6 @@
  */
 package com.xabber.android.data.message;
 
-import android.os.Environment;
 import android.os.Looper;
 import android.support.annotation.Nullable;
 
@@ -43,20 +42,20 @@ import com.xabber.android.data.entity.UserJid;
 import com.xabber.android.data.extension.captcha.Captcha;
 import com.xabber.android.data.extension.captcha.CaptchaManager;
 import com.xabber.android.data.extension.carbons.CarbonManager;
+import com.xabber.android.data.extension.file.AttachmentIndex;
 import com.xabber.android.data.extension.file.FileManager;
 import com.xabber.android.data.extension.httpfileupload.HttpFileUploadManager;
 import com.xabber.android.data.extension.muc.MUCManager;
-import com.xabber.android.data.extension.muc.RoomChat;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.chat.ChatManager;
 import com.xabber.android.data.message.chat.MucPrivateChatNotification;
+import com.xabber.android.data.message.search.MessageSearchManager;
 import com.xabber.android.data.notification.EntityNotificationProvider;
 import com.xabber.android.data.notification.NotificationManager;
 import com.xabber.android.data.roster.OnRosterReceivedListener;
 import com.xabber.android.data.roster.OnStatusChangeListener;
 import com.xabber.android.data.roster.PresenceManager;
 import com.xabber.android.data.roster.RosterManager;
-import com.xabber.android.utils.StringUtils;
 
 import org.greenrobot.eventbus.EventBus;
 import org.jivesoftware.smack.packet.ExtensionElement;
@@ -67,14 +66,10 @@ import org.jivesoftware.smackx.muc.packet.MUCUser;
 import org.jxmpp.jid.FullJid;
 import org.jxmpp.jid.Jid;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -102,6 +97,10 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
      * Registered chats for bareAddresses in accounts.
      */
     private final NestedMap<AbstractChat> chats;
+    /**
+     * Registered chats ordered by time of the last message.
+     */
+    private final RecentChatIndex recentChats;
     /**
      * Visible chat.
      * <p/>
@@ -119,6 +118,7 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
 
     private MessageManager() {
         chats = new NestedMap<>();
+        recentChats = new RecentChatIndex();
 
         mucPrivateChatRequestProvider = new EntityNotificationProvider<>
                 (R.drawable.ic_stat_muc_private_chat_request_white_24dp);
@@ -182,6 +182,13 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
         return chats;
     }
 
+    /**
+     * @return Up to limit registered chats with last message, most recent first.
+     */
+    public List<AbstractChat> getRecentChats(int limit) {
+        return recentChats.getChats(limit);
+    }
+
     public Collection<AbstractChat> getChats(AccountJid account) {
         List<AbstractChat> chats = new ArrayList<>();
         chats.addAll(this.chats.getNested(account.toString()).values());
@@ -231,6 +238,7 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
             return;
         }
         chats.put(chat.getAccount().toString(), chat.getUser().toString(), chat);
+        recentChats.update(chat);
     }
 
     /**
@@ -242,6 +250,16 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
         chat.closeChat();
         LogManager.i(this, "removeChat " + chat.getUser());
         chats.remove(chat.getAccount().toString(), chat.getUser().toString());
+        recentChats.remove(chat);
+    }
+
+    /**
+     * Called when last message of the chat was changed.
+     */
+    void onLastMessageChanged(AbstractChat chat) {
+        if (chats.get(chat.getAccount().toString(), chat.getUser().toString()) == chat) {
+            recentChats.update(chat);
+        }
     }
 
     /**
@@ -265,6 +283,7 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
             public void execute(Realm realm) {
                 MessageItem newMessageItem = chat.createNewMessageItem(text);
                 realm.copyToRealm(newMessageItem);
+                MessageSearchManager.getInstance().onMessageSaved(newMessageItem);
                 LogManager.d("REALM", Thread.currentThread().getName()
                         + " save message before sending: " + (System.currentTimeMillis() - startTime));
                 if (chat.canSendMessage())
@@ -303,7 +322,8 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
                     for (String file : notUploadedFilesUrls) {
                         for (Attachment attachment : attachments) {
                             if (file.equals(attachment.getFilePath())) {
-                                attachments.remove(attachment);
+                                AttachmentIndex.onDeleted(Collections.singletonList(attachment));
+                                attachment.deleteFromRealm();
                                 break;
                             }
                         }
@@ -361,6 +381,7 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
                         }
                         attachments.add(attachment);
                     }
+                    AttachmentIndex.index(messageItem);
                 }
             }
         });
@@ -568,10 +589,17 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
                         .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
                         .equalTo(MessageItem.Fields.USER, user.toString())
                         .findAll().deleteAllFromRealm();
+                RealmResults<Attachment> attachments = realm.where(Attachment.class)
+                        .equalTo(Attachment.Fields.ACCOUNT, account.toString())
+                        .equalTo(Attachment.Fields.USER, user.toString())
+                        .findAll();
+                AttachmentIndex.onDeleted(attachments);
+                attachments.deleteAllFromRealm();
                 LogManager.d("REALM", Thread.currentThread().getName()
                         + " clear history: " + (System.currentTimeMillis() - startTime));
             }
         });
+        MessageSearchManager.getInstance().onHistoryCleared(account, user);
     }
 
     /**
@@ -588,9 +616,14 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
                         .equalTo(MessageItem.Fields.UNIQUE_ID, messageItemId).findFirst();
                 if (messageItem != null) {
                     realm.beginTransaction();
+                    if (messageItem.haveAttachments()) {
+                        AttachmentIndex.onDeleted(messageItem.getAttachments());
+                        messageItem.getAttachments().deleteAllFromRealm();
+                    }
                     messageItem.deleteFromRealm();
                     realm.commitTransaction();
                 }
+                MessageSearchManager.getInstance().onMessageRemoved(messageItemId);
 
                 realm.close();
             }
@@ -773,10 +806,13 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
                     newMessageItem.setForwarded(true);
 
                     RealmList<Attachment> attachments = HttpFileUploadManager.parseFileMessage(message);
-                    if (attachments.size() > 0)
+                    if (attachments.size() > 0) {
                         newMessageItem.setAttachments(attachments);
+                        AttachmentIndex.index(newMessageItem);
+                    }
 
                     realm.copyToRealm(newMessageItem);
+                    MessageSearchManager.getInstance().onMessageSaved(newMessageItem);
                     LogManager.d("REALM", Thread.currentThread().getName()
                             + " save carbons message: " + (System.currentTimeMillis() - startTime));
 
@@ -838,71 +874,29 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
         }
     }
 
+    /**
+     * Connection was restored by stream resumption, roster will not be received again.
+     */
+    public void onResumed(ConnectionItem connection) {
+        if (!(connection instanceof AccountItem)) {
+            return;
+        }
+        AccountJid account = connection.getAccount();
+        for (AbstractChat chat : chats.getNested(account.toString()).values()) {
+            chat.onResumed();
+        }
+    }
+
     @Override
     public void onAccountRemoved(AccountItem accountItem) {
         chats.clear(accountItem.getAccount().toString());
+        recentChats.remove(accountItem.getAccount());
     }
 
     @Override
     public void onAccountDisabled(AccountItem accountItem) {
         chats.clear(accountItem.getAccount().toString());
-    }
-
-    /**
-     * Export chat to file with specified name.
-     *
-     * @param account
-     * @param user
-     * @param fileName
-     * @throws NetworkException
-     */
-    public File exportChat(AccountJid account, UserJid user, String fileName) throws NetworkException {
-        final File file = new File(Environment.getExternalStorageDirectory(), fileName);
-        try {
-            BufferedWriter out = new BufferedWriter(new FileWriter(file));
-            final String titleName = RosterManager.getInstance().getName(account, user) + " (" + user + ")";
-            out.write("<html><head><title>");
-            out.write(StringUtils.escapeHtml(titleName));
-            out.write("</title></head><body>");
-            final AbstractChat abstractChat = getChat(account, user);
-            if (abstractChat != null) {
-                final boolean isMUC = abstractChat instanceof RoomChat;
-                final String accountName = AccountManager.getInstance().getNickName(account);
-                final String userName = RosterManager.getInstance().getName(account, user);
-
-                Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-                RealmResults<MessageItem> messageItems = MessageDatabaseManager.getChatMessages(realm, account, user);
-
-                for (MessageItem messageItem : messageItems) {
-                    if (messageItem.getAction() != null) {
-                        continue;
-                    }
-                    final String name;
-                    if (isMUC) {
-                        name = messageItem.getResource().toString();
-                    } else {
-                        if (messageItem.isIncoming()) {
-                            name = userName;
-                        } else {
-                            name = accountName;
-                        }
-                    }
-                    out.write("<b>");
-                    out.write(StringUtils.escapeHtml(name));
-                    out.write("</b>&nbsp;(");
-                    out.write(StringUtils.getDateTimeText(new Date(messageItem.getTimestamp())));
-                    out.write(")<br />\n<p>");
-                    out.write(StringUtils.escapeHtml(messageItem.getText()));
-                    out.write("</p><hr />\n");
-                }
-                realm.close();
-            }
-            out.write("</body></html>");
-            out.close();
-        } catch (IOException e) {
-            throw new NetworkException(R.string.FILE_NOT_FOUND);
-        }
-        return file;
+        recentChats.remove(accountItem.getAccount());
     }
 
     private boolean isStatusTrackingEnabled(AccountJid account, UserJid user) {
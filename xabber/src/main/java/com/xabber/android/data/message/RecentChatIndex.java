@@ -0,0 +1,123 @@
+package com.xabber.android.data.message;
+
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.entity.AccountJid;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Chats with last message ordered by its time, most recent first.
+ * <p/>
+ * Position of the chat is updated in O(log n) when its last message is
+ * changed, so top of the list is read without sorting all chats.
+ */
+class RecentChatIndex {
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry entry1, Entry entry2) {
+            if (entry1.time != entry2.time) {
+                return entry1.time > entry2.time ? -1 : 1;
+            }
+            if (entry1.order != entry2.order) {
+                return entry1.order < entry2.order ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    private final TreeSet<Entry> entries;
+    private final Map<AbstractChat, Entry> chatEntries;
+    /**
+     * Order of the next added chat, used to keep chats with the same time apart.
+     */
+    private long nextOrder;
+
+    RecentChatIndex() {
+        entries = new TreeSet<>(ENTRY_COMPARATOR);
+        chatEntries = new HashMap<>();
+    }
+
+    /**
+     * Moves chat according to its last message or removes it if there is no one.
+     */
+    synchronized void update(AbstractChat chat) {
+        MessageItem lastMessage = chat.getLastMessage();
+        Entry entry = chatEntries.get(chat);
+        if (lastMessage == null) {
+            if (entry != null) {
+                remove(chat);
+            }
+            return;
+        }
+
+        long time = lastMessage.getTimestamp();
+        if (entry != null) {
+            if (entry.time == time) {
+                return;
+            }
+            entries.remove(entry);
+            entry = new Entry(chat, time, entry.order);
+        } else {
+            entry = new Entry(chat, time, nextOrder++);
+        }
+        entries.add(entry);
+        chatEntries.put(chat, entry);
+    }
+
+    synchronized void remove(AbstractChat chat) {
+        Entry entry = chatEntries.remove(chat);
+        if (entry != null) {
+            entries.remove(entry);
+        }
+    }
+
+    /**
+     * Removes all chats of the account.
+     */
+    synchronized void remove(AccountJid account) {
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.chat.getAccount().equals(account)) {
+                iterator.remove();
+                chatEntries.remove(entry.chat);
+            }
+        }
+    }
+
+    /**
+     * @return Up to limit most recent chats.
+     */
+    synchronized List<AbstractChat> getChats(int limit) {
+        List<AbstractChat> chats = new ArrayList<>(Math.min(limit, entries.size()));
+        for (Entry entry : entries) {
+            if (chats.size() >= limit) {
+                break;
+            }
+            chats.add(entry.chat);
+        }
+        return chats;
+    }
+
+    private static class Entry {
+
+        private final AbstractChat chat;
+        private final long time;
+        private final long order;
+
+        Entry(AbstractChat chat, long time, long order) {
+            this.chat = chat;
+            this.time = time;
+            this.order = order;
+        }
+
+    }
+
+}
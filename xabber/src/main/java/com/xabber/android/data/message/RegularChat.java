@@ -252,4 +252,10 @@ public class RegularChat extends AbstractChat {
         sendMessages();
     }
 
+    @Override
+    protected void onResumed() {
+        super.onResumed();
+        sendMessages();
+    }
+
 }
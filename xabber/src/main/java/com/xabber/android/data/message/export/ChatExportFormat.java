@@ -0,0 +1,131 @@
+package com.xabber.android.data.message.export;
+
+import com.xabber.android.utils.StringUtils;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Formats of exported chat history.
+ */
+public enum ChatExportFormat {
+
+    html("html", "text/html") {
+        @Override
+        void writeHeader(Writer out, String title) throws IOException {
+            out.write("<html><head><meta charset=\"UTF-8\"><title>");
+            out.write(StringUtils.escapeHtml(title));
+            out.write("</title></head><body>");
+        }
+
+        @Override
+        void writeMessage(Writer out, String name, long timestamp, String time,
+                          boolean incoming, String text) throws IOException {
+            out.write("<b>");
+            out.write(StringUtils.escapeHtml(name));
+            out.write("</b>&nbsp;(");
+            out.write(time);
+            out.write(")<br />\n<p>");
+            out.write(StringUtils.escapeHtml(text));
+            out.write("</p><hr />\n");
+        }
+
+        @Override
+        void writeFooter(Writer out) throws IOException {
+            out.write("</body></html>");
+        }
+    },
+
+    txt("txt", "text/plain") {
+        @Override
+        void writeHeader(Writer out, String title) throws IOException {
+            out.write(title);
+            out.write("\n\n");
+        }
+
+        @Override
+        void writeMessage(Writer out, String name, long timestamp, String time,
+                          boolean incoming, String text) throws IOException {
+            out.write("[");
+            out.write(time);
+            out.write("] ");
+            out.write(name);
+            out.write(": ");
+            out.write(text);
+            out.write("\n");
+        }
+
+        @Override
+        void writeFooter(Writer out) throws IOException {
+        }
+    },
+
+    /**
+     * One JSON object per line, suitable for processing with other tools.
+     */
+    jsonl("jsonl", "application/x-ndjson") {
+        @Override
+        void writeHeader(Writer out, String title) throws IOException {
+        }
+
+        @Override
+        void writeMessage(Writer out, String name, long timestamp, String time,
+                          boolean incoming, String text) throws IOException {
+            out.write("{\"timestamp\":");
+            out.write(Long.toString(timestamp));
+            out.write(",\"from\":");
+            out.write(JSONObject.quote(name));
+            out.write(",\"incoming\":");
+            out.write(incoming ? "true" : "false");
+            out.write(",\"text\":");
+            out.write(JSONObject.quote(text));
+            out.write("}\n");
+        }
+
+        @Override
+        void writeFooter(Writer out) throws IOException {
+        }
+    };
+
+    private final String extension;
+    private final String mimeType;
+
+    ChatExportFormat(String extension, String mimeType) {
+        this.extension = extension;
+        this.mimeType = mimeType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return Format for file name's extension, {@link #html} if it is unknown.
+     */
+    public static ChatExportFormat fromFileName(String fileName) {
+        String lowerCase = fileName.toLowerCase();
+        for (ChatExportFormat format : values()) {
+            if (lowerCase.endsWith("." + format.extension)) {
+                return format;
+            }
+        }
+        return html;
+    }
+
+    abstract void writeHeader(Writer out, String title) throws IOException;
+
+    /**
+     * @param time formatted timestamp.
+     */
+    abstract void writeMessage(Writer out, String name, long timestamp, String time,
+                               boolean incoming, String text) throws IOException;
+
+    abstract void writeFooter(Writer out) throws IOException;
+
+}
@@ -0,0 +1,341 @@
+package com.xabber.android.data.message.export;
+
+import android.support.annotation.Nullable;
+
+import com.xabber.android.R;
+import com.xabber.android.data.Application;
+import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.account.AccountManager;
+import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.extension.muc.MUCManager;
+import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.roster.RosterManager;
+import com.xabber.android.utils.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Exports chat history to files.
+ * <p/>
+ * Messages are read from background Realm and written to the buffered stream
+ * page by page, so export of any size does not hold messages in memory.
+ * Whole account can be exported to zip archive with one file per chat.
+ */
+public class ChatExporter {
+
+    private static final String LOG_TAG = ChatExporter.class.getSimpleName();
+
+    /**
+     * Number of messages between progress events and cancellation checks.
+     */
+    private static final int PAGE_SIZE = 500;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static ChatExporter instance;
+
+    public static ChatExporter getInstance() {
+        if (instance == null) {
+            instance = new ChatExporter();
+        }
+
+        return instance;
+    }
+
+    private ChatExporter() {
+    }
+
+    /**
+     * Running export, can be cancelled from any thread.
+     */
+    public static class Task {
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    private static class CancelledException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Reports progress of the task to the listener.
+     */
+    private static class Progress {
+        private final Task task;
+        private final OnChatExportListener listener;
+        private final int total;
+        private int exported;
+
+        Progress(Task task, @Nullable OnChatExportListener listener, int total) {
+            this.task = task;
+            this.listener = listener;
+            this.total = total;
+        }
+
+        void onMessageExported() throws CancelledException {
+            exported++;
+            if (exported % PAGE_SIZE != 0) {
+                return;
+            }
+            if (task.isCancelled()) {
+                throw new CancelledException();
+            }
+            if (listener != null) {
+                final int exported = this.exported;
+                Application.getInstance().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onExportProgress(exported, total);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Writes names and time of messages of one chat.
+     */
+    private static class ChatWriter {
+        private final ChatExportFormat format;
+        private final DateFormat dateFormat;
+        private final Date date;
+
+        ChatWriter(ChatExportFormat format) {
+            this.format = format;
+            this.dateFormat = StringUtils.getDateTimeFormat();
+            this.date = new Date();
+        }
+
+        void write(Writer out, AccountJid account, UserJid user, RealmResults<MessageItem> messageItems,
+                   int start, int end, Progress progress) throws IOException, CancelledException {
+            final boolean isMUC = MUCManager.getInstance().hasRoom(account,
+                    user.getJid().asEntityBareJidIfPossible());
+            final String accountName = AccountManager.getInstance().getNickName(account);
+            final String userName = RosterManager.getInstance().getName(account, user);
+
+            format.writeHeader(out, userName + " (" + user + ")");
+            for (int index = start; index < end; index++) {
+                MessageItem messageItem = messageItems.get(index);
+                final String name;
+                if (isMUC) {
+                    name = messageItem.getResource().toString();
+                } else if (messageItem.isIncoming()) {
+                    name = userName;
+                } else {
+                    name = accountName;
+                }
+                date.setTime(messageItem.getTimestamp());
+                format.writeMessage(out, name, messageItem.getTimestamp(), dateFormat.format(date),
+                        messageItem.isIncoming(), messageItem.getText());
+                progress.onMessageExported();
+            }
+            format.writeFooter(out);
+        }
+    }
+
+    /**
+     * Exports chat in background.
+     */
+    public Task exportChat(final AccountJid account, final UserJid user, final ChatExportFormat format,
+                           final File file, @Nullable final OnChatExportListener listener) {
+        final Task task = new Task();
+        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeChat(account, user, format, file, task, listener);
+                    onFinished(file, listener);
+                } catch (CancelledException e) {
+                    onCancelled(file, listener);
+                } catch (NetworkException e) {
+                    onError(e, listener);
+                }
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Exports all chats of account to zip archive in background.
+     */
+    public Task exportAccount(final AccountJid account, final ChatExportFormat format,
+                              final File file, @Nullable final OnChatExportListener listener) {
+        final Task task = new Task();
+        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeAccount(account, format, file, task, listener);
+                    onFinished(file, listener);
+                } catch (CancelledException e) {
+                    onCancelled(file, listener);
+                } catch (NetworkException e) {
+                    onError(e, listener);
+                }
+            }
+        });
+        return task;
+    }
+
+    private void writeChat(AccountJid account, UserJid user, ChatExportFormat format, File file,
+                           Task task, @Nullable OnChatExportListener listener)
+            throws NetworkException, CancelledException {
+        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+        Writer out = null;
+        try {
+            RealmResults<MessageItem> messageItems = MessageDatabaseManager
+                    .getChatMessagesQuery(realm, account, user)
+                    .isNull(MessageItem.Fields.ACTION)
+                    .isNotNull(MessageItem.Fields.TEXT)
+                    .isNotEmpty(MessageItem.Fields.TEXT)
+                    .findAllSorted(MessageItem.Fields.TIMESTAMP, Sort.ASCENDING);
+
+            out = createWriter(new FileOutputStream(file));
+            new ChatWriter(format).write(out, account, user, messageItems, 0, messageItems.size(),
+                    new Progress(task, listener, messageItems.size()));
+            out.flush();
+        } catch (IOException e) {
+            LogManager.exception(LOG_TAG, e);
+            throw new NetworkException(R.string.FILE_NOT_FOUND, e);
+        } finally {
+            close(out);
+            realm.close();
+        }
+    }
+
+    /**
+     * Writes all chats of the account in one pass over messages sorted by user.
+     */
+    private void writeAccount(AccountJid account, ChatExportFormat format, File file,
+                              Task task, @Nullable OnChatExportListener listener)
+            throws NetworkException, CancelledException {
+        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+        ZipOutputStream zip = null;
+        try {
+            RealmResults<MessageItem> messageItems = realm.where(MessageItem.class)
+                    .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
+                    .isNull(MessageItem.Fields.ACTION)
+                    .isNotNull(MessageItem.Fields.TEXT)
+                    .isNotEmpty(MessageItem.Fields.TEXT)
+                    .findAllSorted(new String[]{MessageItem.Fields.USER, MessageItem.Fields.TIMESTAMP},
+                            new Sort[]{Sort.ASCENDING, Sort.ASCENDING});
+
+            zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER_SIZE));
+            Writer out = new OutputStreamWriter(zip, "UTF-8");
+            ChatWriter chatWriter = new ChatWriter(format);
+            Progress progress = new Progress(task, listener, messageItems.size());
+
+            int start = 0;
+            while (start < messageItems.size()) {
+                UserJid user = messageItems.get(start).getUser();
+                int end = start + 1;
+                while (end < messageItems.size() && user.equals(messageItems.get(end).getUser())) {
+                    end++;
+                }
+
+                zip.putNextEntry(new ZipEntry(getFileName(user.toString(), format)));
+                chatWriter.write(out, account, user, messageItems, start, end, progress);
+                out.flush();
+                zip.closeEntry();
+
+                start = end;
+            }
+            zip.finish();
+        } catch (IOException e) {
+            LogManager.exception(LOG_TAG, e);
+            throw new NetworkException(R.string.FILE_NOT_FOUND, e);
+        } finally {
+            close(zip);
+            realm.close();
+        }
+    }
+
+    private static Writer createWriter(OutputStream stream) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), WRITE_BUFFER_SIZE);
+    }
+
+    private static String getFileName(String user, ChatExportFormat format) {
+        return user.replaceAll("[^\\w@.\\-]", "_") + "." + format.getExtension();
+    }
+
+    private static void close(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LogManager.exception(LOG_TAG, e);
+        }
+    }
+
+    private static void onFinished(final File file, @Nullable final OnChatExportListener listener) {
+        LogManager.i(LOG_TAG, "export finished " + file.getName());
+        if (listener == null) {
+            return;
+        }
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                listener.onExportFinished(file);
+            }
+        });
+    }
+
+    private static void onCancelled(File file, @Nullable final OnChatExportListener listener) {
+        LogManager.i(LOG_TAG, "export cancelled " + file.getName());
+        if (!file.delete()) {
+            LogManager.w(LOG_TAG, "can't delete " + file.getName());
+        }
+        if (listener == null) {
+            return;
+        }
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                listener.onExportCancelled();
+            }
+        });
+    }
+
+    private static void onError(final NetworkException e, @Nullable final OnChatExportListener listener) {
+        if (listener == null) {
+            Application.getInstance().onError(e);
+            return;
+        }
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                listener.onExportError(e);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.xabber.android.data.message.export;
+
+import com.xabber.android.data.NetworkException;
+
+import java.io.File;
+
+/**
+ * Listener for chat export progress. All methods are called from UI thread.
+ */
+public interface OnChatExportListener {
+
+    /**
+     * @param exported number of exported messages.
+     * @param total    number of messages to be exported.
+     */
+    void onExportProgress(int exported, int total);
+
+    void onExportFinished(File file);
+
+    void onExportCancelled();
+
+    void onExportError(NetworkException e);
+
+}
@@ -69,8 +69,18 @@ public class Phrase {
      * groups.
      */
     public boolean matches(String text, String user, Collection<String> groups) {
-        if (textPattern.matcher(text).find()
-                && userPattern.matcher(user).find()) {
+        return matchesText(text) && matchesContact(user, groups);
+    }
+
+    boolean matchesText(String text) {
+        return textPattern.matcher(text).find();
+    }
+
+    /**
+     * @return Whether phrase's user and group conditions are satisfied.
+     */
+    boolean matchesContact(String user, Collection<String> groups) {
+        if (userPattern.matcher(user).find()) {
             if (groups.isEmpty())
                 return groupPattern.matcher("").find();
             for (String group : groups)
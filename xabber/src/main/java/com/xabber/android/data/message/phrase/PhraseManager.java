@@ -41,6 +41,11 @@ public class PhraseManager implements OnLoadListener {
      */
     private final List<Phrase> phrases;
 
+    /**
+     * Matcher compiled from current phrases. <code>null</code> if it must be rebuilt.
+     */
+    private volatile PhraseMatcher matcher;
+
     private static PhraseManager instance;
 
     public static PhraseManager getInstance() {
@@ -84,6 +89,7 @@ public class PhraseManager implements OnLoadListener {
 
     private void onLoaded(Collection<Phrase> phrases) {
         this.phrases.addAll(phrases);
+        matcher = null;
     }
 
     /**
@@ -94,16 +100,25 @@ public class PhraseManager implements OnLoadListener {
     public Uri getSound(AccountJid account, UserJid user, String text, boolean isMUC) {
         Collection<String> groups = RosterManager.getInstance().getGroups(
                 account, user);
-        for (Phrase phrase : phrases)
-            if (phrase.matches(text, user.toString(), groups)) {
-                Uri value = phrase.getSound();
-                if (ChatManager.EMPTY_SOUND.equals(value))
-                    return null;
-                return value;
-            }
+        Phrase phrase = getMatcher().getMatch(text, user.toString(), groups);
+        if (phrase != null) {
+            Uri value = phrase.getSound();
+            if (ChatManager.EMPTY_SOUND.equals(value))
+                return null;
+            return value;
+        }
         return ChatManager.getInstance().getSound(account, user, isMUC);
     }
 
+    private PhraseMatcher getMatcher() {
+        PhraseMatcher result = matcher;
+        if (result == null) {
+            result = new PhraseMatcher(phrases);
+            matcher = result;
+        }
+        return result;
+    }
+
     /**
      * Update phrase or create.
      *
@@ -120,6 +135,7 @@ public class PhraseManager implements OnLoadListener {
         } else {
             phrase.update(value, user, group, regexp, sound);
         }
+        matcher = null;
         writePhrase(phrase, value, user, group, regexp, sound);
     }
 
@@ -132,6 +148,7 @@ public class PhraseManager implements OnLoadListener {
         Phrase phrase = getPhrase(index);
         if (phrase != null) {
             phrases.remove(phrase);  // remove from the local list
+            matcher = null;
             PhraseTable.getInstance().remove(phrase.getId());  // remove from database
         }
     }
@@ -0,0 +1,219 @@
+package com.xabber.android.data.message.phrase;
+
+import android.util.LruCache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Immutable matcher for the list of phrases.
+ * <p/>
+ * Texts of plain phrases and literal prefixes of regular expressions are compiled into
+ * one Aho-Corasick automaton, so the message text is scanned once for all phrases.
+ * Regular expressions are evaluated only if their literal prefix was found.
+ * Results of user and group conditions are cached per contact.
+ */
+class PhraseMatcher {
+
+    private static final int CONTACT_CACHE_SIZE = 128;
+
+    private static final String REGEX_META_CHARACTERS = "\\[](){}.*+?^$|";
+    private static final String REGEX_QUANTIFIERS = "*+?{";
+
+    private final List<Phrase> phrases;
+
+    /**
+     * Phrases without literal to look for in text, they are checked for every message.
+     */
+    private final BitSet alwaysCandidates;
+
+    /**
+     * Automaton states. Root state has index 0.
+     */
+    private final List<State> states;
+
+    private final LruCache<String, BitSet> contactCache;
+
+    private static class State {
+        final Map<Character, Integer> next = new HashMap<>();
+        int failure;
+        /**
+         * Indexes of phrases which literal ends in this state, including failure states.
+         */
+        final BitSet output = new BitSet();
+    }
+
+    PhraseMatcher(List<Phrase> phrases) {
+        this.phrases = new ArrayList<>(phrases);
+        this.alwaysCandidates = new BitSet();
+        this.states = new ArrayList<>();
+        this.states.add(new State());
+        this.contactCache = new LruCache<>(CONTACT_CACHE_SIZE);
+
+        for (int index = 0; index < this.phrases.size(); index++) {
+            Phrase phrase = this.phrases.get(index);
+            String literal = phrase.isRegexp()
+                    ? getRegexpLiteralPrefix(phrase.getText()) : phrase.getText();
+            if (literal == null || literal.isEmpty()) {
+                alwaysCandidates.set(index);
+            } else {
+                addLiteral(toLowerCase(literal), index);
+            }
+        }
+        buildFailureLinks();
+    }
+
+    /**
+     * @return First phrase matched by text, user and groups or <code>null</code>.
+     */
+    Phrase getMatch(String text, String user, Collection<String> groups) {
+        if (phrases.isEmpty()) {
+            return null;
+        }
+
+        BitSet contactMatches = getContactMatches(user, groups);
+        if (contactMatches.isEmpty()) {
+            return null;
+        }
+
+        BitSet candidates = scan(text);
+        candidates.or(alwaysCandidates);
+        candidates.and(contactMatches);
+
+        for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1)) {
+            Phrase phrase = phrases.get(index);
+            // found literal is the whole condition for plain phrases
+            if (!phrase.isRegexp() || phrase.matchesText(text)) {
+                return phrase;
+            }
+        }
+        return null;
+    }
+
+    private BitSet getContactMatches(String user, Collection<String> groups) {
+        StringBuilder key = new StringBuilder(user);
+        for (String group : groups) {
+            key.append('\n').append(group);
+        }
+
+        BitSet result = contactCache.get(key.toString());
+        if (result == null) {
+            result = new BitSet(phrases.size());
+            for (int index = 0; index < phrases.size(); index++) {
+                if (phrases.get(index).matchesContact(user, groups)) {
+                    result.set(index);
+                }
+            }
+            contactCache.put(key.toString(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return Indexes of phrases which literals were found in text.
+     */
+    private BitSet scan(String text) {
+        BitSet found = new BitSet(phrases.size());
+        int state = 0;
+        for (int offset = 0; offset < text.length(); offset++) {
+            char character = toLowerCase(text.charAt(offset));
+            Integer target = states.get(state).next.get(character);
+            while (target == null && state != 0) {
+                state = states.get(state).failure;
+                target = states.get(state).next.get(character);
+            }
+            state = target == null ? 0 : target;
+            found.or(states.get(state).output);
+        }
+        return found;
+    }
+
+    private void addLiteral(String literal, int index) {
+        int state = 0;
+        for (int offset = 0; offset < literal.length(); offset++) {
+            char character = literal.charAt(offset);
+            Integer target = states.get(state).next.get(character);
+            if (target == null) {
+                target = states.size();
+                states.add(new State());
+                states.get(state).next.put(character, target);
+            }
+            state = target;
+        }
+        states.get(state).output.set(index);
+    }
+
+    private void buildFailureLinks() {
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (Integer child : states.get(0).next.values()) {
+            states.get(child).failure = 0;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            for (Map.Entry<Character, Integer> entry : states.get(state).next.entrySet()) {
+                int child = entry.getValue();
+                int failure = states.get(state).failure;
+                Integer target = states.get(failure).next.get(entry.getKey());
+                while (target == null && failure != 0) {
+                    failure = states.get(failure).failure;
+                    target = states.get(failure).next.get(entry.getKey());
+                }
+                states.get(child).failure = target == null || target == child ? 0 : target;
+                states.get(child).output.or(states.get(states.get(child).failure).output);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return Literal every match of regular expression starts with
+     * or <code>null</code> if it can not be determined safely.
+     */
+    static String getRegexpLiteralPrefix(String regexp) {
+        if (regexp.indexOf('|') != -1) {
+            return null;
+        }
+
+        int end = 0;
+        while (end < regexp.length() && REGEX_META_CHARACTERS.indexOf(regexp.charAt(end)) == -1) {
+            end++;
+        }
+
+        // last literal character is optional if quantifier follows it
+        if (end < regexp.length() && REGEX_QUANTIFIERS.indexOf(regexp.charAt(end)) != -1) {
+            end--;
+        }
+
+        if (end <= 0) {
+            return null;
+        }
+        return regexp.substring(0, end);
+    }
+
+    private static String toLowerCase(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int offset = 0; offset < value.length(); offset++) {
+            builder.append(toLowerCase(value.charAt(offset)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Folds US-ASCII characters only, the same way {@link Phrase#compile(String)} patterns do.
+     */
+    private static char toLowerCase(char character) {
+        if (character >= 'A' && character <= 'Z') {
+            return (char) (character + ('a' - 'A'));
+        }
+        return character;
+    }
+
+}
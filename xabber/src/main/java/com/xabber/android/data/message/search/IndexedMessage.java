@@ -0,0 +1,63 @@
+package com.xabber.android.data.message.search;
+
+import com.xabber.android.data.database.messagerealm.MessageItem;
+
+/**
+ * Snapshot of message text to be written to the search index.
+ */
+public class IndexedMessage {
+
+    private final String uniqueId;
+    private final String account;
+    private final String user;
+    private final long timestamp;
+    private final String text;
+
+    IndexedMessage(String uniqueId, String account, String user, long timestamp, String text) {
+        this.uniqueId = uniqueId;
+        this.account = account;
+        this.user = user;
+        this.timestamp = timestamp;
+        this.text = text;
+    }
+
+    /**
+     * @return Snapshot of the message or <code>null</code> if message has no searchable text.
+     */
+    static IndexedMessage from(MessageItem messageItem) {
+        if (messageItem.getAction() != null || messageItem.getText() == null) {
+            return null;
+        }
+        String text = MessageSearchManager.normalize(messageItem.getText());
+        if (text.isEmpty()) {
+            return null;
+        }
+        Long timestamp = messageItem.getTimestamp();
+        return new IndexedMessage(messageItem.getUniqueId(), messageItem.getAccount().toString(),
+                messageItem.getUser().toString(), timestamp == null ? 0 : timestamp, text);
+    }
+
+    public String getUniqueId() {
+        return uniqueId;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return Normalized text.
+     */
+    public String getText() {
+        return text;
+    }
+
+}
@@ -0,0 +1,329 @@
+package com.xabber.android.data.message.search;
+
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+
+import com.xabber.android.data.Application;
+import com.xabber.android.data.OnLoadListener;
+import com.xabber.android.data.OnUnloadListener;
+import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.database.sqlite.MessageSearchTable;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.log.LogManager;
+
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.realm.Realm;
+import io.realm.RealmQuery;
+import io.realm.RealmResults;
+
+/**
+ * Full text search over message history.
+ * <p/>
+ * Index is updated incrementally from the message write path. Writes are
+ * collected and flushed in one transaction in background, so bursts of
+ * incoming messages (e.g. archive sync) cost one commit.
+ * <p/>
+ * Text is normalized in Java before it gets to SQLite: letters and digits are
+ * lower cased, everything else becomes separator. FTS tokenizers available on
+ * all supported platform versions are not aware of unicode case and punctuation.
+ */
+public class MessageSearchManager implements OnLoadListener, OnUnloadListener {
+
+    private static final String LOG_TAG = MessageSearchManager.class.getSimpleName();
+
+    /**
+     * Number of messages written in one transaction on index rebuild.
+     */
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static MessageSearchManager instance;
+
+    /**
+     * Not yet written messages by unique id.
+     */
+    private final Map<String, IndexedMessage> pendingWrites;
+    private final AtomicBoolean flushScheduled;
+    private final AtomicBoolean rebuilding;
+
+    public static MessageSearchManager getInstance() {
+        if (instance == null) {
+            instance = new MessageSearchManager();
+        }
+
+        return instance;
+    }
+
+    private MessageSearchManager() {
+        pendingWrites = new LinkedHashMap<>();
+        flushScheduled = new AtomicBoolean(false);
+        rebuilding = new AtomicBoolean(false);
+    }
+
+    /**
+     * Rebuilds index if it is empty while there are messages, e.g. after
+     * database upgrade.
+     */
+    @Override
+    public void onLoad() {
+        if (MessageSearchTable.getInstance().count() > 0) {
+            return;
+        }
+        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+        long count = createIndexedMessagesQuery(realm).count();
+        realm.close();
+        if (count > 0) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public void onUnload() {
+        flushPendingWrites();
+    }
+
+    /**
+     * Schedules indexing of the message. Must be called with unmanaged item or
+     * from the thread of its Realm.
+     */
+    public void onMessageSaved(MessageItem messageItem) {
+        IndexedMessage indexedMessage = IndexedMessage.from(messageItem);
+        if (indexedMessage == null) {
+            return;
+        }
+
+        synchronized (pendingWrites) {
+            pendingWrites.put(indexedMessage.getUniqueId(), indexedMessage);
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            Application.getInstance().runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    flushPendingWrites();
+                }
+            });
+        }
+    }
+
+    public void onMessagesSaved(Collection<MessageItem> messageItems) {
+        for (MessageItem messageItem : messageItems) {
+            onMessageSaved(messageItem);
+        }
+    }
+
+    public void onMessageRemoved(final String uniqueId) {
+        synchronized (pendingWrites) {
+            pendingWrites.remove(uniqueId);
+        }
+        Application.getInstance().runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                MessageSearchTable.getInstance().remove(Collections.singletonList(uniqueId));
+            }
+        });
+    }
+
+    public void onHistoryCleared(final AccountJid account, final UserJid user) {
+        synchronized (pendingWrites) {
+            Iterator<IndexedMessage> iterator = pendingWrites.values().iterator();
+            while (iterator.hasNext()) {
+                IndexedMessage indexedMessage = iterator.next();
+                if (indexedMessage.getAccount().equals(account.toString())
+                        && indexedMessage.getUser().equals(user.toString())) {
+                    iterator.remove();
+                }
+            }
+        }
+        Application.getInstance().runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                MessageSearchTable.getInstance().remove(account.toString(), user.toString());
+            }
+        });
+    }
+
+    private void flushPendingWrites() {
+        flushScheduled.set(false);
+
+        Collection<IndexedMessage> indexedMessages;
+        synchronized (pendingWrites) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            indexedMessages = new ArrayList<>(pendingWrites.values());
+            pendingWrites.clear();
+        }
+        MessageSearchTable.getInstance().write(indexedMessages);
+    }
+
+    /**
+     * Drops the index and indexes all messages again in background.
+     * <p/>
+     * Messages saved meanwhile are indexed as usual, so search stays
+     * consistent except for results that are not yet reindexed.
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuildIndex();
+                } finally {
+                    rebuilding.set(false);
+                }
+            }
+        });
+    }
+
+    private void rebuildIndex() {
+        final long startTime = System.currentTimeMillis();
+        MessageSearchTable.getInstance().clear();
+
+        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+        try {
+            RealmResults<MessageItem> messageItems = createIndexedMessagesQuery(realm).findAll();
+            List<IndexedMessage> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+            for (MessageItem messageItem : messageItems) {
+                IndexedMessage indexedMessage = IndexedMessage.from(messageItem);
+                if (indexedMessage == null) {
+                    continue;
+                }
+                batch.add(indexedMessage);
+                if (batch.size() == REBUILD_BATCH_SIZE) {
+                    MessageSearchTable.getInstance().write(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                MessageSearchTable.getInstance().write(batch);
+            }
+            LogManager.i(LOG_TAG, "index rebuilt for " + messageItems.size() + " messages: "
+                    + (System.currentTimeMillis() - startTime));
+        } finally {
+            realm.close();
+        }
+    }
+
+    private static RealmQuery<MessageItem> createIndexedMessagesQuery(Realm realm) {
+        return realm.where(MessageItem.class)
+                .isNull(MessageItem.Fields.ACTION)
+                .isNotNull(MessageItem.Fields.TEXT)
+                .isNotEmpty(MessageItem.Fields.TEXT);
+    }
+
+    /**
+     * Finds messages containing all words of the query, most recent first.
+     * Must not be called from UI thread.
+     * <p/>
+     * Each word matches as prefix, text in double quotes matches as phrase.
+     *
+     * @param account limit search to account, if not <code>null</code>.
+     * @param user    limit search to chat with user, if not <code>null</code>.
+     * @param after   last result of previous page or <code>null</code> for the first page.
+     * @param limit   page size.
+     * @return Empty list if there is nothing to search for.
+     */
+    public List<MessageSearchResult> search(String query, @Nullable AccountJid account,
+                                            @Nullable UserJid user,
+                                            @Nullable MessageSearchResult after, int limit) {
+        String match = createMatchQuery(query);
+        if (match == null) {
+            return Collections.emptyList();
+        }
+
+        List<MessageSearchResult> results = new ArrayList<>(limit);
+        Cursor cursor = MessageSearchTable.getInstance().search(match,
+                account == null ? null : account.toString(),
+                user == null ? null : user.toString(),
+                after == null ? null : after.getId(), limit);
+        try {
+            while (cursor.moveToNext()) {
+                try {
+                    results.add(new MessageSearchResult(MessageSearchTable.getId(cursor),
+                            MessageSearchTable.getUniqueId(cursor),
+                            AccountJid.from(MessageSearchTable.getAccount(cursor)),
+                            UserJid.from(MessageSearchTable.getUser(cursor)),
+                            MessageSearchTable.getTimestamp(cursor)));
+                } catch (UserJid.UserJidCreateException | XmppStringprepException e) {
+                    LogManager.exception(this, e);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return results;
+    }
+
+    /**
+     * @return FTS query for user input or <code>null</code> if it has no words.
+     */
+    static String createMatchQuery(String query) {
+        StringBuilder match = new StringBuilder();
+        boolean quoted = false;
+        int start = 0;
+        for (int index = 0; index <= query.length(); index++) {
+            if (index < query.length() && query.charAt(index) != '"') {
+                continue;
+            }
+            String part = normalize(query.substring(start, index));
+            if (!part.isEmpty()) {
+                if (quoted) {
+                    appendTerm(match, "\"" + part + "\"");
+                } else {
+                    for (String word : part.split(" ")) {
+                        appendTerm(match, word + "*");
+                    }
+                }
+            }
+            quoted = !quoted;
+            start = index + 1;
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    private static void appendTerm(StringBuilder match, String term) {
+        if (match.length() > 0) {
+            match.append(' ');
+        }
+        match.append(term);
+    }
+
+    /**
+     * @return Lower cased words of the text separated by single spaces.
+     */
+    static String normalize(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean separator = false;
+        for (int index = 0; index < text.length(); ) {
+            int codePoint = text.codePointAt(index);
+            index += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (separator && builder.length() > 0) {
+                    builder.append(' ');
+                }
+                separator = false;
+                builder.appendCodePoint(codePoint);
+            } else {
+                separator = true;
+            }
+        }
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.xabber.android.data.message.search;
+
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+
+/**
+ * Message found by {@link MessageSearchManager}.
+ * <p/>
+ * Pass the last result of the page to get the next one.
+ */
+public class MessageSearchResult {
+
+    private final long id;
+    private final String uniqueId;
+    private final AccountJid account;
+    private final UserJid user;
+    private final long timestamp;
+
+    MessageSearchResult(long id, String uniqueId, AccountJid account, UserJid user, long timestamp) {
+        this.id = id;
+        this.uniqueId = uniqueId;
+        this.account = account;
+        this.user = user;
+        this.timestamp = timestamp;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    /**
+     * @return Unique id of the message in Realm.
+     */
+    public String getUniqueId() {
+        return uniqueId;
+    }
+
+    public AccountJid getAccount() {
+        return account;
+    }
+
+    public UserJid getUser() {
+        return user;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+}
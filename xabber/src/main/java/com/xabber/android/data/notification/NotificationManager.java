@@ -25,6 +25,7 @@ import android.media.AudioManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.support.annotation.RequiresApi;
 import android.support.v4.app.NotificationCompat;
@@ -35,6 +36,7 @@ import com.xabber.android.data.Application;
 import com.xabber.android.data.OnCloseListener;
 import com.xabber.android.data.OnInitializedListener;
 import com.xabber.android.data.OnLoadListener;
+import com.xabber.android.data.OnUnloadListener;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
@@ -46,6 +48,7 @@ import com.xabber.android.data.database.messagerealm.MessageItem;
 import com.xabber.android.data.database.sqlite.NotificationTable;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.extension.file.AttachmentIndex;
 import com.xabber.android.data.filedownload.FileCategory;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.MessageManager;
@@ -61,9 +64,12 @@ import org.jxmpp.stringprep.XmppStringprepException;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.realm.RealmList;
 
@@ -73,13 +79,19 @@ import io.realm.RealmList;
  * @author alexander.ivanov
  */
 public class NotificationManager implements OnInitializedListener, OnAccountChangedListener,
-        OnCloseListener, OnLoadListener, Runnable, OnAccountRemovedListener {
+        OnCloseListener, OnLoadListener, OnUnloadListener, Runnable, OnAccountRemovedListener {
 
     public static final int PERSISTENT_NOTIFICATION_ID = 1;
     public static final int MESSAGE_NOTIFICATION_ID = 2;
     private static final int BASE_NOTIFICATION_PROVIDER_ID = 0x10;
 
     private static final long VIBRATION_DURATION = 500;
+
+    /**
+     * Minimal interval between rebuilds of message notification.
+     * Messages received in between are shown with one rebuild.
+     */
+    private static final long MESSAGE_NOTIFICATION_UPDATE_INTERVAL = 250;
     private static final String LOG_TAG = NotificationManager.class.getSimpleName();
     private static NotificationManager instance;
 
@@ -103,9 +115,27 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
     private final List<NotificationProvider<? extends NotificationItem>> providers;
 
     /**
-     * List of
+     * Message notifications by chat, from the oldest to the most recent one.
+     */
+    private final LinkedHashMap<String, MessageNotification> messageNotifications;
+
+    /**
+     * Rebuilds message notification.
+     */
+    private final Runnable updateMessageNotification;
+
+    /**
+     * Message to be shown in ticker with the next rebuild of message notification.
+     */
+    private MessageItem pendingTicker;
+    private boolean messageNotificationUpdateScheduled;
+    private long lastMessageNotificationUpdate;
+
+    /**
+     * Message notifications to be written to the database by chat.
      */
-    private final List<MessageNotification> messageNotifications;
+    private final Map<String, MessageNotification> pendingWrites;
+    private final AtomicBoolean flushScheduled;
     private NotificationCompat.Builder persistentNotificationBuilder;
     private MessageNotificationCreator messageNotificationCreator;
     private int persistentNotificationColor;
@@ -127,7 +157,9 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
 
         handler = new Handler();
         providers = new ArrayList<>();
-        messageNotifications = new ArrayList<>();
+        messageNotifications = new LinkedHashMap<>();
+        pendingWrites = new HashMap<>();
+        flushScheduled = new AtomicBoolean(false);
         clearNotifications = PendingIntent.getActivity(
                 application, 0, ClearNotificationsActivity.createIntent(application), 0);
 
@@ -141,6 +173,20 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
             }
         };
 
+        updateMessageNotification = new Runnable() {
+            @Override
+            public void run() {
+                MessageItem ticker;
+                synchronized (NotificationManager.this) {
+                    ticker = pendingTicker;
+                    pendingTicker = null;
+                    messageNotificationUpdateScheduled = false;
+                    lastMessageNotificationUpdate = SystemClock.elapsedRealtime();
+                }
+                updateMessageNotification(ticker);
+            }
+        };
+
         startVibration = new Runnable() {
             @Override
             public void run() {
@@ -243,7 +289,10 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
     }
 
     private void onLoaded(Collection<MessageNotification> messageNotifications) {
-        this.messageNotifications.addAll(messageNotifications);
+        for (MessageNotification messageNotification : messageNotifications) {
+            this.messageNotifications.put(getKey(messageNotification.getAccount(),
+                    messageNotification.getUser()), messageNotification);
+        }
         for (MessageNotification messageNotification : messageNotifications) {
             MessageManager.getInstance().openChat(
                     messageNotification.getAccount(),
@@ -372,7 +421,8 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
     private void updateMessageNotification(MessageItem ticker) {
         updatePersistentNotification();
 
-        Notification messageNotification = messageNotificationCreator.notifyMessageNotification(messageNotifications, ticker);
+        Notification messageNotification = messageNotificationCreator.notifyMessageNotification(
+                new ArrayList<>(messageNotifications.values()), ticker);
 
         if (messageNotification != null) {
             notify(MESSAGE_NOTIFICATION_ID, messageNotification);
@@ -504,56 +554,112 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
         }
     }
 
+    /**
+     * Schedules rebuild of message notification. Rebuilds are made not often than
+     * {@link #MESSAGE_NOTIFICATION_UPDATE_INTERVAL}, the latest ticker is used.
+     *
+     * @param ticker message to be shown. Can be <code>null</code>.
+     */
+    private synchronized void scheduleMessageNotificationUpdate(MessageItem ticker) {
+        if (ticker != null) {
+            pendingTicker = ticker;
+        }
+        if (messageNotificationUpdateScheduled) {
+            return;
+        }
+        messageNotificationUpdateScheduled = true;
+
+        long delay = lastMessageNotificationUpdate + MESSAGE_NOTIFICATION_UPDATE_INTERVAL
+                - SystemClock.elapsedRealtime();
+        if (delay > 0) {
+            handler.postDelayed(updateMessageNotification, delay);
+        } else {
+            handler.post(updateMessageNotification);
+        }
+    }
+
+    private static String getKey(AccountJid account, UserJid user) {
+        return account + ":" + user;
+    }
+
     private MessageNotification getMessageNotification(AccountJid account, UserJid user) {
-        for (MessageNotification messageNotification : messageNotifications) {
-            if (messageNotification.equals(account, user)) {
-                return messageNotification;
+        return messageNotifications.get(getKey(account, user));
+    }
+
+    /**
+     * Writes notification to the database with other notifications changed meanwhile.
+     */
+    private void writeMessageNotification(MessageNotification messageNotification) {
+        String key = getKey(messageNotification.getAccount(), messageNotification.getUser());
+        synchronized (pendingWrites) {
+            pendingWrites.put(key, new MessageNotification(messageNotification.getAccount(),
+                    messageNotification.getUser(), messageNotification.getText(),
+                    messageNotification.getTimestamp(), messageNotification.getCount()));
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            Application.getInstance().runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    flushPendingWrites();
+                }
+            });
+        }
+    }
+
+    private void flushPendingWrites() {
+        flushScheduled.set(false);
+
+        Collection<MessageNotification> notifications;
+        synchronized (pendingWrites) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            notifications = new ArrayList<>(pendingWrites.values());
+            pendingWrites.clear();
+        }
+        NotificationTable.getInstance().write(notifications);
+    }
+
+    private void removePendingWrites(AccountJid account) {
+        synchronized (pendingWrites) {
+            Iterator<MessageNotification> iterator = pendingWrites.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getAccount().equals(account)) {
+                    iterator.remove();
+                }
             }
         }
-        return null;
     }
 
     public void onMessageNotification(MessageItem messageItem) {
-        MessageNotification messageNotification = getMessageNotification(
-                messageItem.getAccount(), messageItem.getUser());
+        String key = getKey(messageItem.getAccount(), messageItem.getUser());
+        MessageNotification messageNotification = messageNotifications.remove(key);
         if (messageNotification == null) {
             messageNotification = new MessageNotification(
                     messageItem.getAccount(), messageItem.getUser(), null, null, 0);
-        } else {
-            messageNotifications.remove(messageNotification);
         }
 
         String messageText;
         if (messageItem.haveAttachments() && messageItem.getAttachments().size() > 0) {
             Attachment attachment = messageItem.getAttachments().get(0);
-            FileCategory category = FileCategory.determineFileCategory(attachment.getMimeType());
+            FileCategory category = AttachmentIndex.getCategory(attachment);
             messageText = FileCategory.getCategoryName(category, false) + attachment.getTitle();
         } else messageText = messageItem.getText();
 
         messageNotification.addMessage(messageText);
-        messageNotifications.add(messageNotification);
+        messageNotifications.put(key, messageNotification);
 
-        final AccountJid account = messageNotification.getAccount();
-        final UserJid user = messageNotification.getUser();
-        final String text = messageNotification.getText();
-        final Date timestamp = messageNotification.getTimestamp();
-        final int count = messageNotification.getCount();
+        writeMessageNotification(messageNotification);
 
-        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
-            @Override
-            public void run() {
-                NotificationTable.getInstance().write(account.toString(), user.toString(), text, timestamp, count);
-            }
-        });
-
-        updateMessageNotification(messageItem);
+        scheduleMessageNotificationUpdate(messageItem);
     }
 
     /**
      * Updates message notification.
      */
     public void onMessageNotification() {
-        updateMessageNotification(null);
+        scheduleMessageNotificationUpdate(null);
     }
 
     public int getNotificationMessageCount(AccountJid account, UserJid user) {
@@ -565,22 +671,26 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
     }
 
     public void removeMessageNotification(final AccountJid account, final UserJid user) {
-        MessageNotification messageNotification = getMessageNotification(account, user);
+        String key = getKey(account, user);
+        MessageNotification messageNotification = messageNotifications.remove(key);
         if (messageNotification == null)
             return;
-        messageNotifications.remove(messageNotification);
-        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
+        synchronized (pendingWrites) {
+            pendingWrites.remove(key);
+        }
+        // the same executor as writes, so removal is never overwritten by a delayed write
+        Application.getInstance().runInBackground(new Runnable() {
             @Override
             public void run() {
                 NotificationTable.getInstance().remove(account.toString(), user.toString());
             }
         });
 
-        updateMessageNotification(null);
+        scheduleMessageNotificationUpdate(null);
     }
 
     public void removeMessageNotificationsForAccount(final AccountJid account) {
-        Iterator<MessageNotification> iterator = messageNotifications.iterator();
+        Iterator<MessageNotification> iterator = messageNotifications.values().iterator();
         while(iterator.hasNext()) {
             MessageNotification messageNotification = iterator.next();
 
@@ -588,15 +698,16 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
                 iterator.remove();
             }
         }
+        removePendingWrites(account);
 
-        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
+        Application.getInstance().runInBackground(new Runnable() {
             @Override
             public void run() {
                 NotificationTable.getInstance().remove(account);
             }
         });
 
-        updateMessageNotification(null);
+        scheduleMessageNotificationUpdate(null);
     }
 
     /**
@@ -607,13 +718,16 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
             if (provider.canClearNotifications())
                 provider.clearNotifications();
         messageNotifications.clear();
-        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
+        synchronized (pendingWrites) {
+            pendingWrites.clear();
+        }
+        Application.getInstance().runInBackground(new Runnable() {
             @Override
             public void run() {
                 NotificationTable.getInstance().clear();
             }
         });
-        updateMessageNotification(null);
+        scheduleMessageNotificationUpdate(null);
     }
 
     @Override
@@ -652,6 +766,11 @@ public class NotificationManager implements OnInitializedListener, OnAccountChan
         notificationManager.cancelAll();
     }
 
+    @Override
+    public void onUnload() {
+        flushPendingWrites();
+    }
+
     private static void setVibration(boolean isMUC, boolean isPhoneInVibrateMode, NotificationCompat.Builder notificationBuilder) {
         SettingsManager.VibroMode vibroMode;
         if (isMUC) vibroMode = SettingsManager.eventsVibroMuc();
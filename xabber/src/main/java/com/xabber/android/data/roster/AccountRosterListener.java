@@ -63,6 +63,7 @@ public class AccountRosterListener implements RosterListener, RosterLoadedListen
     @Override
     public void onRosterLoaded(Roster roster) {
         LogManager.i(getLogTag(), "onRosterLoaded");
+        RosterManager.getInstance().onRosterLoaded(account, roster);
         final AccountItem accountItem = AccountManager.getInstance().getAccount(AccountRosterListener.this.account);
 
         if (accountItem != null) {
@@ -0,0 +1,246 @@
+package com.xabber.android.data.roster;
+
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import com.xabber.android.data.database.RealmManager;
+import com.xabber.android.data.database.realm.RosterItemRealm;
+import com.xabber.android.data.database.realm.RosterVersionRealm;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.log.LogManager;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jivesoftware.smack.roster.rosterstore.RosterStore;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * Persistent roster store of account for roster versioning (XEP-0237).
+ * <p/>
+ * Items are kept in memory and written through to Realm, so Smack
+ * requests only roster changes since stored version.
+ */
+public class AccountRosterStore implements RosterStore {
+
+    private static final String LOG_TAG = AccountRosterStore.class.getSimpleName();
+
+    private final String account;
+
+    private Map<BareJid, RosterPacket.Item> items;
+    private String version;
+
+    public AccountRosterStore(AccountJid account) {
+        this.account = account.toString();
+    }
+
+    /**
+     * Loads cached items from database on first use.
+     */
+    private synchronized void ensureLoaded() {
+        if (items != null) {
+            return;
+        }
+
+        items = new LinkedHashMap<>();
+
+        Realm realm = RealmManager.getInstance().getNewRealm();
+        RealmResults<RosterItemRealm> itemRealms = realm.where(RosterItemRealm.class)
+                .equalTo(RosterItemRealm.Fields.ACCOUNT, account)
+                .findAll();
+        for (RosterItemRealm itemRealm : itemRealms) {
+            RosterPacket.Item item = createItem(itemRealm);
+            if (item != null) {
+                items.put(item.getJid(), item);
+            }
+        }
+
+        RosterVersionRealm versionRealm = realm.where(RosterVersionRealm.class)
+                .equalTo(RosterVersionRealm.Fields.ACCOUNT, account)
+                .findFirst();
+        version = versionRealm == null ? null : versionRealm.getVersion();
+        realm.close();
+
+        LogManager.i(LOG_TAG, account + " loaded " + items.size() + " roster items, version " + version);
+    }
+
+    @Override
+    public synchronized List<RosterPacket.Item> getEntries() {
+        ensureLoaded();
+        return new ArrayList<>(items.values());
+    }
+
+    @Override
+    public synchronized RosterPacket.Item getEntry(Jid bareJid) {
+        ensureLoaded();
+        return items.get(bareJid.asBareJid());
+    }
+
+    @Override
+    public synchronized String getRosterVersion() {
+        ensureLoaded();
+        return version == null ? "" : version;
+    }
+
+    @Override
+    public synchronized boolean addEntry(RosterPacket.Item item, String version) {
+        ensureLoaded();
+        LogManager.i(LOG_TAG, account + " roster push " + item.getJid() + ", version " + version);
+
+        items.put(item.getJid(), item);
+        this.version = version;
+
+        Realm realm = RealmManager.getInstance().getNewRealm();
+        realm.beginTransaction();
+        realm.copyToRealmOrUpdate(createItemRealm(account, item));
+        realm.copyToRealmOrUpdate(new RosterVersionRealm(account, version));
+        realm.commitTransaction();
+        realm.close();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean resetEntries(Collection<RosterPacket.Item> newItems, String version) {
+        ensureLoaded();
+        LogManager.i(LOG_TAG, account + " full roster received: " + newItems.size()
+                + " items, version " + version);
+
+        items.clear();
+        List<RosterItemRealm> itemRealms = new ArrayList<>(newItems.size());
+        for (RosterPacket.Item item : newItems) {
+            items.put(item.getJid(), item);
+            itemRealms.add(createItemRealm(account, item));
+        }
+        this.version = version;
+
+        Realm realm = RealmManager.getInstance().getNewRealm();
+        realm.beginTransaction();
+        realm.where(RosterItemRealm.class)
+                .equalTo(RosterItemRealm.Fields.ACCOUNT, account)
+                .findAll()
+                .deleteAllFromRealm();
+        realm.copyToRealmOrUpdate(itemRealms);
+        realm.copyToRealmOrUpdate(new RosterVersionRealm(account, version));
+        realm.commitTransaction();
+        realm.close();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeEntry(Jid bareJid, String version) {
+        ensureLoaded();
+        LogManager.i(LOG_TAG, account + " roster remove " + bareJid + ", version " + version);
+
+        items.remove(bareJid.asBareJid());
+        this.version = version;
+
+        Realm realm = RealmManager.getInstance().getNewRealm();
+        realm.beginTransaction();
+        RosterItemRealm itemRealm = realm.where(RosterItemRealm.class)
+                .equalTo(RosterItemRealm.Fields.ID,
+                        RosterItemRealm.createId(account, bareJid.asBareJid().toString()))
+                .findFirst();
+        if (itemRealm != null) {
+            itemRealm.deleteFromRealm();
+        }
+        realm.copyToRealmOrUpdate(new RosterVersionRealm(account, version));
+        realm.commitTransaction();
+        realm.close();
+        return true;
+    }
+
+    @Override
+    public synchronized void resetStore() {
+        items = new LinkedHashMap<>();
+        version = null;
+        removeAccount(account);
+    }
+
+    /**
+     * Removes stored roster of account.
+     */
+    static void removeAccount(String account) {
+        Realm realm = RealmManager.getInstance().getNewRealm();
+        realm.beginTransaction();
+        realm.where(RosterItemRealm.class)
+                .equalTo(RosterItemRealm.Fields.ACCOUNT, account)
+                .findAll()
+                .deleteAllFromRealm();
+        realm.where(RosterVersionRealm.class)
+                .equalTo(RosterVersionRealm.Fields.ACCOUNT, account)
+                .findAll()
+                .deleteAllFromRealm();
+        realm.commitTransaction();
+        realm.close();
+    }
+
+    /**
+     * @return stored roster items of all accounts by account.
+     */
+    @NonNull
+    static Map<String, List<RosterPacket.Item>> loadAllItems() {
+        Map<String, List<RosterPacket.Item>> result = new HashMap<>();
+
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        RealmResults<RosterItemRealm> itemRealms = realm.where(RosterItemRealm.class).findAll();
+        for (RosterItemRealm itemRealm : itemRealms) {
+            RosterPacket.Item item = createItem(itemRealm);
+            if (item == null) {
+                continue;
+            }
+            List<RosterPacket.Item> accountItems = result.get(itemRealm.getAccount());
+            if (accountItems == null) {
+                accountItems = new ArrayList<>();
+                result.put(itemRealm.getAccount(), accountItems);
+            }
+            accountItems.add(item);
+        }
+        realm.close();
+
+        return result;
+    }
+
+    private static RosterPacket.Item createItem(RosterItemRealm itemRealm) {
+        BareJid jid;
+        try {
+            jid = JidCreate.bareFrom(itemRealm.getJid());
+        } catch (XmppStringprepException e) {
+            LogManager.exception(LOG_TAG, e);
+            return null;
+        }
+
+        RosterPacket.Item item = new RosterPacket.Item(jid, itemRealm.getName());
+        if (itemRealm.getItemType() != null) {
+            item.setItemType(RosterPacket.ItemType.valueOf(itemRealm.getItemType()));
+        }
+        item.setSubscriptionPending(itemRealm.isSubscriptionPending());
+        item.setApproved(itemRealm.isApproved());
+        if (!TextUtils.isEmpty(itemRealm.getGroups())) {
+            for (String group : itemRealm.getGroups().split(RosterItemRealm.GROUP_SEPARATOR)) {
+                item.addGroupName(group);
+            }
+        }
+        return item;
+    }
+
+    private static RosterItemRealm createItemRealm(String account, RosterPacket.Item item) {
+        RosterItemRealm itemRealm = new RosterItemRealm(account, item.getJid().toString());
+        itemRealm.setName(item.getName());
+        itemRealm.setItemType(item.getItemType() == null ? null : item.getItemType().name());
+        itemRealm.setSubscriptionPending(item.isSubscriptionPending());
+        itemRealm.setApproved(item.isApproved());
+        itemRealm.setGroups(TextUtils.join(RosterItemRealm.GROUP_SEPARATOR, item.getGroupNames()));
+        return itemRealm;
+    }
+}
@@ -20,11 +20,14 @@ import android.text.TextUtils;
 
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.ListenerRegistry;
 import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.account.listeners.OnAccountDisabledListener;
 import com.xabber.android.data.account.listeners.OnAccountEnabledListener;
+import com.xabber.android.data.account.listeners.OnAccountRemovedListener;
 import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.StanzaSender;
 import com.xabber.android.data.connection.listeners.OnDisconnectListener;
@@ -53,7 +56,9 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -61,8 +66,8 @@ import java.util.Set;
  *
  * @author alexander.ivanov
  */
-public class RosterManager implements OnDisconnectListener, OnAccountEnabledListener,
-        OnAccountDisabledListener {
+public class RosterManager implements OnLoadListener, OnDisconnectListener, OnAccountEnabledListener,
+        OnAccountDisabledListener, OnAccountRemovedListener {
 
     private static final String LOG_TAG = RosterManager.class.getSimpleName();
 
@@ -85,6 +90,97 @@ public class RosterManager implements OnDisconnectListener, OnAccountEnabledList
         return instance;
     }
 
+    @Override
+    public void onLoad() {
+        final long startTime = System.currentTimeMillis();
+        final Map<String, List<RosterPacket.Item>> cachedItems = AccountRosterStore.loadAllItems();
+        LogManager.i(LOG_TAG, "onLoad cached roster of " + cachedItems.size() + " accounts read in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                onLoaded(cachedItems, startTime);
+            }
+        });
+    }
+
+    /**
+     * Shows cached contacts until roster will be received from server.
+     */
+    private void onLoaded(Map<String, List<RosterPacket.Item>> cachedItems, long startTime) {
+        Collection<RosterContact> newContacts = new ArrayList<>();
+
+        for (AccountJid account : AccountManager.getInstance().getAllAccounts()) {
+            List<RosterPacket.Item> items = cachedItems.get(account.toString());
+            AccountItem accountItem = AccountManager.getInstance().getAccount(account);
+            if (items == null || accountItem == null) {
+                continue;
+            }
+
+            for (RosterPacket.Item item : items) {
+                if (getRosterContact(account, item.getJid()) != null) {
+                    continue;
+                }
+
+                try {
+                    RosterContact contact = RosterContact.getRosterContact(account,
+                            UserJid.from(item.getJid()), item.getName());
+                    contact.clearGroupReferences();
+                    for (String group : item.getGroupNames()) {
+                        contact.addGroupReference(new RosterGroupReference(new RosterGroup(account, group)));
+                    }
+                    contact.setEnabled(accountItem.isEnabled());
+                    contact.setConnected(false);
+
+                    rosterContacts.put(account.toString(), item.getJid().toString(), contact);
+                    newContacts.add(contact);
+                } catch (UserJid.UserJidCreateException e) {
+                    LogManager.exception(LOG_TAG, e);
+                }
+            }
+        }
+
+        LogManager.i(LOG_TAG, "onLoaded " + newContacts.size() + " cached contacts shown in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        onContactsChanged(newContacts);
+    }
+
+    /**
+     * Removes cached contacts deleted from roster while account was offline.
+     */
+    void onRosterLoaded(AccountJid account, Roster roster) {
+        Set<String> rosterJids = new HashSet<>();
+        for (RosterEntry entry : roster.getEntries()) {
+            rosterJids.add(entry.getJid().toString());
+        }
+
+        Collection<RosterContact> removedContacts = new ArrayList<>();
+        for (RosterContact contact : new ArrayList<>(rosterContacts.getNested(account.toString()).values())) {
+            String jid = contact.getUser().getBareJid().toString();
+            if (!rosterJids.contains(jid)) {
+                rosterContacts.remove(account.toString(), jid);
+                removedContacts.add(contact);
+            }
+        }
+
+        if (!removedContacts.isEmpty()) {
+            LogManager.i(LOG_TAG, account + " removed " + removedContacts.size() + " outdated cached contacts");
+            onContactsChanged(removedContacts);
+        }
+    }
+
+    @Override
+    public void onAccountRemoved(final AccountItem accountItem) {
+        rosterContacts.clear(accountItem.getAccount().toString());
+        Application.getInstance().runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                AccountRosterStore.removeAccount(accountItem.getAccount().toString());
+            }
+        });
+    }
+
     @Nullable
     private Roster getRoster(AccountJid account) {
         final AccountItem accountItem = AccountManager.getInstance().getAccount(account);
@@ -572,10 +668,13 @@ public class RosterManager implements OnDisconnectListener, OnAccountEnabledList
         Application.getInstance().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                for (OnContactChangedListener onContactChangedListener : Application
-                        .getInstance().getUIListeners(OnContactChangedListener.class)) {
-                    onContactChangedListener.onContactsChanged(entities);
-                }
+                Application.getInstance().notifyUIListeners(OnContactChangedListener.class,
+                        new ListenerRegistry.Call<OnContactChangedListener>() {
+                    @Override
+                    public void call(OnContactChangedListener listener) {
+                        listener.onContactsChanged(entities);
+                    }
+                });
             }
         });
     }
@@ -605,10 +704,13 @@ public class RosterManager implements OnDisconnectListener, OnAccountEnabledList
         Application.getInstance().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                for (OnChatStateListener onChatStateListener : Application
-                        .getInstance().getUIListeners(OnChatStateListener.class)) {
-                    onChatStateListener.onChatStateChanged(entities);
-                }
+                Application.getInstance().notifyUIListeners(OnChatStateListener.class,
+                        new ListenerRegistry.Call<OnChatStateListener>() {
+                    @Override
+                    public void call(OnChatStateListener listener) {
+                        listener.onChatStateChanged(entities);
+                    }
+                });
             }
         });
     }
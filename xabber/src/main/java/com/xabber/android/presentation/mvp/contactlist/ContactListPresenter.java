@@ -39,7 +39,6 @@ import com.xabber.android.presentation.ui.contactlist.viewobjects.ContactVO;
 import com.xabber.android.presentation.ui.contactlist.viewobjects.ExtContactVO;
 import com.xabber.android.presentation.ui.contactlist.viewobjects.GroupVO;
 import com.xabber.android.presentation.ui.contactlist.viewobjects.ToolbarVO;
-import com.xabber.android.ui.adapter.ChatComparator;
 import com.xabber.android.ui.adapter.contactlist.AccountConfiguration;
 import com.xabber.android.ui.adapter.contactlist.ContactListGroupUtils;
 import com.xabber.android.ui.adapter.contactlist.GroupConfiguration;
@@ -304,8 +303,7 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
             }
 
             // chats on top
-            Collection<AbstractChat> chats = MessageManager.getInstance().getChatsOfEnabledAccount();
-            chatsGroup = getChatsGroup(chats, currentChatsState);
+            chatsGroup = getChatsGroup(currentChatsState);
 
             // Build structure.
             for (RosterContact rosterContact : rosterContacts) {
@@ -438,60 +436,71 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
     }
 
     /**
-     * @param chats which must be filtered
      * @param state for which you want to filter
      * @return GroupConfiguration that may contains recent, unread or archived chats.
      */
-    private GroupConfiguration getChatsGroup(Collection<AbstractChat> chats, ChatListState state) {
+    private GroupConfiguration getChatsGroup(ChatListState state) {
         GroupConfiguration chatsGroup = new GroupConfiguration(GroupManager.NO_ACCOUNT,
                 GroupVO.RECENT_CHATS_TITLE, GroupManager.getInstance());
 
-        List<AbstractChat> newChats = new ArrayList<>();
-
         int unreadMessageCount = 0;
-        for (AbstractChat abstractChat : chats) {
-            MessageItem lastMessage = abstractChat.getLastMessage();
-
-            if (lastMessage != null && !TextUtils.isEmpty(lastMessage.getText())) {
-                AccountItem accountItem = AccountManager.getInstance().getAccount(abstractChat.getAccount());
-                if (accountItem != null && accountItem.isEnabled()) {
-                    int unread = abstractChat.getUnreadMessageCount();
-                    if (abstractChat.notifyAboutMessage()) unreadMessageCount = unreadMessageCount + unread;
-
-                    switch (state) {
-                        case unread:
-                            if (!abstractChat.isArchived() && unread > 0) newChats.add(abstractChat);
-                            break;
-                        case archived:
-                            if (abstractChat.isArchived()) newChats.add(abstractChat);
-                            break;
-                        default:
-                            // recent
-                            if (!abstractChat.isArchived()) newChats.add(abstractChat);
-                            break;
-                    }
-                }
-            }
+        for (AbstractChat abstractChat : MessageManager.getInstance().getChatsOfEnabledAccount()) {
+            if (isVisibleChat(abstractChat) && abstractChat.notifyAboutMessage())
+                unreadMessageCount = unreadMessageCount + abstractChat.getUnreadMessageCount();
         }
         EventBus.getDefault().post(new UpdateUnreadCountEvent(unreadMessageCount));
 
-        Collections.sort(newChats, ChatComparator.CHAT_COMPARATOR);
+        // read from the top of recent chats until enough of them pass the filter
+        int maxItems = state == ChatListState.recent ? MAX_RECENT_ITEMS : Integer.MAX_VALUE;
+        int limit = state == ChatListState.recent ? MAX_RECENT_ITEMS * 2 : Integer.MAX_VALUE;
+        List<AbstractChat> newChats = new ArrayList<>();
+        boolean hasMore;
+        do {
+            List<AbstractChat> recentChats = MessageManager.getInstance().getRecentChats(limit);
+            hasMore = recentChats.size() == limit && limit < Integer.MAX_VALUE;
+            limit = limit > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : limit * 2;
+
+            newChats.clear();
+            for (AbstractChat abstractChat : recentChats) {
+                if (newChats.size() >= maxItems) break;
+                if (isVisibleChat(abstractChat) && isChatInState(abstractChat, state))
+                    newChats.add(abstractChat);
+            }
+        } while (hasMore && newChats.size() < maxItems);
 
         chatsGroup.setNotEmpty();
 
-        int itemsCount = 0;
         for (AbstractChat chat : newChats) {
-            if (itemsCount < MAX_RECENT_ITEMS || state != ChatListState.recent) {
-                chatsGroup.addAbstractContact(RosterManager.getInstance()
-                        .getBestContact(chat.getAccount(), chat.getUser()));
-                chatsGroup.increment(true);
-                itemsCount++;
-            } else break;
+            chatsGroup.addAbstractContact(RosterManager.getInstance()
+                    .getBestContact(chat.getAccount(), chat.getUser()));
+            chatsGroup.increment(true);
         }
 
         return chatsGroup;
     }
 
+    /**
+     * @return Whether chat has text message and belongs to enabled account.
+     */
+    private static boolean isVisibleChat(AbstractChat abstractChat) {
+        MessageItem lastMessage = abstractChat.getLastMessage();
+        if (lastMessage == null || TextUtils.isEmpty(lastMessage.getText())) return false;
+        AccountItem accountItem = AccountManager.getInstance().getAccount(abstractChat.getAccount());
+        return accountItem != null && accountItem.isEnabled();
+    }
+
+    private static boolean isChatInState(AbstractChat abstractChat, ChatListState state) {
+        switch (state) {
+            case unread:
+                return !abstractChat.isArchived() && abstractChat.getUnreadMessageCount() > 0;
+            case archived:
+                return abstractChat.isArchived();
+            default:
+                // recent
+                return !abstractChat.isArchived();
+        }
+    }
+
     private void createContactListWithAccountsAndGroups(List<IFlexible> items, AccountConfiguration rosterAccount,
                                                         boolean showEmptyGroups, Comparator<AbstractContact> comparator) {
         AccountWithGroupsVO account = AccountWithGroupsVO.convert(rosterAccount, this);
@@ -594,15 +603,15 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
     }
 
     public int getAllChatsSize() {
-        Collection<AbstractChat> chats = MessageManager.getInstance().getChatsOfEnabledAccount();
-        GroupConfiguration chatsGroup = getChatsGroup(chats, ChatListState.all);
-        return chatsGroup.getTotal();
+        int size = 0;
+        for (AbstractChat abstractChat : MessageManager.getInstance().getChatsOfEnabledAccount()) {
+            if (isVisibleChat(abstractChat) && !abstractChat.isArchived()) size++;
+        }
+        return size;
     }
 
     public ArrayList<IFlexible> getTwoNextRecentChat() {
-        Collection<AbstractChat> chats = MessageManager.getInstance().getChatsOfEnabledAccount();
-
-        GroupConfiguration chatsGroup = getChatsGroup(chats, currentChatsState);
+        GroupConfiguration chatsGroup = getChatsGroup(currentChatsState);
         ArrayList<AbstractContact> contacts = (ArrayList<AbstractContact>) chatsGroup.getAbstractContacts();
 
         ArrayList<IFlexible> items = new ArrayList<>();
@@ -28,6 +28,7 @@ import com.xabber.android.data.database.messagerealm.Attachment;
 import com.xabber.android.data.database.messagerealm.MessageItem;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.extension.file.AttachmentIndex;
 import com.xabber.android.data.extension.muc.MUCManager;
 import com.xabber.android.data.filedownload.FileCategory;
 import com.xabber.android.data.message.AbstractChat;
@@ -171,7 +172,7 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
         } else {
             if (lastMessage.haveAttachments() && lastMessage.getAttachments().size() > 0) {
                 Attachment attachment = lastMessage.getAttachments().get(0);
-                FileCategory category = FileCategory.determineFileCategory(attachment.getMimeType());
+                FileCategory category = AttachmentIndex.getCategory(attachment);
                 messageText = FileCategory.getCategoryName(category, true) + attachment.getTitle();
             } else if (lastMessage.getFilePath() != null) {
                 messageText = new File(lastMessage.getFilePath()).getName();
@@ -0,0 +1,23 @@
+package com.xabber.android.receiver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.xabber.android.data.DeadlineScheduler;
+
+/**
+ * Receiver for alarm of the earliest deadline of {@link DeadlineScheduler}.
+ */
+public class DeadlineReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        DeadlineScheduler.getInstance().onAlarm();
+    }
+
+    public static Intent createIntent(Context context) {
+        return new Intent(context, DeadlineReceiver.class);
+    }
+
+}
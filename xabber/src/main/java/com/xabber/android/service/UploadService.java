@@ -247,6 +247,7 @@ public class UploadService extends IntentService {
     private void removeTempDirectory() {
         File tempDirectory = new File(getCompressedDirPath());
         FileManager.deleteDirectoryRecursion(tempDirectory);
+        ImageCompressor.trimMemory();
     }
 
     private void stopWork(String messageId) {
@@ -36,6 +36,7 @@ import com.xabber.android.ui.adapter.accountoptions.AccountOptionsAdapter;
 import com.xabber.android.ui.color.BarPainter;
 import com.xabber.android.ui.color.ColorManager;
 import com.xabber.android.ui.dialog.AccountColorDialog;
+import com.xabber.android.ui.dialog.ChatExportDialogFragment;
 import com.xabber.android.ui.fragment.ContactVcardViewerFragment;
 import com.xabber.android.ui.helper.ContactTitleInflater;
 
@@ -177,6 +178,12 @@ public class AccountActivity extends ManagedActivity implements AccountOptionsAd
 
         AccountOption.BOOKMARKS.setDescription(getString(R.string.account_bookmarks_summary));
 
+        AccountOption.MEDIA_GALLERY.setDescription(getString(R.string.account_media_gallery_summary));
+
+        AccountOption.MESSAGE_SEARCH.setDescription(getString(R.string.account_message_search_summary));
+
+        AccountOption.EXPORT_HISTORY.setDescription(getString(R.string.account_export_history_summary));
+
         accountOptionsAdapter.notifyDataSetChanged();
     }
 
@@ -262,6 +269,15 @@ public class AccountActivity extends ManagedActivity implements AccountOptionsAd
             case BOOKMARKS:
                 startActivity(BookmarksActivity.createIntent(this, account));
                 break;
+            case MEDIA_GALLERY:
+                startActivity(MediaGalleryActivity.createIntent(this, account));
+                break;
+            case MESSAGE_SEARCH:
+                startActivity(MessageSearchActivity.createIntent(this, account));
+                break;
+            case EXPORT_HISTORY:
+                ChatExportDialogFragment.newInstance(account).show(getFragmentManager(), "CHAT_EXPORT");
+                break;
             case SYNCHRONIZATION:
                 if (XabberAccountManager.getInstance().getAccount() != null) {
                     if (accountItem.isSyncNotAllowed()) {
@@ -881,6 +881,14 @@ public class ChatActivity extends ManagedActivity implements OnContactChangedLis
                     chatFragment.onExportChatClick();
                 return true;
 
+            case R.id.action_media_gallery:
+                startActivity(MediaGalleryActivity.createIntent(this, account, user));
+                return true;
+
+            case R.id.action_search_messages:
+                startActivity(MessageSearchActivity.createIntent(this, account, user));
+                return true;
+
             case R.id.action_call_attention:
                 if (chatFragment != null)
                     chatFragment.callAttention();
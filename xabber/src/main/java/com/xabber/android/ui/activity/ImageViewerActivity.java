@@ -163,12 +163,23 @@ public class ImageViewerActivity extends AppCompatActivity implements Toolbar.On
                 updateToolbar();
                 unsubscribeAttachmentState();
                 subscribeForAttachment(imageAttachments.get(position));
+                preloadNeighbours(position);
             }
 
             @Override
             public void onPageScrollStateChanged(int state) { }
         });
         if (imageAttachments.size() > imagePosition) subscribeForAttachment(imageAttachments.get(imagePosition));
+        preloadNeighbours(imagePosition);
+    }
+
+    private void preloadNeighbours(int position) {
+        for (int neighbour = position - 1; neighbour <= position + 1; neighbour += 2) {
+            if (neighbour >= 0 && neighbour < imageAttachments.size()) {
+                Attachment attachment = imageAttachments.get(neighbour);
+                ImageViewerFragment.preload(this, attachment.getFilePath(), attachment.getFileUrl());
+            }
+        }
     }
 
     @Override
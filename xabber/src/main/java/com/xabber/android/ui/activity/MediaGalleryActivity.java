@@ -0,0 +1,150 @@
+package com.xabber.android.ui.activity;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.Toolbar;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.widget.RelativeLayout;
+
+import com.bumptech.glide.Glide;
+import com.xabber.android.R;
+import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.Attachment;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.extension.file.AttachmentIndex;
+import com.xabber.android.data.filedownload.FileCategory;
+import com.xabber.android.data.intent.AccountIntentBuilder;
+import com.xabber.android.data.intent.EntityIntentBuilder;
+import com.xabber.android.data.roster.RosterManager;
+import com.xabber.android.ui.adapter.MediaGalleryAdapter;
+import com.xabber.android.ui.color.BarPainter;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * Images sent in the chat or in all chats of the account, newest first.
+ */
+public class MediaGalleryActivity extends ManagedActivity implements MediaGalleryAdapter.Listener {
+
+    /**
+     * Minimal width of grid cell in dp.
+     */
+    private static final int MIN_CELL_SIZE_DP = 100;
+
+    public static Intent createIntent(Context context, AccountJid account) {
+        return new AccountIntentBuilder(context, MediaGalleryActivity.class).setAccount(account).build();
+    }
+
+    public static Intent createIntent(Context context, AccountJid account, UserJid user) {
+        return new EntityIntentBuilder(context, MediaGalleryActivity.class)
+                .setAccount(account).setUser(user).build();
+    }
+
+    private static AccountJid getAccount(Intent intent) {
+        return AccountIntentBuilder.getAccount(intent);
+    }
+
+    private static UserJid getUser(Intent intent) {
+        return EntityIntentBuilder.getUser(intent);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        AccountJid account = getAccount(getIntent());
+        if (account == null) {
+            finish();
+            return;
+        }
+        UserJid user = getUser(getIntent());
+
+        setContentView(R.layout.activity_with_toolbar_and_container);
+
+        Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar_default);
+        toolbar.setNavigationIcon(R.drawable.ic_arrow_left_white_24dp);
+        toolbar.setNavigationOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                finish();
+            }
+        });
+        toolbar.setTitle(R.string.media_gallery);
+        if (user != null) {
+            toolbar.setSubtitle(RosterManager.getInstance().getBestContact(account, user).getName());
+        } else {
+            toolbar.setSubtitle(account.getFullJid().asBareJid().toString());
+        }
+
+        BarPainter barPainter = new BarPainter(this, toolbar);
+        barPainter.updateWithAccountName(account);
+
+        Realm realm = MessageDatabaseManager.getInstance().getRealmUiThread();
+        RealmResults<Attachment> attachments = user != null
+                ? AttachmentIndex.getChatAttachmentsAsync(realm, account, user, FileCategory.image)
+                : AttachmentIndex.getAccountAttachmentsAsync(realm, account, FileCategory.image);
+
+        DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+        int spanCount = Math.max(3, (int) (displayMetrics.widthPixels / displayMetrics.density / MIN_CELL_SIZE_DP));
+
+        MediaGalleryAdapter adapter = new MediaGalleryAdapter(this, attachments, this);
+        adapter.setThumbnailSize(displayMetrics.widthPixels / spanCount);
+
+        RecyclerView recyclerView = new RecyclerView(this);
+        ((RelativeLayout) findViewById(R.id.fragment_container)).addView(recyclerView);
+        recyclerView.setLayoutManager(new GridLayoutManager(this, spanCount));
+        recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                // don't load thumbnails passed by during fling
+                if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+                    Glide.with(MediaGalleryActivity.this).pauseRequests();
+                } else {
+                    Glide.with(MediaGalleryActivity.this).resumeRequests();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onAttachmentClick(Attachment attachment) {
+        String messageId = attachment.getMessageId();
+        if (messageId == null) {
+            return;
+        }
+
+        MessageItem messageItem = MessageDatabaseManager.getInstance().getRealmUiThread()
+                .where(MessageItem.class)
+                .equalTo(MessageItem.Fields.UNIQUE_ID, messageId)
+                .findFirst();
+        if (messageItem == null || !messageItem.haveAttachments()) {
+            return;
+        }
+
+        // image viewer pages through images of the message
+        int position = 0;
+        for (Attachment messageAttachment : messageItem.getAttachments()) {
+            if (!messageAttachment.isImage()) {
+                continue;
+            }
+            if (messageAttachment.getUniqueId().equals(attachment.getUniqueId())) {
+                startActivity(ImageViewerActivity.createIntent(this, messageId, position));
+                return;
+            }
+            position++;
+        }
+
+        if (attachment.getFileUrl() != null) {
+            startActivity(ImageViewerActivity.createIntent(this, messageId, attachment.getFileUrl()));
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.xabber.android.ui.activity;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.support.v7.widget.Toolbar;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.RelativeLayout;
+import android.widget.Toast;
+
+import com.xabber.android.R;
+import com.xabber.android.data.Application;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.intent.AccountIntentBuilder;
+import com.xabber.android.data.intent.EntityIntentBuilder;
+import com.xabber.android.data.message.search.MessageSearchManager;
+import com.xabber.android.data.message.search.MessageSearchResult;
+import com.xabber.android.ui.adapter.MessageSearchAdapter;
+import com.xabber.android.ui.color.BarPainter;
+
+import java.util.List;
+
+/**
+ * Searches messages in the chat or in all chats of the account.
+ * <p/>
+ * Results are requested page by page in background while the list is scrolled.
+ */
+public class MessageSearchActivity extends ManagedActivity implements MessageSearchAdapter.Listener {
+
+    private static final int PAGE_SIZE = 50;
+
+    private AccountJid account;
+    private UserJid user;
+    private MessageSearchAdapter adapter;
+    private LinearLayoutManager layoutManager;
+
+    private String query;
+    /**
+     * Incremented on each new query, so pages of previous query are dropped.
+     */
+    private int generation;
+    private boolean loading;
+    private boolean hasMore;
+
+    public static Intent createIntent(Context context, AccountJid account) {
+        return new AccountIntentBuilder(context, MessageSearchActivity.class).setAccount(account).build();
+    }
+
+    public static Intent createIntent(Context context, AccountJid account, UserJid user) {
+        return new EntityIntentBuilder(context, MessageSearchActivity.class)
+                .setAccount(account).setUser(user).build();
+    }
+
+    private static AccountJid getAccount(Intent intent) {
+        return AccountIntentBuilder.getAccount(intent);
+    }
+
+    private static UserJid getUser(Intent intent) {
+        return EntityIntentBuilder.getUser(intent);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        account = getAccount(getIntent());
+        if (account == null) {
+            finish();
+            return;
+        }
+        user = getUser(getIntent());
+
+        setContentView(R.layout.activity_with_toolbar_and_container);
+
+        Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar_default);
+        toolbar.setNavigationIcon(R.drawable.ic_arrow_left_white_24dp);
+        toolbar.setNavigationOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                finish();
+            }
+        });
+
+        BarPainter barPainter = new BarPainter(this, toolbar);
+        barPainter.updateWithAccountName(account);
+
+        SearchView searchView = new SearchView(toolbar.getContext());
+        searchView.setQueryHint(getString(R.string.message_search_hint));
+        searchView.setIconified(false);
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String text) {
+                search(text);
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String text) {
+                return false;
+            }
+        });
+        searchView.setOnCloseListener(new SearchView.OnCloseListener() {
+            @Override
+            public boolean onClose() {
+                finish();
+                return true;
+            }
+        });
+        toolbar.addView(searchView, new Toolbar.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+
+        adapter = new MessageSearchAdapter(this, this);
+        layoutManager = new LinearLayoutManager(this);
+
+        RecyclerView recyclerView = new RecyclerView(this);
+        ((RelativeLayout) findViewById(R.id.fragment_container)).addView(recyclerView);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PAGE_SIZE / 2) {
+                    loadPage();
+                }
+            }
+        });
+    }
+
+    private void search(String text) {
+        generation++;
+        query = text;
+        loading = false;
+        hasMore = true;
+        adapter.clear();
+        loadPage();
+    }
+
+    private void loadPage() {
+        if (query == null || loading || !hasMore) {
+            return;
+        }
+        loading = true;
+
+        final int requestGeneration = generation;
+        final String requestQuery = query;
+        final MessageSearchResult after = adapter.getLastResult();
+        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
+            @Override
+            public void run() {
+                final List<MessageSearchResult> page = MessageSearchManager.getInstance()
+                        .search(requestQuery, account, user, after, PAGE_SIZE);
+                Application.getInstance().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(requestGeneration, page);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int requestGeneration, List<MessageSearchResult> page) {
+        if (requestGeneration != generation || isFinishing()) {
+            return;
+        }
+        loading = false;
+        hasMore = page.size() == PAGE_SIZE;
+        if (page.isEmpty() && adapter.getItemCount() == 0) {
+            Toast.makeText(this, R.string.message_search_empty, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        adapter.addResults(page);
+    }
+
+    @Override
+    public void onResultClick(MessageSearchResult result) {
+        startActivity(ChatActivity.createSpecificChatIntent(this, result.getAccount(), result.getUser()));
+    }
+
+}
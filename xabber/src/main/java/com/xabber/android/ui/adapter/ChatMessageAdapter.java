@@ -24,6 +24,7 @@ import android.support.annotation.StyleRes;
 import android.support.v4.graphics.drawable.DrawableCompat;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -40,6 +41,7 @@ import com.bumptech.glide.request.animation.GlideAnimation;
 import com.bumptech.glide.request.target.SimpleTarget;
 import com.bumptech.glide.request.target.Target;
 import com.xabber.android.R;
+import com.xabber.android.data.Application;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
@@ -53,22 +55,21 @@ import com.xabber.android.data.extension.file.FileManager;
 import com.xabber.android.data.extension.httpfileupload.HttpFileUploadManager;
 import com.xabber.android.data.extension.muc.MUCManager;
 import com.xabber.android.data.extension.muc.RoomContact;
-import com.xabber.android.data.extension.otr.OTRManager;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.AbstractChat;
-import com.xabber.android.data.message.ChatAction;
 import com.xabber.android.data.roster.AbstractContact;
 import com.xabber.android.data.roster.RosterManager;
 import com.xabber.android.ui.color.ColorManager;
 import com.xabber.android.ui.fragment.ChatFragment;
 import com.xabber.android.ui.widget.ImageGridBuilder;
-import com.xabber.android.utils.StringUtils;
 
 import org.jxmpp.jid.parts.Resourcepart;
 
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.realm.Realm;
 import io.realm.RealmList;
@@ -83,9 +84,15 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
     public static final int VIEW_TYPE_INCOMING_MESSAGE = 2;
     public static final int VIEW_TYPE_OUTGOING_MESSAGE = 3;
     private static final int VIEW_TYPE_HINT = 1;
-    private static final int VIEW_TYPE_ACTION_MESSAGE = 4;
+    static final int VIEW_TYPE_ACTION_MESSAGE = 4;
     private static final String LOG_TAG = ChatMessageAdapter.class.getSimpleName();
 
+    /**
+     * Number of messages before and after visible ones to prepare models for.
+     */
+    private static final int PREPARE_WINDOW = 30;
+    private static final int DISPLAY_MODELS_CACHE_SIZE = 4 * PREPARE_WINDOW + 100;
+
     private final Context context;
     private final Message.MessageClickListener messageClickListener;
     private final ImageGridBuilder gridBuilder = new ImageGridBuilder();
@@ -109,6 +116,24 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
     private List<String> itemsNeedOriginalText;
     private int unreadCount = 0;
 
+    /**
+     * Display models by message's unique id. Models around visible messages are
+     * prepared in background, others are created on demand while binding.
+     */
+    private final LruCache<String, MessageDisplayModel> displayModels;
+    private final AtomicBoolean prepareScheduled;
+    private RecyclerView recyclerView;
+    /**
+     * Range of positions models were last prepared for.
+     */
+    private int preparedFrom;
+    private int preparedTo;
+    /**
+     * Time when smart time text of cached models gets outdated.
+     */
+    private long displayModelsExpiration;
+    private volatile boolean released;
+
     public ChatMessageAdapter(Context context, RealmResults<MessageItem> messageItems, AbstractChat chat, ChatFragment chatFragment) {
         super(context, messageItems, true);
 
@@ -130,6 +155,12 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         prevItemCount = getItemCount();
 
         itemsNeedOriginalText = new ArrayList<>();
+
+        displayModels = new LruCache<>(DISPLAY_MODELS_CACHE_SIZE);
+        prepareScheduled = new AtomicBoolean(false);
+        displayModelsExpiration = getNextMidnight();
+        released = false;
+        prepareDisplayModels();
     }
 
     public interface Listener {
@@ -154,8 +185,9 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         else itemsNeedOriginalText.add(messageId);
     }
 
-    private void setUpOutgoingMessage(Message holder, final MessageItem messageItem) {
-        setUpMessage(messageItem, holder);
+    private void setUpOutgoingMessage(Message holder, final MessageItem messageItem,
+                                      MessageDisplayModel displayModel) {
+        setUpMessage(messageItem, displayModel, holder);
         setStatusIcon(messageItem, (OutgoingMessage) holder);
 
         OutgoingMessage outgoingMessage = (OutgoingMessage) holder;
@@ -190,14 +222,35 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         setUpImage(filePath, imageUrl, uniqueId, imageWidth, imageHeight, messageHolder);
     }
 
-    private void setUpImage(RealmList<Attachment> attachments, final Message messageHolder) {
-        if (!SettingsManager.connectionLoadImages()) return;
-
-        RealmList<Attachment> imageAttachments = new RealmList<>();
+    /**
+     * Attachments are passed as is when all of them are images or files,
+     * so usual messages are bound without copying them.
+     */
+    private void setUpAttachments(RealmList<Attachment> attachments, final Message messageHolder) {
+        int imageCount = 0;
         for (Attachment attachment : attachments) {
-            if (attachment.isImage()) imageAttachments.add(attachment);
+            if (attachment.isImage()) imageCount++;
         }
 
+        if (imageCount == attachments.size()) {
+            setUpImage(attachments, messageHolder);
+        } else if (imageCount == 0) {
+            setUpFile(attachments, messageHolder);
+        } else {
+            List<Attachment> imageAttachments = new ArrayList<>(imageCount);
+            List<Attachment> fileAttachments = new ArrayList<>(attachments.size() - imageCount);
+            for (Attachment attachment : attachments) {
+                if (attachment.isImage()) imageAttachments.add(attachment);
+                else fileAttachments.add(attachment);
+            }
+            setUpImage(imageAttachments, messageHolder);
+            setUpFile(fileAttachments, messageHolder);
+        }
+    }
+
+    private void setUpImage(List<Attachment> imageAttachments, final Message messageHolder) {
+        if (!SettingsManager.connectionLoadImages()) return;
+
         if (imageAttachments.size() > 0) {
             View imageGridView = gridBuilder.inflateView(messageHolder.imageGridContainer, imageAttachments.size());
             gridBuilder.bindView(imageGridView, imageAttachments, messageHolder);
@@ -208,12 +261,7 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         }
     }
 
-    private void setUpFile(RealmList<Attachment> attachments, final Message messageHolder) {
-        RealmList<Attachment> fileAttachments = new RealmList<>();
-        for (Attachment attachment : attachments) {
-            if (!attachment.isImage()) fileAttachments.add(attachment);
-        }
-
+    private void setUpFile(List<Attachment> fileAttachments, final Message messageHolder) {
         if (fileAttachments.size() > 0) {
             RecyclerView.LayoutManager layoutManager = new LinearLayoutManager(context);
             messageHolder.rvFileList.setLayoutManager(layoutManager);
@@ -230,7 +278,8 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         if (!SettingsManager.connectionLoadImages()) return;
 
         if (imagePath != null) {
-            boolean result = FileManager.loadImageFromFile(context, imagePath, messageHolder.messageImage);
+            boolean result = FileManager.loadImageFromFile(context, imagePath,
+                    imageWidth, imageHeight, messageHolder.messageImage);
 
             if (result) {
                 messageHolder.messageImage.setVisibility(View.VISIBLE);
@@ -325,15 +374,15 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         messageHolder.messageText.setVisibility(View.VISIBLE);
 
         if (messageItem.haveAttachments()) {
-            setUpImage(messageItem.getAttachments(), messageHolder);
-            setUpFile(messageItem.getAttachments(), messageHolder);
+            setUpAttachments(messageItem.getAttachments(), messageHolder);
         } else if (messageItem.isImage()) {
             prepareImage(messageItem, messageHolder);
         }
     }
 
-    private void setUpIncomingMessage(final IncomingMessage incomingMessage, final MessageItem messageItem) {
-        setUpMessage(messageItem, incomingMessage);
+    private void setUpIncomingMessage(final IncomingMessage incomingMessage, final MessageItem messageItem,
+                                      MessageDisplayModel displayModel) {
+        setUpMessage(messageItem, displayModel, incomingMessage);
 
         if (messageItem.isReceivedFromMessageArchive()) {
             incomingMessage.statusIcon.setVisibility(View.VISIBLE);
@@ -348,7 +397,7 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
 
         setupImageOrFile(messageItem, incomingMessage);
 
-        if (messageItem.getText().trim().isEmpty()) {
+        if (displayModel.isEmpty()) {
             incomingMessage.messageBalloon.setVisibility(View.GONE);
             incomingMessage.messageTime.setVisibility(View.GONE);
             incomingMessage.avatar.setVisibility(View.GONE);
@@ -480,8 +529,10 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
             return;
         }
 
+        MessageDisplayModel displayModel = getDisplayModel(messageItem);
+
         if (holder instanceof Message)
-            ((Message)holder).messageId = messageItem.getUniqueId();
+            ((Message)holder).messageId = displayModel.getUniqueId();
 
         switch (viewType) {
             case VIEW_TYPE_HINT:
@@ -489,25 +540,14 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
                 break;
 
             case VIEW_TYPE_ACTION_MESSAGE:
-                ChatAction action = MessageItem.getChatAction(messageItem);
-                String time = StringUtils.getSmartTimeText(context, new Date(messageItem.getTimestamp()));
-
-                String name;
-                if (isMUC) {
-                    name = messageItem.getResource().toString();
-                } else {
-                    name = RosterManager.getInstance().getBestContact(account, messageItem.getUser()).getName();
-                }
-                holder.messageText.setText(time + ": "
-                        + action.getText(context, name, MessageItem.getSpannable(messageItem).toString()));
-
+                holder.messageText.setText(displayModel.getText());
                 break;
 
             case VIEW_TYPE_INCOMING_MESSAGE:
-                setUpIncomingMessage((IncomingMessage) holder, messageItem);
+                setUpIncomingMessage((IncomingMessage) holder, messageItem, displayModel);
                 break;
             case VIEW_TYPE_OUTGOING_MESSAGE:
-                setUpOutgoingMessage((Message) holder, messageItem);
+                setUpOutgoingMessage((Message) holder, messageItem, displayModel);
                 break;
         }
 
@@ -515,20 +555,6 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         if (position >= getItemCount() - unreadCount)
             holder.itemView.setBackgroundColor(context.getResources().getColor(R.color.unread_messages_background));
         else holder.itemView.setBackgroundDrawable(null);
-
-        if (holder instanceof OutgoingMessage) {
-            holder.itemView.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
-                @Override
-                public void onViewAttachedToWindow(View view) {
-                    ((Message) holder).subscribeForUploadProgress(context);
-                }
-
-                @Override
-                public void onViewDetachedFromWindow(View v) {
-                    ((Message) holder).unsubscribeAll();
-                }
-            });
-        }
     }
 
     @Override
@@ -542,18 +568,7 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
             return 0;
         }
 
-        if (messageItem.getAction() != null) {
-            return VIEW_TYPE_ACTION_MESSAGE;
-        }
-
-        if (messageItem.isIncoming()) {
-            if (isMUC && messageItem.getResource().equals(mucNickname)) {
-                return VIEW_TYPE_OUTGOING_MESSAGE;
-            }
-            return VIEW_TYPE_INCOMING_MESSAGE;
-        } else {
-            return VIEW_TYPE_OUTGOING_MESSAGE;
-        }
+        return getDisplayModel(messageItem).getViewType();
     }
 
     @Override
@@ -565,25 +580,155 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
             listener.onMessageNumberChanged(prevItemCount);
             prevItemCount = itemCount;
         }
+        prepareDisplayModels();
     }
 
-    private void setUpMessage(MessageItem messageItem, Message message) {
-        if (isMUC) {
-            message.messageHeader.setText(messageItem.getResource());
+    @Override
+    public void release() {
+        super.release();
+        released = true;
+        displayModels.evictAll();
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+        recyclerView.addOnScrollListener(prepareOnScrollListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        recyclerView.removeOnScrollListener(prepareOnScrollListener);
+        this.recyclerView = null;
+    }
+
+    private final RecyclerView.OnScrollListener prepareOnScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+            // visible messages are still far from the edge of prepared range
+            if ((preparedFrom == 0 || layoutManager.findFirstVisibleItemPosition() >= preparedFrom + PREPARE_WINDOW / 2)
+                    && layoutManager.findLastVisibleItemPosition() <= preparedTo - PREPARE_WINDOW / 2) {
+                return;
+            }
+            prepareDisplayModels();
+        }
+    };
+
+    /**
+     * @return Cached display model if message was not changed since it was
+     * created or model created right now.
+     */
+    private MessageDisplayModel getDisplayModel(MessageItem messageItem) {
+        if (System.currentTimeMillis() >= displayModelsExpiration) {
+            displayModels.evictAll();
+            displayModelsExpiration = getNextMidnight();
+        }
+
+        String uniqueId = messageItem.getUniqueId();
+        long stamp = MessageDisplayModel.getStamp(messageItem);
+        MessageDisplayModel displayModel = displayModels.get(uniqueId);
+        if (displayModel == null || displayModel.getStamp() != stamp) {
+            displayModel = MessageDisplayModel.create(context, messageItem, account, isMUC, mucNickname, stamp);
+            displayModels.put(uniqueId, displayModel);
+        }
+        return displayModel;
+    }
+
+    /**
+     * Creates in background display models for messages around visible ones,
+     * so they are bound without formatting when scrolled to.
+     */
+    private void prepareDisplayModels() {
+        if (released || !prepareScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        int first;
+        int last;
+        RecyclerView.LayoutManager layoutManager = recyclerView != null ? recyclerView.getLayoutManager() : null;
+        if (layoutManager instanceof LinearLayoutManager) {
+            first = ((LinearLayoutManager) layoutManager).findFirstVisibleItemPosition();
+            last = ((LinearLayoutManager) layoutManager).findLastVisibleItemPosition();
+        } else {
+            first = RecyclerView.NO_POSITION;
+            last = RecyclerView.NO_POSITION;
+        }
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            // chat is opened at the end
+            first = last = realmResults.size() - 1;
+        }
+
+        final int from = Math.max(0, first - PREPARE_WINDOW);
+        final int to = last + PREPARE_WINDOW;
+        preparedFrom = from;
+        preparedTo = to;
+
+        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
+            @Override
+            public void run() {
+                prepareScheduled.set(false);
+                prepareDisplayModels(from, to);
+            }
+        });
+    }
+
+    /**
+     * Creates models for new and changed messages in the range of positions.
+     */
+    private void prepareDisplayModels(int from, int to) {
+        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+        try {
+            RealmResults<MessageItem> messageItems = MessageDatabaseManager.getChatMessages(realm, account, user);
+            to = Math.min(to, messageItems.size() - 1);
+            for (int position = from; position <= to; position++) {
+                if (released) {
+                    return;
+                }
+
+                MessageItem messageItem = messageItems.get(position);
+                String uniqueId = messageItem.getUniqueId();
+                long stamp = MessageDisplayModel.getStamp(messageItem);
+                MessageDisplayModel displayModel = displayModels.get(uniqueId);
+                if (displayModel == null || displayModel.getStamp() != stamp) {
+                    displayModels.put(uniqueId, MessageDisplayModel.create(context, messageItem,
+                            account, isMUC, mucNickname, stamp));
+                }
+            }
+        } finally {
+            realm.close();
+        }
+    }
+
+    private static long getNextMidnight() {
+        Calendar midnight = new GregorianCalendar();
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        midnight.add(Calendar.DAY_OF_MONTH, 1);
+        return midnight.getTimeInMillis();
+    }
+
+    private void setUpMessage(MessageItem messageItem, MessageDisplayModel displayModel, Message message) {
+        if (displayModel.getHeader() != null) {
+            message.messageHeader.setText(displayModel.getHeader());
             message.messageHeader.setVisibility(View.VISIBLE);
         } else {
             message.messageHeader.setVisibility(View.GONE);
         }
 
-        if (messageItem.isEncrypted()) {
+        if (displayModel.isEncrypted()) {
             message.ivEncrypted.setVisibility(View.VISIBLE);
         } else {
             message.ivEncrypted.setVisibility(View.GONE);
         }
 
-        message.messageText.setText(messageItem.getText());
-        if (OTRManager.getInstance().isEncrypted(messageItem.getText())) {
-            if (itemsNeedOriginalText.contains(messageItem.getUniqueId()))
+        message.messageText.setText(displayModel.getText());
+        if (displayModel.isOtrEncrypted()) {
+            if (itemsNeedOriginalText.contains(displayModel.getUniqueId()))
                 message.messageText.setVisibility(View.VISIBLE);
             else message.messageText.setVisibility(View.GONE);
             message.messageNotDecrypted.setVisibility(View.VISIBLE);
@@ -592,16 +737,7 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
             message.messageNotDecrypted.setVisibility(View.GONE);
         }
 
-        String time = StringUtils.getSmartTimeText(context, new Date(messageItem.getTimestamp()));
-
-        Long delayTimestamp = messageItem.getDelayTimestamp();
-        if (delayTimestamp != null) {
-            String delay = context.getString(messageItem.isIncoming() ? R.string.chat_delay : R.string.chat_typed,
-                    StringUtils.getSmartTimeText(context, new Date(delayTimestamp)));
-            time += " (" + delay + ")";
-        }
-
-        message.messageTime.setText(time);
+        message.messageTime.setText(displayModel.getTime());
     }
 
     private void setStatusIcon(MessageItem messageItem, OutgoingMessage message) {
@@ -921,6 +1057,18 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
             super(itemView, listener, appearance);
             progressBar = (ProgressBar) itemView.findViewById(R.id.message_progress_bar);
             messageFileInfo = (TextView) itemView.findViewById(R.id.message_file_info);
+
+            itemView.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+                @Override
+                public void onViewAttachedToWindow(View view) {
+                    subscribeForUploadProgress(view.getContext());
+                }
+
+                @Override
+                public void onViewDetachedFromWindow(View view) {
+                    unsubscribeAll();
+                }
+            });
         }
     }
 }
@@ -11,18 +11,20 @@ import android.widget.TextView;
 
 import com.xabber.android.R;
 import com.xabber.android.data.database.messagerealm.Attachment;
+import com.xabber.android.data.extension.file.AttachmentIndex;
 import com.xabber.android.data.filedownload.DownloadManager;
 import com.xabber.android.data.filedownload.FileCategory;
 
 import org.apache.commons.io.FileUtils;
 
-import io.realm.RealmList;
+import java.util.List;
+
 import rx.functions.Action1;
 import rx.subscriptions.CompositeSubscription;
 
 public class FilesAdapter extends RecyclerView.Adapter<FilesAdapter.FileViewHolder> {
 
-    private RealmList<Attachment> items;
+    private List<Attachment> items;
     private FileListListener listener;
 
     interface FileListListener {
@@ -32,7 +34,7 @@ public class FilesAdapter extends RecyclerView.Adapter<FilesAdapter.FileViewHold
         void onDownloadError(String error);
     }
 
-    public FilesAdapter(RealmList<Attachment> items, FileListListener listener) {
+    public FilesAdapter(List<Attachment> items, FileListListener listener) {
         this.items = items;
         this.listener = listener;
     }
@@ -54,7 +56,7 @@ public class FilesAdapter extends RecyclerView.Adapter<FilesAdapter.FileViewHold
         Long size = attachment.getFileSize();
         holder.tvFileSize.setText(FileUtils.byteCountToDisplaySize(size != null ? size : 0));
         holder.ivFileIcon.setImageResource(attachment.getFilePath() != null
-                ? getFileIconByCategory(FileCategory.determineFileCategory(attachment.getMimeType()))
+                ? getFileIconByCategory(AttachmentIndex.getCategory(attachment))
                 : R.drawable.ic_download);
 
         holder.itemView.setOnClickListener(new View.OnClickListener() {
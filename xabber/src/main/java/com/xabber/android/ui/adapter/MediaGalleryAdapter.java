@@ -0,0 +1,128 @@
+package com.xabber.android.ui.adapter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.BitmapImageViewTarget;
+import com.xabber.android.R;
+import com.xabber.android.data.database.messagerealm.Attachment;
+import com.xabber.android.ui.widget.MediaThumbnailCache;
+
+import java.io.File;
+
+import io.realm.RealmRecyclerViewAdapter;
+import io.realm.RealmResults;
+
+/**
+ * Grid of image attachments.
+ * <p/>
+ * Rows are read from {@link RealmResults} only when bound, so large galleries
+ * are not loaded at once. Stored thumbnails are loaded with high priority,
+ * originals are decoded at thumbnail size and stored for the next time.
+ */
+public class MediaGalleryAdapter extends RealmRecyclerViewAdapter<Attachment, MediaGalleryAdapter.ThumbnailHolder> {
+
+    private final Context context;
+    private final Listener listener;
+    private final MediaThumbnailCache thumbnailCache;
+    private int thumbnailSize;
+
+    public interface Listener {
+        void onAttachmentClick(Attachment attachment);
+    }
+
+    public MediaGalleryAdapter(Context context, RealmResults<Attachment> attachments, Listener listener) {
+        super(context, attachments, true);
+        this.context = context;
+        this.listener = listener;
+        thumbnailCache = MediaThumbnailCache.getInstance();
+    }
+
+    /**
+     * @param thumbnailSize width and height of grid cell in pixels.
+     */
+    public void setThumbnailSize(int thumbnailSize) {
+        this.thumbnailSize = thumbnailSize;
+    }
+
+    @Override
+    public ThumbnailHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_media_gallery, parent, false);
+        view.getLayoutParams().height = thumbnailSize;
+        return new ThumbnailHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ThumbnailHolder holder, int position) {
+        final Attachment attachment = getItem(position);
+        if (attachment == null) {
+            return;
+        }
+
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                listener.onAttachmentClick(attachment);
+            }
+        });
+
+        final String attachmentId = attachment.getUniqueId();
+        File thumbnail = thumbnailCache.get(attachmentId);
+        if (thumbnail != null) {
+            Glide.with(context)
+                    .load(thumbnail)
+                    .diskCacheStrategy(DiskCacheStrategy.NONE)
+                    .priority(Priority.HIGH)
+                    .centerCrop()
+                    .placeholder(R.drawable.ic_recent_image_placeholder)
+                    .error(R.drawable.ic_recent_image_placeholder)
+                    .into(holder.ivThumbnail);
+            return;
+        }
+
+        final String uri = attachment.getFilePath() != null && !attachment.getFilePath().isEmpty()
+                ? attachment.getFilePath() : attachment.getFileUrl();
+
+        Glide.with(context)
+                .load(uri)
+                .asBitmap()
+                .override(thumbnailSize, thumbnailSize)
+                .priority(Priority.NORMAL)
+                .centerCrop()
+                .placeholder(R.drawable.ic_recent_image_placeholder)
+                .error(R.drawable.ic_recent_image_placeholder)
+                .into(new BitmapImageViewTarget(holder.ivThumbnail) {
+                    @Override
+                    public void onResourceReady(Bitmap resource, GlideAnimation<? super Bitmap> glideAnimation) {
+                        super.onResourceReady(resource, glideAnimation);
+                        thumbnailCache.put(attachmentId, uri, thumbnailSize);
+                    }
+                });
+    }
+
+    @Override
+    public void onViewRecycled(ThumbnailHolder holder) {
+        super.onViewRecycled(holder);
+        Glide.clear(holder.ivThumbnail);
+    }
+
+    static class ThumbnailHolder extends RecyclerView.ViewHolder {
+
+        final ImageView ivThumbnail;
+
+        ThumbnailHolder(View itemView) {
+            super(itemView);
+            ivThumbnail = (ImageView) itemView.findViewById(R.id.ivThumbnail);
+        }
+    }
+
+}
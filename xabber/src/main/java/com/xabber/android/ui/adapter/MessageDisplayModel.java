@@ -0,0 +1,159 @@
+package com.xabber.android.ui.adapter;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import com.xabber.android.R;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.extension.otr.OTRManager;
+import com.xabber.android.data.roster.RosterManager;
+import com.xabber.android.utils.StringUtils;
+
+import org.jxmpp.jid.parts.Resourcepart;
+
+import java.util.Date;
+
+/**
+ * Immutable values shown for the message in chat.
+ * <p/>
+ * Models are created in background and reused by {@link ChatMessageAdapter}
+ * until {@link #getStamp(MessageItem)} of the message changes.
+ */
+class MessageDisplayModel {
+
+    private final String uniqueId;
+    private final long stamp;
+    private final int viewType;
+    /**
+     * Occupant's nickname in MUC, <code>null</code> otherwise.
+     */
+    @Nullable
+    private final String header;
+    /**
+     * Message text or the whole line for action messages.
+     */
+    private final CharSequence text;
+    private final String time;
+    private final boolean encrypted;
+    private final boolean otrEncrypted;
+    private final boolean empty;
+
+    private MessageDisplayModel(String uniqueId, long stamp, int viewType, @Nullable String header,
+                                CharSequence text, String time, boolean encrypted,
+                                boolean otrEncrypted, boolean empty) {
+        this.uniqueId = uniqueId;
+        this.stamp = stamp;
+        this.viewType = viewType;
+        this.header = header;
+        this.text = text;
+        this.time = time;
+        this.encrypted = encrypted;
+        this.otrEncrypted = otrEncrypted;
+        this.empty = empty;
+    }
+
+    /**
+     * Must be called from the thread of message's Realm.
+     *
+     * @param mucNickname own nickname if chat is MUC.
+     */
+    static MessageDisplayModel create(Context context, MessageItem messageItem, AccountJid account,
+                                      boolean isMUC, @Nullable Resourcepart mucNickname, long stamp) {
+        String text = messageItem.getText();
+        String time = StringUtils.getSmartTimeText(context, new Date(messageItem.getTimestamp()));
+
+        if (messageItem.getAction() != null) {
+            String name;
+            if (isMUC) {
+                name = messageItem.getResource().toString();
+            } else {
+                name = RosterManager.getInstance().getBestContact(account, messageItem.getUser()).getName();
+            }
+            String line = time + ": " + MessageItem.getChatAction(messageItem)
+                    .getText(context, name, MessageItem.getSpannable(messageItem).toString());
+            return new MessageDisplayModel(messageItem.getUniqueId(), stamp,
+                    ChatMessageAdapter.VIEW_TYPE_ACTION_MESSAGE, null, line, time,
+                    false, false, false);
+        }
+
+        int viewType;
+        if (messageItem.isIncoming() && !(isMUC && messageItem.getResource().equals(mucNickname))) {
+            viewType = ChatMessageAdapter.VIEW_TYPE_INCOMING_MESSAGE;
+        } else {
+            viewType = ChatMessageAdapter.VIEW_TYPE_OUTGOING_MESSAGE;
+        }
+
+        Long delayTimestamp = messageItem.getDelayTimestamp();
+        if (delayTimestamp != null) {
+            String delay = context.getString(messageItem.isIncoming() ? R.string.chat_delay : R.string.chat_typed,
+                    StringUtils.getSmartTimeText(context, new Date(delayTimestamp)));
+            time += " (" + delay + ")";
+        }
+
+        return new MessageDisplayModel(messageItem.getUniqueId(), stamp, viewType,
+                isMUC ? messageItem.getResource().toString() : null,
+                MessageItem.getSpannable(messageItem), time, messageItem.isEncrypted(),
+                OTRManager.getInstance().isEncrypted(text), text.trim().isEmpty());
+    }
+
+    /**
+     * @return Value changed each time message's fields shown in chat are changed.
+     */
+    static long getStamp(MessageItem messageItem) {
+        long stamp = messageItem.getTimestamp();
+        Long delayTimestamp = messageItem.getDelayTimestamp();
+        stamp = 31 * stamp + (delayTimestamp == null ? 0 : delayTimestamp);
+        stamp = 31 * stamp + messageItem.getText().hashCode();
+        String action = messageItem.getAction();
+        stamp = 31 * stamp + (action == null ? 0 : action.hashCode());
+        stamp = 31 * stamp + messageItem.getResource().hashCode();
+        stamp = 31 * stamp + (messageItem.isIncoming() ? 1 : 0);
+        stamp = 31 * stamp + (messageItem.isEncrypted() ? 1 : 0);
+        return stamp;
+    }
+
+    String getUniqueId() {
+        return uniqueId;
+    }
+
+    long getStamp() {
+        return stamp;
+    }
+
+    int getViewType() {
+        return viewType;
+    }
+
+    @Nullable
+    String getHeader() {
+        return header;
+    }
+
+    CharSequence getText() {
+        return text;
+    }
+
+    String getTime() {
+        return time;
+    }
+
+    boolean isEncrypted() {
+        return encrypted;
+    }
+
+    /**
+     * @return Whether text is not decrypted OTR message.
+     */
+    boolean isOtrEncrypted() {
+        return otrEncrypted;
+    }
+
+    /**
+     * @return Whether text is blank.
+     */
+    boolean isEmpty() {
+        return empty;
+    }
+
+}
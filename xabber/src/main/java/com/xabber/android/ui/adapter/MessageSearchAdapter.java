@@ -0,0 +1,107 @@
+package com.xabber.android.ui.adapter;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.xabber.android.R;
+import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.message.search.MessageSearchResult;
+import com.xabber.android.data.roster.RosterManager;
+import com.xabber.android.utils.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Messages found by search, newest first.
+ * <p/>
+ * Text of the message is read from Realm by its primary key when bound.
+ */
+public class MessageSearchAdapter extends RecyclerView.Adapter<MessageSearchAdapter.ResultHolder> {
+
+    private final Context context;
+    private final Listener listener;
+    private final List<MessageSearchResult> results;
+
+    public interface Listener {
+        void onResultClick(MessageSearchResult result);
+    }
+
+    public MessageSearchAdapter(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        results = new ArrayList<>();
+    }
+
+    public void clear() {
+        results.clear();
+        notifyDataSetChanged();
+    }
+
+    public void addResults(List<MessageSearchResult> page) {
+        int start = results.size();
+        results.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    /**
+     * @return Last result to request the next page from or <code>null</code>.
+     */
+    public MessageSearchResult getLastResult() {
+        return results.isEmpty() ? null : results.get(results.size() - 1);
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    @Override
+    public ResultHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return new ResultHolder(LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_message_search, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(ResultHolder holder, int position) {
+        final MessageSearchResult result = results.get(position);
+
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                listener.onResultClick(result);
+            }
+        });
+
+        holder.tvName.setText(RosterManager.getInstance()
+                .getBestContact(result.getAccount(), result.getUser()).getName());
+        holder.tvTime.setText(StringUtils.getSmartTimeText(context, new Date(result.getTimestamp())));
+
+        MessageItem messageItem = MessageDatabaseManager.getInstance().getRealmUiThread()
+                .where(MessageItem.class)
+                .equalTo(MessageItem.Fields.UNIQUE_ID, result.getUniqueId())
+                .findFirst();
+        holder.tvText.setText(messageItem == null ? "" : messageItem.getText());
+    }
+
+    static class ResultHolder extends RecyclerView.ViewHolder {
+
+        final TextView tvName;
+        final TextView tvTime;
+        final TextView tvText;
+
+        ResultHolder(View itemView) {
+            super(itemView);
+            tvName = (TextView) itemView.findViewById(R.id.tvName);
+            tvTime = (TextView) itemView.findViewById(R.id.tvTime);
+            tvText = (TextView) itemView.findViewById(R.id.tvText);
+        }
+    }
+
+}
@@ -12,7 +12,10 @@ public enum  AccountOption {
     BLOCK_LIST(R.drawable.ic_block_grey600_24dp, R.string.blocked_contacts),
     SERVER_INFO(R.drawable.ic_info_grey600_24dp, R.string.account_server_info),
     CHAT_HISTORY(R.drawable.ic_archive_grey600_24dp, R.string.account_chat_history),
-    BOOKMARKS(R.drawable.ic_bookmark, R.string.account_bookmarks);
+    BOOKMARKS(R.drawable.ic_bookmark, R.string.account_bookmarks),
+    MEDIA_GALLERY(R.drawable.ic_image, R.string.account_media_gallery),
+    MESSAGE_SEARCH(R.drawable.ic_search, R.string.account_message_search),
+    EXPORT_HISTORY(R.drawable.ic_share, R.string.account_export_history);
 
     @DrawableRes
     private final int iconId;
@@ -18,10 +18,12 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.DialogFragment;
+import android.app.ProgressDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Environment;
 import android.view.View;
 import android.widget.CheckBox;
 import android.widget.EditText;
@@ -33,13 +35,22 @@ import com.xabber.android.data.NetworkException;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
-import com.xabber.android.data.message.MessageManager;
+import com.xabber.android.data.message.export.ChatExportFormat;
+import com.xabber.android.data.message.export.ChatExporter;
+import com.xabber.android.data.message.export.OnChatExportListener;
 import com.xabber.android.data.roster.RosterManager;
 
 import java.io.File;
 
+/**
+ * Asks file name and exports history of the chat or, if user is not set,
+ * of all chats of the account.
+ */
 public class ChatExportDialogFragment extends DialogFragment implements DialogInterface.OnClickListener {
 
+    private static final String ZIP_EXTENSION = ".zip";
+    private static final String ZIP_MIME_TYPE = "application/zip";
+
     public static final String ARGUMENT_ACCOUNT = "com.xabber.android.ui.dialog.ChatExportDialogFragment.ARGUMENT_ACCOUNT";
     public static final String ARGUMENT_USER = "com.xabber.android.ui.dialog.ChatExportDialogFragment.ARGUMENT_USER";
 
@@ -59,6 +70,15 @@ public class ChatExportDialogFragment extends DialogFragment implements DialogIn
         return fragment;
     }
 
+    public static ChatExportDialogFragment newInstance(AccountJid account) {
+        ChatExportDialogFragment fragment = new ChatExportDialogFragment();
+
+        Bundle arguments = new Bundle();
+        arguments.putParcelable(ARGUMENT_ACCOUNT, account);
+        fragment.setArguments(arguments);
+        return fragment;
+    }
+
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         Bundle args = getArguments();
@@ -68,9 +88,14 @@ public class ChatExportDialogFragment extends DialogFragment implements DialogIn
         View layout = getActivity().getLayoutInflater().inflate(R.layout.export_chat, null);
         nameView = (EditText) layout.findViewById(R.id.name);
         sendView = (CheckBox) layout.findViewById(R.id.send);
-        nameView.setText(getString(R.string.export_chat_mask,
-                AccountManager.getInstance().getVerboseName(account),
-                RosterManager.getInstance().getName(account, user)));
+        if (user != null) {
+            nameView.setText(getString(R.string.export_chat_mask,
+                    AccountManager.getInstance().getVerboseName(account),
+                    RosterManager.getInstance().getName(account, user)));
+        } else {
+            nameView.setText(getString(R.string.export_account_mask,
+                    AccountManager.getInstance().getVerboseName(account)));
+        }
 
         return new AlertDialog.Builder(getActivity())
                 .setTitle(R.string.export_chat_title)
@@ -91,36 +116,95 @@ public class ChatExportDialogFragment extends DialogFragment implements DialogIn
         }
 
         final boolean send = sendView.isChecked();
+        File exportFile = new File(Environment.getExternalStorageDirectory(), name);
+
+        final Activity activity = getActivity();
+        final ProgressDialog progressDialog = new ProgressDialog(activity);
+        progressDialog.setMessage(getString(R.string.export_chat_progress));
+        progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        progressDialog.setIndeterminate(true);
+        progressDialog.setCancelable(false);
+
+        final ChatExporter.Task task;
+        final String mimeType;
+        if (user != null) {
+            ChatExportFormat format = ChatExportFormat.fromFileName(name);
+            mimeType = format.getMimeType();
+            task = ChatExporter.getInstance().exportChat(account, user, format, exportFile,
+                    new ExportListener(activity, progressDialog, send, mimeType));
+        } else {
+            // format of chats is taken from the name inside archive, e.g. name.txt.zip
+            String chatName = name.toLowerCase().endsWith(ZIP_EXTENSION)
+                    ? name.substring(0, name.length() - ZIP_EXTENSION.length()) : name;
+            mimeType = ZIP_MIME_TYPE;
+            task = ChatExporter.getInstance().exportAccount(account, ChatExportFormat.fromFileName(chatName),
+                    exportFile, new ExportListener(activity, progressDialog, send, mimeType));
+        }
 
-        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    final File file = MessageManager.getInstance().exportChat(account, user, name);
-
-                    Application.getInstance().runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            // TODO: Use notification bar to notify about success.
-                            if (send) {
-                                Activity activity = getActivity();
-                                if (activity != null) {
-                                    Intent intent = new Intent(android.content.Intent.ACTION_SEND);
-                                    intent.setType("text/plain");
-                                    Uri uri = Uri.fromFile(file);
-                                    intent.putExtra(android.content.Intent.EXTRA_STREAM, uri);
-                                    activity.startActivity(Intent.createChooser(intent, activity.getString(R.string.export_chat)));
-                                }
-                            } else {
-                                Toast.makeText(Application.getInstance(), R.string.export_chat_done, Toast.LENGTH_LONG).show();
-                            }
-                        }
-                    });
-                } catch (NetworkException e) {
-                    Application.getInstance().onError(e);
-                }
+        progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, getString(android.R.string.cancel),
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        task.cancel();
+                    }
+                });
+        progressDialog.show();
+    }
+
+    /**
+     * Shows progress of the export and its result.
+     */
+    private static class ExportListener implements OnChatExportListener {
+
+        private final Activity activity;
+        private final ProgressDialog progressDialog;
+        private final boolean send;
+        private final String mimeType;
+
+        ExportListener(Activity activity, ProgressDialog progressDialog, boolean send, String mimeType) {
+            this.activity = activity;
+            this.progressDialog = progressDialog;
+            this.send = send;
+            this.mimeType = mimeType;
+        }
+
+        @Override
+        public void onExportProgress(int exported, int total) {
+            progressDialog.setIndeterminate(false);
+            progressDialog.setMax(total);
+            progressDialog.setProgress(exported);
+        }
+
+        @Override
+        public void onExportFinished(File file) {
+            dismissProgress();
+            // TODO: Use notification bar to notify about success.
+            if (send && !activity.isFinishing()) {
+                Intent intent = new Intent(android.content.Intent.ACTION_SEND);
+                intent.setType(mimeType);
+                Uri uri = Uri.fromFile(file);
+                intent.putExtra(android.content.Intent.EXTRA_STREAM, uri);
+                activity.startActivity(Intent.createChooser(intent, activity.getString(R.string.export_chat)));
+            } else {
+                Toast.makeText(Application.getInstance(), R.string.export_chat_done, Toast.LENGTH_LONG).show();
             }
-        });
+        }
 
+        @Override
+        public void onExportCancelled() {
+            dismissProgress();
+        }
+
+        @Override
+        public void onExportError(NetworkException e) {
+            dismissProgress();
+            Application.getInstance().onError(e);
+        }
+
+        private void dismissProgress() {
+            if (progressDialog.isShowing() && !activity.isFinishing()) {
+                progressDialog.dismiss();
+            }
+        }
     }
 }
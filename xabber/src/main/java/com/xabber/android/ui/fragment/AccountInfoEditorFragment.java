@@ -29,6 +29,7 @@ import com.bumptech.glide.request.target.SimpleTarget;
 import com.soundcloud.android.crop.Crop;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.ListenerRegistry;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.extension.avatar.AvatarManager;
@@ -284,8 +285,10 @@ public class AccountInfoEditorFragment extends Fragment implements OnVCardSaveLi
     public void onResume() {
         super.onResume();
 
-        Application.getInstance().addUIListener(OnVCardSaveListener.class, this);
-        Application.getInstance().addUIListener(OnVCardListener.class, this);
+        Application.getInstance().addUIListener(OnVCardSaveListener.class, this,
+                ListenerRegistry.Affinity.main);
+        Application.getInstance().addUIListener(OnVCardListener.class, this,
+                ListenerRegistry.Affinity.main);
 
         VCardManager vCardManager = VCardManager.getInstance();
         if (vCardManager.isVCardRequested(account.getFullJid()) || vCardManager.isVCardSaveRequested(account)) {
@@ -18,6 +18,7 @@ import android.widget.TextView;
 
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.ListenerRegistry;
 import com.xabber.android.data.VcardMaps;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
@@ -185,7 +186,8 @@ public class ContactVcardViewerFragment extends Fragment implements OnContactCha
             return;
         }
 
-        Application.getInstance().addUIListener(OnVCardListener.class, this);
+        Application.getInstance().addUIListener(OnVCardListener.class, this,
+                ListenerRegistry.Affinity.main);
         Application.getInstance().addUIListener(OnContactChangedListener.class, this);
         Application.getInstance().addUIListener(OnAccountChangedListener.class, this);
 
@@ -1,21 +1,25 @@
 package com.xabber.android.ui.fragment;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
+import com.bumptech.glide.DrawableRequestBuilder;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.resource.drawable.GlideDrawable;
 import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.target.Target;
 import com.xabber.android.R;
 import com.xabber.android.data.message.MessageManager;
+import com.xabber.android.ui.widget.ImageTileLoader;
+import com.xabber.android.ui.widget.PinchImageView;
 
 public class ImageViewerFragment extends Fragment {
 
@@ -23,7 +27,7 @@ public class ImageViewerFragment extends Fragment {
     private static final String IMAGE_URL = "IMAGE_URL";
     private static final String ATTACHMENT_ID = "ATTACHMENT_ID";
 
-    private ImageView ivPhoto;
+    private PinchImageView ivPhoto;
     private ProgressBar progressBar;
 
     public static ImageViewerFragment newInstance(String imagePath, String imageUrl, String attachmentId) {
@@ -36,6 +40,25 @@ public class ImageViewerFragment extends Fragment {
         return fragment;
     }
 
+    /**
+     * Loads screen sized image to memory cache, so it is shown without delay
+     * when its page is opened.
+     */
+    public static void preload(Context context, String imagePath, String imageUrl) {
+        createRequest(context, imagePath != null ? imagePath : imageUrl).preload();
+    }
+
+    /**
+     * Image is decoded at screen size, larger images are shown in full
+     * resolution by tiles when zoomed in.
+     */
+    private static DrawableRequestBuilder<String> createRequest(Context context, String source) {
+        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+        return Glide.with(context).load(source)
+                .dontTransform()
+                .override(displayMetrics.widthPixels, displayMetrics.heightPixels);
+    }
+
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, Bundle savedInstanceState) {
@@ -66,7 +89,7 @@ public class ImageViewerFragment extends Fragment {
 
         // setup image
         progressBar.setVisibility(View.VISIBLE);
-        Glide.with(getActivity()).load(source)
+        createRequest(getActivity(), source)
             .listener(new RequestListener<String, GlideDrawable>() {
                 @Override
                 public boolean onException(Exception e, String model, Target<GlideDrawable> target,
@@ -82,12 +105,19 @@ public class ImageViewerFragment extends Fragment {
                                                Target<GlideDrawable> target, boolean isFromMemoryCache,
                                                boolean isFirstResource) {
                     progressBar.setVisibility(View.GONE);
+                    if (path != null) ivPhoto.setTileLoader(new ImageTileLoader(path, ivPhoto));
                     return false;
                 }
             })
             .into(ivPhoto);
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (ivPhoto != null) ivPhoto.setTileLoader(null);
+    }
+
     public void showError(String message) {
         Toast.makeText(getActivity(), message, Toast.LENGTH_SHORT).show();
     }
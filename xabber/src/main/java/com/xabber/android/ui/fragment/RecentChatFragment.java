@@ -36,11 +36,8 @@ import com.xabber.android.presentation.ui.contactlist.viewobjects.ContactVO;
 import com.xabber.android.ui.activity.ChatActivity;
 import com.xabber.android.ui.activity.ContactActivity;
 import com.xabber.android.ui.activity.ContactEditActivity;
-import com.xabber.android.ui.adapter.ChatComparator;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 import eu.davidea.flexibleadapter.FlexibleAdapter;
@@ -50,10 +47,23 @@ public class RecentChatFragment extends Fragment implements Toolbar.OnMenuItemCl
         ContactVO.ContactClickListener, FlexibleAdapter.OnItemClickListener,
         ChatVO.IsCurrentChatListener, FlexibleAdapter.OnItemSwipeListener {
 
+    /**
+     * Number of recent chats loaded at once.
+     */
+    private static final int PAGE_SIZE = 50;
+
     private FlexibleAdapter<IFlexible> adapter;
     private List<IFlexible> items;
     CoordinatorLayout coordinatorLayout;
     Snackbar snackbar;
+    /**
+     * Number of most recent chats to be shown, grows while list is scrolled.
+     */
+    private volatile int chatsLimit = PAGE_SIZE;
+    /**
+     * Whether there are more chats than loaded.
+     */
+    private volatile boolean hasMoreChats;
 
     @Nullable
     private Listener listener;
@@ -101,7 +111,19 @@ public class RecentChatFragment extends Fragment implements Toolbar.OnMenuItemCl
         recyclerView.setAdapter(adapter);
         adapter.setSwipeEnabled(true);
         adapter.addListener(this);
-        recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && hasMoreChats
+                        && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PAGE_SIZE / 2) {
+                    hasMoreChats = false;
+                    chatsLimit += PAGE_SIZE;
+                    updateChats();
+                }
+            }
+        });
 
         updateChats();
         return rootView;
@@ -155,39 +177,39 @@ public class RecentChatFragment extends Fragment implements Toolbar.OnMenuItemCl
     }
 
     public void updateChats() {
+        final boolean showArchived = getActivity() != null && ((ChatActivity) getActivity()).isShowArchived();
 
         Application.getInstance().runInBackgroundUserRequest(new Runnable() {
             @Override
             public void run() {
-                Collection<AbstractChat> chats = MessageManager.getInstance().getChats();
-
-                List<AbstractChat> recentChats = new ArrayList<>();
-
-                for (AbstractChat abstractChat : chats) {
-                    MessageItem lastMessage = abstractChat.getLastMessage();
-
-                    if (lastMessage != null && !TextUtils.isEmpty(lastMessage.getText())) {
-                        AccountItem accountItem = AccountManager.getInstance().getAccount(abstractChat.getAccount());
-                        if (accountItem != null && accountItem.isEnabled()) {
-                            recentChats.add(abstractChat);
+                // chats are already ordered by time of the last message,
+                // read from the top until enough of them pass the filter
+                int maxItems = chatsLimit;
+                int limit = maxItems;
+                final List<AbstractContact> newContacts = new ArrayList<>();
+                boolean hasMoreSource;
+                do {
+                    List<AbstractChat> recentChats = MessageManager.getInstance().getRecentChats(limit);
+                    hasMoreSource = recentChats.size() == limit;
+                    limit = limit > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : limit * 2;
+
+                    newContacts.clear();
+                    for (AbstractChat chat : recentChats) {
+                        if (newContacts.size() >= maxItems) {
+                            break;
+                        }
+                        if (isVisibleChat(chat, showArchived)) {
+                            newContacts.add(RosterManager.getInstance()
+                                    .getBestContact(chat.getAccount(), chat.getUser()));
                         }
                     }
-                }
-
-                Collections.sort(recentChats, ChatComparator.CHAT_COMPARATOR);
-
-
-                final List<AbstractContact> newContacts = new ArrayList<>();
-
-                for (AbstractChat chat : recentChats) {
-                    if (!chat.isArchived() || ((ChatActivity)getActivity()).isShowArchived())
-                        newContacts.add(RosterManager.getInstance()
-                                .getBestContact(chat.getAccount(), chat.getUser()));
-                }
+                } while (hasMoreSource && newContacts.size() < maxItems);
+                final boolean hasMore = newContacts.size() >= maxItems;
 
                 Application.getInstance().runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
+                        hasMoreChats = hasMore;
                         updateItems(newContacts);
                     }
                 });
@@ -195,6 +217,22 @@ public class RecentChatFragment extends Fragment implements Toolbar.OnMenuItemCl
         });
     }
 
+    /**
+     * @return Whether chat has text message, belongs to enabled account and
+     * is not archived unless archived chats are shown.
+     */
+    private static boolean isVisibleChat(AbstractChat chat, boolean showArchived) {
+        MessageItem lastMessage = chat.getLastMessage();
+        if (lastMessage == null || TextUtils.isEmpty(lastMessage.getText())) {
+            return false;
+        }
+        AccountItem accountItem = AccountManager.getInstance().getAccount(chat.getAccount());
+        if (accountItem == null || !accountItem.isEnabled()) {
+            return false;
+        }
+        return !chat.isArchived() || showArchived;
+    }
+
     @Override
     public boolean onItemClick(int position) {
         ChatVO chat = (ChatVO) adapter.getItem(position);
@@ -7,9 +7,11 @@ import android.preference.PreferenceManager;
 import com.xabber.android.R;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
+import com.xabber.android.data.connection.CertificateManager;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.ui.activity.PreferenceSummaryHelperActivity;
+import com.xabber.android.utils.HttpClientWithMTM;
 
 import java.util.Collection;
 
@@ -48,6 +50,9 @@ public class SecuritySettingsFragment extends android.preference.PreferenceFragm
 
             LogManager.i(LOG_TAG, "Check certificate preference changed. new value " + checkCertificate);
 
+            HttpClientWithMTM.invalidateAll();
+            CertificateManager.getInstance().clearTrustCache();
+
             // reconnect all enabled account to apply and check changes
             Collection<AccountJid> enabledAccounts = AccountManager.getInstance().getAllAccounts();
             for (AccountJid accountJid : enabledAccounts) {
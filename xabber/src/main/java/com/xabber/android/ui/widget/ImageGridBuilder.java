@@ -19,8 +19,9 @@ import com.xabber.android.data.database.messagerealm.Attachment;
 import com.xabber.android.data.extension.file.FileManager;
 import com.xabber.android.data.message.MessageManager;
 
+import java.util.List;
+
 import io.realm.Realm;
-import io.realm.RealmList;
 
 public class ImageGridBuilder {
 
@@ -28,7 +29,7 @@ public class ImageGridBuilder {
         return LayoutInflater.from(parent.getContext()).inflate(getLayoutResource(imageCount), parent, false);
     }
 
-    public void bindView(View view, RealmList<Attachment> attachments, View.OnClickListener clickListener) {
+    public void bindView(View view, List<Attachment> attachments, View.OnClickListener clickListener) {
 
         if (attachments.size() == 1) {
             ImageView imageView = getImageView(view, 0);
@@ -80,7 +81,8 @@ public class ImageGridBuilder {
         final String uniqId = attachment.getUniqueId();
 
         if (imagePath != null) {
-            boolean result = FileManager.loadImageFromFile(parent.getContext(), imagePath, imageView);
+            boolean result = FileManager.loadImageFromFile(parent.getContext(), imagePath,
+                    imageWidth, imageHeight, imageView);
 
             if (!result) {
                 MessageManager.setAttachmentLocalPathToNull(uniqId);
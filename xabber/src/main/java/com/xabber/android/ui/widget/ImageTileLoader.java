@@ -0,0 +1,396 @@
+package com.xabber.android.ui.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+import android.view.View;
+
+import com.xabber.android.data.log.LogManager;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full resolution tiles of local image drawn over its screen sized base layer.
+ * <p/>
+ * Tiles are decoded with {@link BitmapRegionDecoder} only for the visible part
+ * of the image and only when it is zoomed beyond resolution of the base
+ * layer. Tiles of all images share one LRU cache, evicted tiles are reused
+ * for decoding of the next ones.
+ */
+public class ImageTileLoader {
+
+    private static final String LOG_TAG = ImageTileLoader.class.getSimpleName();
+
+    /**
+     * Size of decoded tile in pixels.
+     */
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_REUSABLE_TILES = 8;
+
+    private static final ExecutorService executor = createExecutor();
+
+    private static final LruCache<String, Bitmap> tiles
+            = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 8)) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+            if (newValue == null) {
+                addRemovedTile(key, oldValue);
+            }
+        }
+    };
+
+    /**
+     * Tiles removed from the cache, but possibly referenced by the frames
+     * drawn last. They are moved to reusable ones by the next draw of their
+     * image. Guarded by {@link #reusableTiles}.
+     */
+    private static final ArrayDeque<RemovedTile> removedTiles = new ArrayDeque<>();
+
+    /**
+     * Bitmaps of removed tiles not drawn anymore, guarded by itself. They are
+     * never recycled, only reused for decoding of next tiles.
+     */
+    private static final ArrayDeque<Bitmap> reusableTiles = new ArrayDeque<>();
+
+    private final String path;
+    private final View view;
+    private final Paint paint;
+
+    private volatile BitmapRegionDecoder decoder;
+    private volatile boolean released;
+    private int imageWidth;
+    private int imageHeight;
+
+    /**
+     * Keys of tiles required by the last draw.
+     */
+    private volatile Set<String> visibleKeys;
+    /**
+     * Keys of tiles queued for decoding, guarded by itself.
+     */
+    private final Set<String> pendingKeys;
+    /**
+     * Tiles drawn by the current and the previous frames, used on UI thread only.
+     */
+    private Set<Bitmap> drawnTiles;
+    private Set<Bitmap> previousDrawnTiles;
+
+    private final Matrix tileMatrix;
+    private final Matrix inverseMatrix;
+    private final RectF visibleRect;
+    private final Rect tileSourceRect;
+    private final RectF tileRect;
+    private final float[] values;
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Image tiles");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @param view invalidated when tiles are decoded.
+     */
+    public ImageTileLoader(String path, View view) {
+        this.path = path;
+        this.view = view;
+        paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        visibleKeys = Collections.emptySet();
+        pendingKeys = new HashSet<>();
+        drawnTiles = createBitmapSet();
+        previousDrawnTiles = createBitmapSet();
+        tileMatrix = new Matrix();
+        inverseMatrix = new Matrix();
+        visibleRect = new RectF();
+        tileSourceRect = new Rect();
+        tileRect = new RectF();
+        values = new float[9];
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                openDecoder();
+            }
+        });
+    }
+
+    private void openDecoder() {
+        if (released) {
+            return;
+        }
+        try {
+            // Base layer is rotated by EXIF while regions are not
+            int orientation = new ExifInterface(path).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+            if (orientation != ExifInterface.ORIENTATION_NORMAL
+                    && orientation != ExifInterface.ORIENTATION_UNDEFINED) {
+                return;
+            }
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+            imageWidth = decoder.getWidth();
+            imageHeight = decoder.getHeight();
+            this.decoder = decoder;
+            view.postInvalidate();
+        } catch (IOException e) {
+            LogManager.i(LOG_TAG, "Tiles are not available for " + path + ": " + e.toString());
+        }
+    }
+
+    /**
+     * Draws available tiles of the visible part and requests missing ones.
+     * Must be called from UI thread.
+     *
+     * @param imageMatrix transformation of the base layer to the view.
+     * @param baseWidth   width of the base layer.
+     */
+    public void draw(Canvas canvas, Matrix imageMatrix, int baseWidth, int viewWidth, int viewHeight) {
+        if (decoder == null || released || baseWidth <= 0) {
+            return;
+        }
+
+        Set<Bitmap> previous = previousDrawnTiles;
+        previousDrawnTiles = drawnTiles;
+        drawnTiles = previous;
+        drawnTiles.clear();
+        drawTiles(canvas, imageMatrix, baseWidth, viewWidth, viewHeight);
+        releaseRemovedTiles();
+    }
+
+    private void drawTiles(Canvas canvas, Matrix imageMatrix, int baseWidth, int viewWidth, int viewHeight) {
+        // transformation from full resolution image to the view
+        float baseScale = (float) imageWidth / baseWidth;
+        tileMatrix.set(imageMatrix);
+        tileMatrix.preScale(1 / baseScale, 1 / baseScale);
+        tileMatrix.getValues(values);
+        float scale = (float) Math.sqrt(values[Matrix.MSCALE_X] * values[Matrix.MSCALE_X]
+                + values[Matrix.MSKEW_Y] * values[Matrix.MSKEW_Y]);
+
+        // base layer is sharp enough
+        if (scale * baseScale <= 1) {
+            visibleKeys = Collections.emptySet();
+            return;
+        }
+
+        int sampleSize = 1;
+        while (sampleSize * 2 <= 1 / scale) {
+            sampleSize *= 2;
+        }
+
+        if (!tileMatrix.invert(inverseMatrix)) {
+            return;
+        }
+        visibleRect.set(0, 0, viewWidth, viewHeight);
+        inverseMatrix.mapRect(visibleRect);
+        if (!visibleRect.intersect(0, 0, imageWidth, imageHeight)) {
+            return;
+        }
+
+        int tileSize = TILE_SIZE * sampleSize;
+        int left = (int) visibleRect.left / tileSize;
+        int top = (int) visibleRect.top / tileSize;
+        int right = (int) Math.ceil(visibleRect.right / tileSize);
+        int bottom = (int) Math.ceil(visibleRect.bottom / tileSize);
+
+        Set<String> keys = new HashSet<>();
+        canvas.save();
+        canvas.concat(tileMatrix);
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                String key = getKey(sampleSize, x, y);
+                keys.add(key);
+                Bitmap tile = tiles.get(key);
+                if (tile == null) {
+                    requestTile(key, sampleSize, x, y);
+                    continue;
+                }
+                tileRect.set(x * tileSize, y * tileSize,
+                        Math.min(imageWidth, (x + 1) * tileSize), Math.min(imageHeight, (y + 1) * tileSize));
+                // reused bitmap of edge tile is larger than its decoded region
+                tileSourceRect.set(0, 0, (int) Math.ceil(tileRect.width() / sampleSize),
+                        (int) Math.ceil(tileRect.height() / sampleSize));
+                canvas.drawBitmap(tile, tileSourceRect, tileRect, paint);
+                drawnTiles.add(tile);
+            }
+        }
+        canvas.restore();
+        visibleKeys = keys;
+    }
+
+    private String getKey(int sampleSize, int x, int y) {
+        return path + "\n" + sampleSize + "\n" + x + "\n" + y;
+    }
+
+    private void requestTile(final String key, final int sampleSize, final int x, final int y) {
+        synchronized (pendingKeys) {
+            if (!pendingKeys.add(key)) {
+                return;
+            }
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // tile is not visible anymore
+                    if (!released && visibleKeys.contains(key)) {
+                        decodeTile(key, sampleSize, x, y);
+                    }
+                } finally {
+                    synchronized (pendingKeys) {
+                        pendingKeys.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    private void decodeTile(String key, int sampleSize, int x, int y) {
+        int tileSize = TILE_SIZE * sampleSize;
+        Rect region = new Rect(x * tileSize, y * tileSize,
+                Math.min(imageWidth, (x + 1) * tileSize), Math.min(imageHeight, (y + 1) * tileSize));
+        if (region.isEmpty()) {
+            return;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inBitmap = takeReusableTile();
+        Bitmap tile;
+        try {
+            tile = decoder.decodeRegion(region, options);
+        } catch (IllegalArgumentException e) {
+            options.inBitmap = null;
+            tile = decoder.decodeRegion(region, options);
+        }
+        if (tile != null && !released) {
+            tiles.put(key, tile);
+            view.postInvalidate();
+        }
+    }
+
+    private static Set<Bitmap> createBitmapSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    }
+
+    private static void addRemovedTile(String key, Bitmap bitmap) {
+        synchronized (reusableTiles) {
+            if (removedTiles.size() >= MAX_REUSABLE_TILES) {
+                removedTiles.poll();
+            }
+            removedTiles.offer(new RemovedTile(key, bitmap));
+        }
+    }
+
+    /**
+     * Moves removed tiles of the image not drawn by the last two frames to
+     * reusable ones.
+     */
+    private void releaseRemovedTiles() {
+        String prefix = path + "\n";
+        synchronized (reusableTiles) {
+            Iterator<RemovedTile> iterator = removedTiles.iterator();
+            while (iterator.hasNext()) {
+                RemovedTile removedTile = iterator.next();
+                if (removedTile.key.startsWith(prefix) && !drawnTiles.contains(removedTile.bitmap)
+                        && !previousDrawnTiles.contains(removedTile.bitmap)) {
+                    iterator.remove();
+                    offerReusableTile(removedTile.bitmap);
+                }
+            }
+        }
+    }
+
+    private static Bitmap takeReusableTile() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return null;
+        }
+        synchronized (reusableTiles) {
+            return reusableTiles.poll();
+        }
+    }
+
+    /**
+     * Must be called with {@link #reusableTiles} locked.
+     */
+    private static void offerReusableTile(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT || !bitmap.isMutable()
+                || bitmap.getAllocationByteCount() < TILE_SIZE * TILE_SIZE * 4) {
+            return;
+        }
+        if (reusableTiles.size() < MAX_REUSABLE_TILES) {
+            reusableTiles.offer(bitmap);
+        }
+    }
+
+    /**
+     * Stops decoding and moves tiles of the image to reuse by other images.
+     * Tiles drawn by the last frames are left to garbage collector.
+     * Must be called from UI thread.
+     */
+    public void release() {
+        released = true;
+        String prefix = path + "\n";
+        for (Map.Entry<String, Bitmap> entry : tiles.snapshot().entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                tiles.remove(entry.getKey());
+            }
+        }
+        releaseRemovedTiles();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                BitmapRegionDecoder decoder = ImageTileLoader.this.decoder;
+                if (decoder != null) {
+                    decoder.recycle();
+                }
+            }
+        });
+    }
+
+    private static class RemovedTile {
+
+        private final String key;
+        private final Bitmap bitmap;
+
+        RemovedTile(String key, Bitmap bitmap) {
+            this.key = key;
+            this.bitmap = bitmap;
+        }
+
+    }
+
+}
@@ -0,0 +1,245 @@
+package com.xabber.android.ui.widget;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.xabber.android.data.Application;
+import com.xabber.android.data.log.LogManager;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thumbnails of image attachments stored on disk by attachment's unique id.
+ * <p/>
+ * Thumbnail is written once after the image was shown in media gallery, so
+ * next time gallery shows it without reading or downloading the original,
+ * even if local file of the attachment was downloaded or removed meanwhile.
+ * Oldest thumbnails are removed when total size exceeds {@link #MAX_SIZE}.
+ */
+public class MediaThumbnailCache {
+
+    private static final String LOG_TAG = MediaThumbnailCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "thumbnails";
+    private static final long MAX_SIZE = 50 * 1024 * 1024;
+    private static final int QUALITY = 80;
+    /**
+     * Number of written thumbnails after which cache size is checked.
+     */
+    private static final int TRIM_INTERVAL = 100;
+
+    private static MediaThumbnailCache instance;
+
+    private final ExecutorService executor;
+    private final File directory;
+    /**
+     * Ids of attachments with thumbnail on disk.
+     */
+    private final Set<String> ids;
+    private int writeCount;
+
+    public static synchronized MediaThumbnailCache getInstance() {
+        if (instance == null) {
+            instance = new MediaThumbnailCache();
+        }
+        return instance;
+    }
+
+    private MediaThumbnailCache() {
+        directory = new File(Application.getInstance().getCacheDir(), DIRECTORY);
+        ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Media thumbnails");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    private void load() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LogManager.w(LOG_TAG, "Can't create " + directory);
+            return;
+        }
+        trim();
+        String[] names = directory.list();
+        if (names != null) {
+            ids.addAll(Arrays.asList(names));
+        }
+    }
+
+    /**
+     * @return Thumbnail file or <code>null</code> if there is no one yet.
+     */
+    @Nullable
+    public File get(String attachmentId) {
+        return ids.contains(attachmentId) ? new File(directory, attachmentId) : null;
+    }
+
+    /**
+     * Writes thumbnail in background. Image is requested from Glide on the
+     * writer thread, so it is usually taken from memory cache without
+     * decoding and is held until written.
+     *
+     * @param uri  local path or url of the image.
+     * @param size width and height of the thumbnail.
+     */
+    public void put(final String attachmentId, final String uri, final int size) {
+        if (ids.contains(attachmentId)) {
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (ids.contains(attachmentId)) {
+                    return;
+                }
+                FutureTarget<Bitmap> target = Glide.with(Application.getInstance())
+                        .load(uri)
+                        .asBitmap()
+                        .centerCrop()
+                        .into(size, size);
+                try {
+                    write(attachmentId, target.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    LogManager.exception(LOG_TAG, e);
+                } finally {
+                    Glide.clear(target);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes thumbnails of deleted attachments.
+     */
+    public void remove(Collection<String> attachmentIds) {
+        if (attachmentIds.isEmpty()) {
+            return;
+        }
+        final List<String> removedIds = new ArrayList<>(attachmentIds);
+        ids.removeAll(removedIds);
+
+        // files are checked even if ids are not loaded yet
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String attachmentId : removedIds) {
+                    ids.remove(attachmentId);
+                    File file = new File(directory, attachmentId);
+                    if (file.exists() && !file.delete()) {
+                        LogManager.w(LOG_TAG, "Can't delete " + file);
+                    }
+                }
+            }
+        });
+    }
+
+    private void write(String attachmentId, Bitmap bitmap) {
+        File file = new File(directory, attachmentId);
+        File temp = new File(directory, attachmentId + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(temp));
+            bitmap.compress(bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
+                    QUALITY, outputStream);
+            outputStream.close();
+            outputStream = null;
+            if (temp.renameTo(file)) {
+                ids.add(attachmentId);
+            }
+        } catch (IOException e) {
+            LogManager.exception(LOG_TAG, e);
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    LogManager.exception(LOG_TAG, e);
+                }
+            }
+            if (temp.exists() && !temp.delete()) {
+                LogManager.w(LOG_TAG, "Can't delete " + temp);
+            }
+        }
+
+        writeCount++;
+        if (writeCount % TRIM_INTERVAL == 0) {
+            trim();
+        }
+    }
+
+    /**
+     * Removes oldest thumbnails until total size is reduced to 3/4 of maximum.
+     */
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_SIZE) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long modified1 = file1.lastModified();
+                long modified2 = file2.lastModified();
+                return modified1 < modified2 ? -1 : (modified1 == modified2 ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (size <= MAX_SIZE * 3 / 4) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                ids.remove(file.getName());
+                size -= length;
+            }
+        }
+        LogManager.i(LOG_TAG, "trimmed to " + size / 1024 + " KiB");
+    }
+
+}
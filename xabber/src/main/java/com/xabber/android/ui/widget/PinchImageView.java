@@ -610,13 +610,46 @@ public class PinchImageView extends android.support.v7.widget.AppCompatImageView
             canvas.save();
             canvas.clipRect(mMask);
             super.onDraw(canvas);
+            drawTiles(canvas);
             canvas.restore();
         } else {
             super.onDraw(canvas);
+            drawTiles(canvas);
         }
     }
 
 
+    ////////////////////////////////Tiles////////////////////////////////
+
+    /**
+     * Full resolution tiles drawn over the image when it is zoomed in.
+     */
+    private ImageTileLoader mTileLoader;
+
+    /**
+     * Sets tiles for the current image, previous loader is released.
+     *
+     * @param tileLoader loader or <code>null</code> to draw only the image.
+     */
+    public void setTileLoader(ImageTileLoader tileLoader) {
+        if (mTileLoader != null) {
+            mTileLoader.release();
+        }
+        mTileLoader = tileLoader;
+        invalidate();
+    }
+
+    private void drawTiles(Canvas canvas) {
+        if (mTileLoader == null || !isReady()) {
+            return;
+        }
+        Matrix matrix = MathUtils.matrixTake();
+        getCurrentImageMatrix(matrix);
+        mTileLoader.draw(canvas, matrix, getDrawable().getIntrinsicWidth(), getWidth(), getHeight());
+        MathUtils.matrixGiven(matrix);
+    }
+
+
     ////////////////////////////////有效性判断////////////////////////////////
 
     /**
@@ -1,46 +1,137 @@
 package com.xabber.android.utils;
 
+import com.xabber.android.data.connection.AccountTrust;
 import com.xabber.android.data.connection.CertificateManager;
 import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.log.LogManager;
 
+import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.X509TrustManager;
 
-import de.duenndns.ssl.MemorizingTrustManager;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
 
+/**
+ * Http clients for file transfers with account's trust manager.
+ * <p/>
+ * One client is kept for each account and is rebuilt only when trust
+ * configuration changes. All clients share connection pool and dispatcher,
+ * while TLS sessions are cached by SSL context of the account shared with its
+ * XMPP connection, so sequential transfers to the same host reuse connection
+ * or at least TLS session.
+ */
 public class HttpClientWithMTM {
 
+    private static final String LOG_TAG = HttpClientWithMTM.class.getSimpleName();
+
+    private static final Map<AccountJid, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Connections seen by network interceptor, used to count reuse. Counters
+     * are logged with each new connection.
+     */
+    private static final Set<Connection> connections
+            = Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>());
+    private static final AtomicLong requestCount = new AtomicLong();
+    private static final AtomicLong reusedCount = new AtomicLong();
+
+    private static final OkHttpClient baseClient = new OkHttpClient.Builder()
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .addNetworkInterceptor(new Interceptor() {
+                @Override
+                public Response intercept(Chain chain) throws IOException {
+                    onConnectionUsed(chain.connection());
+                    return chain.proceed(chain.request());
+                }
+            })
+            .writeTimeout(5, TimeUnit.MINUTES)
+            .connectTimeout(5, TimeUnit.MINUTES)
+            .readTimeout(5, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * @return Shared client or <code>null</code> if SSL context can't be created.
+     */
     public static OkHttpClient getClient(AccountJid accountJid) {
+        OkHttpClient client = clients.get(accountJid);
+        if (client != null) {
+            return client;
+        }
+
+        synchronized (clients) {
+            client = clients.get(accountJid);
+            if (client == null) {
+                client = createClient(accountJid);
+                if (client != null) {
+                    clients.put(accountJid, client);
+                }
+            }
+            return client;
+        }
+    }
 
-        // create ssl verification factory
-        SSLSocketFactory sslSocketFactory = null;
-        MemorizingTrustManager mtm = CertificateManager.getInstance().getNewFileUploadManager(accountJid);
+    private static OkHttpClient createClient(AccountJid accountJid) {
 
-        final SSLContext sslContext;
+        // ssl context and trust are shared with xmpp connection of the account
+        AccountTrust accountTrust = CertificateManager.getInstance().getAccountTrust(accountJid);
+
+        final SSLSocketFactory sslSocketFactory;
         try {
-            sslContext = SSLContext.getInstance("SSL");
-            sslContext.init(null, new X509TrustManager[]{mtm}, new java.security.SecureRandom());
-            sslSocketFactory = sslContext.getSocketFactory();
+            sslSocketFactory = accountTrust.getSSLContext().getSocketFactory();
         } catch (NoSuchAlgorithmException | KeyManagementException e) {
             return null;
         }
 
-        // build http client
-        final OkHttpClient client = new OkHttpClient().newBuilder()
-                .sslSocketFactory(sslSocketFactory)
-                .hostnameVerifier(mtm.wrapHostnameVerifier(new org.apache.http.conn.ssl.StrictHostnameVerifier()))
-                .writeTimeout(5, TimeUnit.MINUTES)
-                .connectTimeout(5, TimeUnit.MINUTES)
-                .readTimeout(5, TimeUnit.MINUTES)
+        // derived client shares connection pool and dispatcher with base client
+        return baseClient.newBuilder()
+                .sslSocketFactory(sslSocketFactory, accountTrust.getTrustManager())
+                .hostnameVerifier(accountTrust.getMemorizingTrustManager()
+                        .wrapHostnameVerifier(new org.apache.http.conn.ssl.StrictHostnameVerifier()))
                 .build();
+    }
+
+    /**
+     * Drops client of the account, so next transfer gets a new one.
+     */
+    public static void invalidate(AccountJid accountJid) {
+        clients.remove(accountJid);
+    }
 
-        return client;
+    /**
+     * Drops all clients, e.g. when certificate check settings were changed.
+     * Pooled connections are closed, as they were verified with previous trust
+     * configuration.
+     */
+    public static void invalidateAll() {
+        clients.clear();
+        baseClient.connectionPool().evictAll();
+    }
+
+    private static void onConnectionUsed(Connection connection) {
+        boolean reused;
+        synchronized (connections) {
+            reused = !connections.add(connection);
+        }
+        long requests = requestCount.incrementAndGet();
+        long reuses = reused ? reusedCount.incrementAndGet() : reusedCount.get();
+        if (!reused && LogManager.isEnabled()) {
+            LogManager.i(LOG_TAG, "new connection " + connection.route().address().url().host()
+                    + " " + connection.protocol() + ", reused " + reuses + " of " + requests);
+        }
     }
 
 }
@@ -43,11 +43,19 @@ public class StringUtils {
         DATE_TIME = DateFormat.getDateTimeInstance(DateFormat.MEDIUM,
                 DateFormat.SHORT);
         TIME = new SimpleDateFormat("H:mm");
-        timeFormat = android.text.format.DateFormat.getTimeFormat(Application.getInstance());
     }
 
     private static SimpleDateFormat logDateTimeFormat;
-    private static DateFormat timeFormat;
+
+    /**
+     * Date formats are not thread safe, while chat times are also formatted in background.
+     */
+    private static final ThreadLocal<DateFormat> timeFormat = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return android.text.format.DateFormat.getTimeFormat(Application.getInstance());
+        }
+    };
 
     private StringUtils() {
     }
@@ -130,6 +138,16 @@ public class StringUtils {
         }
     }
 
+    /**
+     * @return Copy of the format used by {@link #getDateTimeText(Date)},
+     * to be used from one thread without synchronization.
+     */
+    public static DateFormat getDateTimeFormat() {
+        synchronized (DATE_TIME) {
+            return (DateFormat) DATE_TIME.clone();
+        }
+    }
+
     /**
      * @param timeStamp
      * @return String with time or with date and time depend on current time.
@@ -148,10 +166,10 @@ public class StringUtils {
         midnight.set(Calendar.MILLISECOND, 0);
 
         if (timeStamp.getTime() > midnight.getTimeInMillis()) {
-            return timeFormat.format(timeStamp);
+            return timeFormat.get().format(timeStamp);
         } else {
             DateFormat dateFormat = android.text.format.DateFormat.getDateFormat(context);
-            return dateFormat.format(timeStamp) + " " + timeFormat.format(timeStamp);
+            return dateFormat.format(timeStamp) + " " + timeFormat.get().format(timeStamp);
         }
     }
 
@@ -169,7 +187,7 @@ public class StringUtils {
         midnight.set(Calendar.MILLISECOND, 0);
 
         if (timeStamp.getTime() > midnight.getTimeInMillis()) {
-            return timeFormat.format(timeStamp);
+            return timeFormat.get().format(timeStamp);
         } else {
             SimpleDateFormat dateFormat = new SimpleDateFormat("d MMM",
                     context.getResources().getConfiguration().locale);